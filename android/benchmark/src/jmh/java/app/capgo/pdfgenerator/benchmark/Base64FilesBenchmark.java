@@ -0,0 +1,78 @@
+package app.capgo.pdfgenerator.benchmark;
+
+import app.capgo.pdfgenerator.core.Base64Files;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * File to base64 paths used by the {@code base64} and {@code stream} output types. Throughput is
+ * in files per second; multiply by {@code sizeBytes} for bytes per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Base64FilesBenchmark {
+
+    @Param({ "102400", "1048576", "10485760", "104857600" })
+    public int sizeBytes;
+
+    @Param({ "524288" })
+    public int chunkSize;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void createInput() throws IOException {
+        file = PdfInput.create(sizeBytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteInput() {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Benchmark
+    public String read() throws IOException {
+        return Base64Files.read(file);
+    }
+
+    @Benchmark
+    public void stream(Blackhole blackhole) throws IOException {
+        Base64Files.stream(
+            file,
+            chunkSize,
+            new Base64Files.ChunkSink() {
+                @Override
+                public void onChunk(String base64, int index, long offset, long totalSize, int chunkCount) {
+                    blackhole.consume(base64);
+                }
+
+                @Override
+                public void onComplete(long totalSize, int chunkCount) {
+                    blackhole.consume(totalSize);
+                }
+            }
+        );
+    }
+
+    /** Reference point: read the whole file, then encode it with the JDK encoder. */
+    @Benchmark
+    public String jdkReadAllBytes() throws IOException {
+        return Base64.getEncoder().encodeToString(Files.readAllBytes(file.toPath()));
+    }
+}
@@ -0,0 +1,44 @@
+package app.capgo.pdfgenerator.benchmark;
+
+import app.capgo.pdfgenerator.core.OptionValues;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Option normalization done for every job, and for every item of a batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OptionValuesBenchmark {
+
+    public String fileName = "reports/2024:Q1 invoice";
+    public String plainFileName = "invoice.pdf";
+    public String baseUrl = "  BUNDLE ";
+    public String jobId = " job-42 ";
+    public Object landscape = "landscape";
+
+    @Benchmark
+    public void normalizeTypicalOptions(Blackhole blackhole) {
+        blackhole.consume(OptionValues.fileName(fileName));
+        blackhole.consume(OptionValues.baseUrl(baseUrl));
+        blackhole.consume(OptionValues.jobId(jobId));
+        blackhole.consume(OptionValues.isLandscape(landscape, null));
+    }
+
+    @Benchmark
+    public String fileNameWithoutChanges() {
+        return OptionValues.fileName(plainFileName);
+    }
+
+    @Benchmark
+    public String fileNameWithSeparators() {
+        return OptionValues.fileName(fileName);
+    }
+}
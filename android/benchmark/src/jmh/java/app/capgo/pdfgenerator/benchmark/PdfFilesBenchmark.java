@@ -0,0 +1,70 @@
+package app.capgo.pdfgenerator.benchmark;
+
+import app.capgo.pdfgenerator.core.PdfFiles;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Temporary file handling around every job: creating the temporary output and copying PDFs in
+ * and out of the render cache or to their final location.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PdfFilesBenchmark {
+
+    @Param({ "102400", "1048576", "10485760", "104857600" })
+    public int sizeBytes;
+
+    private File directory;
+    private File source;
+    private File target;
+
+    @Setup(Level.Trial)
+    public void createInput() throws IOException {
+        directory = Files.createTempDirectory("capgo_pdf_benchmark").toFile();
+        source = PdfInput.create(sizeBytes);
+        target = new File(directory, "target.pdf");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteInput() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+        //noinspection ResultOfMethodCallIgnored
+        source.delete();
+    }
+
+    @Benchmark
+    public File copy() throws IOException {
+        PdfFiles.copy(source, target);
+        return target;
+    }
+
+    /** Independent of {@code sizeBytes}; create, prepare and delete one temporary output. */
+    @Benchmark
+    public boolean tempFileLifecycle() throws IOException {
+        File temp = PdfFiles.createTemp(directory);
+        PdfFiles.prepareTarget(temp);
+        return temp.delete();
+    }
+}
@@ -0,0 +1,33 @@
+package app.capgo.pdfgenerator.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Creates benchmark inputs. Content is random so it is neither compressible by the file system
+ * nor trivially predictable for the encoder, like the compressed streams that make up most of a
+ * real PDF.
+ */
+final class PdfInput {
+
+    private PdfInput() {}
+
+    static File create(int sizeBytes) throws IOException {
+        File file = File.createTempFile("capgo_pdf_benchmark", ".pdf");
+        file.deleteOnExit();
+        Random random = new Random(sizeBytes);
+        byte[] chunk = new byte[1024 * 1024];
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            int remaining = sizeBytes;
+            while (remaining > 0) {
+                random.nextBytes(chunk);
+                int length = Math.min(chunk.length, remaining);
+                out.write(chunk, 0, length);
+                remaining -= length;
+            }
+        }
+        return file;
+    }
+}
@@ -1,13 +1,18 @@
 package android.print;
 
 import android.content.Context;
+import android.graphics.pdf.PdfRenderer;
 import android.os.CancellationSignal;
 import android.os.ParcelFileDescriptor;
-import android.util.Base64;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
-import java.io.ByteArrayOutputStream;
+import app.capgo.pdfgenerator.core.Base64Files;
+import app.capgo.pdfgenerator.core.PdfFiles;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Internal helpers to generate PDF output from a PrintDocumentAdapter without relying on
@@ -18,123 +23,300 @@ public final class CapgoPdfPrintUtils {
 
     private CapgoPdfPrintUtils() {}
 
-    public interface Base64Callback {
-        void onSuccess(@NonNull String base64);
-        void onError(@NonNull String message);
-    }
+    /**
+     * Receives the base64 chunks of {@link #streamBase64}, in order, on the calling thread.
+     */
+    public interface ChunkCallback extends Base64Files.ChunkSink {}
 
     public interface FileCallback {
-        void onSuccess(@NonNull File file);
+        void onSuccess(@NonNull WriteResult result);
         void onError(@NonNull String message);
     }
 
-    public static void createBase64(Context context, PrintDocumentAdapter adapter, PrintAttributes attributes, Base64Callback callback) {
-        Writer writer = new Writer(adapter, attributes);
-        writer.writeToTempFile(
-            context,
-            new Writer.FileResultCallback() {
-                @Override
-                public void onSuccess(@NonNull File file, @NonNull ParcelFileDescriptor descriptor) {
-                    new Thread(() -> {
-                        try {
-                            String base64 = PdfIoUtils.readBase64(file);
-                            callback.onSuccess(base64);
-                        } catch (Exception ex) {
-                            callback.onError("Failed to convert PDF to base64.");
-                        } finally {
-                            PdfIoUtils.closeQuietly(descriptor);
-                            // best-effort cleanup
-                            //noinspection ResultOfMethodCallIgnored
-                            file.delete();
-                        }
-                    })
-                        .start();
-                }
+    /**
+     * Outcome of a successful write.
+     */
+    public static final class WriteResult {
 
-                @Override
-                public void onError(@NonNull String message) {
-                    callback.onError(message);
-                }
-            }
-        );
+        @NonNull
+        public final File file;
+        /** Number of pages in the written PDF, or {@code -1} when it could not be determined. */
+        public final int pageCount;
+        /**
+         * Number of pages of the whole document, which differs from {@link #pageCount} when only
+         * some page ranges were written, or {@code -1} when the adapter did not report it at
+         * layout time.
+         */
+        public final int documentPageCount;
+        /** Time from {@code onLayout} to {@code onLayoutFinished}, in milliseconds. */
+        public final long layoutMs;
+        /** Time from {@code onWrite} to {@code onWriteFinished}, in milliseconds. */
+        public final long writeMs;
+
+        WriteResult(@NonNull File file, int pageCount, int documentPageCount, long layoutMs, long writeMs) {
+            this.file = file;
+            this.pageCount = pageCount;
+            this.documentPageCount = documentPageCount;
+            this.layoutMs = layoutMs;
+            this.writeMs = writeMs;
+        }
     }
 
-    public static void writeToFile(
+    /**
+     * Renders the document to a new temporary file in the cache directory. The caller owns the
+     * file and must delete it once done.
+     *
+     * @param pageRanges zero-based pages to write, sorted and not overlapping, or {@code null} for
+     *     the whole document.
+     * @param executor counts the pages of the written file, which means parsing it, and then calls
+     *     {@code callback}. Errors before that point are reported on the calling thread.
+     */
+    public static WriteHandle writeToTempFile(
         Context context,
         PrintDocumentAdapter adapter,
         PrintAttributes attributes,
+        PageRange[] pageRanges,
+        Executor executor,
+        FileCallback callback
+    ) {
+        Writer writer = new Writer(adapter, attributes, pageRanges);
+        writer.writeToTempFile(context, writer.resultCallback(executor, callback));
+        return writer;
+    }
+
+    /**
+     * Encodes a PDF file to base64. Callers should check {@link #estimateBase64PeakBytes(long)}
+     * against {@link #base64MemoryBudget(long)} first.
+     */
+    public static String readBase64(File file) throws IOException {
+        return Base64Files.read(file);
+    }
+
+    /**
+     * Returns the heap a base64 encoding may use: {@code configuredBytes} when positive, otherwise
+     * the heap that is currently free.
+     */
+    public static long base64MemoryBudget(long configuredBytes) {
+        return configuredBytes > 0 ? configuredBytes : Base64Files.defaultMemoryBudget();
+    }
+
+    /**
+     * Hands a PDF file back as a sequence of base64 chunks on the calling thread.
+     * {@code chunkSize} is rounded down to a multiple of 3 bytes so the chunks can be decoded
+     * independently and concatenated.
+     */
+    public static void streamBase64(File file, int chunkSize, ChunkCallback callback) throws IOException {
+        Base64Files.stream(file, chunkSize, callback);
+    }
+
+    /**
+     * Returns the chunk size to stream with: {@code requested}, reduced until a chunk waiting to be
+     * delivered and the one being encoded fit in {@code budgetBytes}.
+     */
+    public static int streamChunkSize(int requested, long budgetBytes) {
+        return Base64Files.streamChunkSize(requested, budgetBytes);
+    }
+
+    /**
+     * Returns the number of pages of a PDF file, or {@code -1} when it cannot be read.
+     */
+    public static int countPages(File file) {
+        return PdfIoUtils.countPages(file);
+    }
+
+    /**
+     * Renders the document to {@code target}, see {@link #writeToTempFile}.
+     */
+    public static WriteHandle writeToFile(
+        Context context,
+        PrintDocumentAdapter adapter,
+        PrintAttributes attributes,
+        PageRange[] pageRanges,
         File target,
+        Executor executor,
         FileCallback callback
     ) {
-        Writer writer = new Writer(adapter, attributes);
-        writer.writeToFile(
-            context,
-            target,
-            new Writer.FileResultCallback() {
-                @Override
-                public void onSuccess(@NonNull File file, @NonNull ParcelFileDescriptor descriptor) {
-                    PdfIoUtils.closeQuietly(descriptor);
-                    callback.onSuccess(file);
-                }
+        Writer writer = new Writer(adapter, attributes, pageRanges);
+        writer.writeToFile(target, writer.resultCallback(executor, callback));
+        return writer;
+    }
 
-                @Override
-                public void onError(@NonNull String message) {
-                    callback.onError(message);
-                }
-            }
-        );
+    /**
+     * Upper bound of the heap needed to base64 encode a PDF of {@code pdfBytes} bytes: the encoded
+     * byte array, the resulting String (one byte per char for base64's ASCII alphabet) and the
+     * fixed read buffer.
+     */
+    public static long estimateBase64PeakBytes(long pdfBytes) {
+        return Base64Files.estimatePeakBytes(pdfBytes);
     }
 
-    private static final class Writer {
+    /**
+     * Handle of a write in progress.
+     */
+    public interface WriteHandle {
+        /**
+         * Cancels the write: the adapter is signalled, the partially written file is deleted and
+         * the callback is not invoked anymore. Must be called on the main thread.
+         */
+        void cancel();
+    }
+
+    private static final class Writer implements WriteHandle {
 
         interface FileResultCallback {
-            void onSuccess(@NonNull File file, @NonNull ParcelFileDescriptor descriptor);
+            /**
+             * @param pageCount page count reported at layout time, or
+             *     {@link PrintDocumentInfo#PAGE_COUNT_UNKNOWN}.
+             */
+            void onSuccess(@NonNull File file, @NonNull ParcelFileDescriptor descriptor, int pageCount, long layoutMs, long writeMs);
             void onError(@NonNull String message);
         }
 
         private static final PageRange[] ALL_PAGES = new PageRange[] { PageRange.ALL_PAGES };
+        private static final String CANCELLED_MESSAGE = "PDF generation was cancelled.";
 
         private final PrintDocumentAdapter adapter;
         private final PrintAttributes attributes;
+        private final PageRange[] pageRanges;
+        private final CancellationSignal cancellationSignal = new CancellationSignal();
+        private File file;
+        private ParcelFileDescriptor descriptor;
+        private boolean cancelled;
 
-        Writer(PrintDocumentAdapter adapter, PrintAttributes attributes) {
+        Writer(PrintDocumentAdapter adapter, PrintAttributes attributes, PageRange[] pageRanges) {
             this.adapter = adapter;
             this.attributes = attributes;
+            this.pageRanges = pageRanges;
+        }
+
+        private boolean writesAllPages() {
+            return pageRanges == null || pageRanges.length == 0;
+        }
+
+        /**
+         * Adapts a public callback, counting the written pages on {@code executor} when they are
+         * not implied by the layout page count. WebView adapters do not report one, and the write
+         * finishes on the main thread.
+         */
+        FileResultCallback resultCallback(Executor executor, FileCallback callback) {
+            return new FileResultCallback() {
+                @Override
+                public void onSuccess(
+                    @NonNull File file,
+                    @NonNull ParcelFileDescriptor descriptor,
+                    int layoutPageCount,
+                    long layoutMs,
+                    long writeMs
+                ) {
+                    PdfIoUtils.closeQuietly(descriptor);
+                    executor.execute(() -> {
+                        int documentPageCount = layoutPageCount;
+                        int pageCount = writesAllPages() && layoutPageCount >= 0 ? layoutPageCount : PdfIoUtils.countPages(file);
+                        if (documentPageCount < 0 && writesAllPages()) {
+                            documentPageCount = pageCount;
+                        }
+                        if (pageCount == 0 && !writesAllPages()) {
+                            // Ranges past the end could not be clipped without a layout page count.
+                            //noinspection ResultOfMethodCallIgnored
+                            file.delete();
+                            callback.onError("None of the requested pages exist.");
+                            return;
+                        }
+                        callback.onSuccess(new WriteResult(file, pageCount, documentPageCount, layoutMs, writeMs));
+                    });
+                }
+
+                @Override
+                public void onError(@NonNull String message) {
+                    callback.onError(message);
+                }
+            };
+        }
+
+        /**
+         * Drops the parts of the requested ranges that lie past the last page, so the adapter is
+         * never asked for pages it does not have. Returns an empty array when nothing is left.
+         */
+        private PageRange[] pagesToWrite(int layoutPageCount) {
+            if (writesAllPages()) {
+                return ALL_PAGES;
+            }
+            if (layoutPageCount < 0) {
+                return pageRanges;
+            }
+            List<PageRange> clipped = new ArrayList<>();
+            for (PageRange range : pageRanges) {
+                if (range.getStart() < layoutPageCount) {
+                    clipped.add(new PageRange(range.getStart(), Math.min(range.getEnd(), layoutPageCount - 1)));
+                }
+            }
+            return clipped.toArray(new PageRange[0]);
         }
 
         void writeToTempFile(Context context, FileResultCallback callback) {
             try {
-                File tempFile = File.createTempFile("capgo_pdf_generator", ".pdf", context.getCacheDir());
-                writeToDescriptor(tempFile, callback);
+                file = PdfFiles.createTemp(context.getCacheDir());
             } catch (Exception ex) {
                 callback.onError("Failed to create temporary file for PDF.");
+                return;
             }
+            writeToDescriptor(callback);
         }
 
-        void writeToFile(Context context, File file, FileResultCallback callback) {
+        void writeToFile(File target, FileResultCallback callback) {
             try {
-                if (file.exists() && !file.delete()) {
-                    callback.onError("Failed to override existing PDF file.");
-                    return;
-                }
-                File parent = file.getParentFile();
-                if (parent != null && !parent.exists() && !parent.mkdirs()) {
-                    callback.onError("Failed to prepare output directory for PDF.");
-                    return;
-                }
-                writeToDescriptor(file, callback);
+                PdfFiles.prepareTarget(target);
+            } catch (IOException ex) {
+                callback.onError(ex.getMessage());
+                return;
             } catch (Exception ex) {
                 callback.onError("Failed to prepare PDF output file.");
+                return;
+            }
+            file = target;
+            writeToDescriptor(callback);
+        }
+
+        /**
+         * Signals the adapter, drops the partial output and suppresses any later callback.
+         */
+        @Override
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            cancellationSignal.cancel();
+            discardOutput();
+        }
+
+        private void discardOutput() {
+            PdfIoUtils.closeQuietly(descriptor);
+            descriptor = null;
+            if (file != null) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+
+        private void fail(FileResultCallback callback, String message) {
+            discardOutput();
+            if (!cancelled) {
+                callback.onError(message);
             }
         }
 
-        private void writeToDescriptor(File file, FileResultCallback callback) {
+        private void writeToDescriptor(FileResultCallback callback) {
+            if (cancelled) {
+                discardOutput();
+                return;
+            }
             try {
-                ParcelFileDescriptor descriptor = ParcelFileDescriptor.open(
+                descriptor = ParcelFileDescriptor.open(
                     file,
                     ParcelFileDescriptor.MODE_CREATE | ParcelFileDescriptor.MODE_READ_WRITE | ParcelFileDescriptor.MODE_TRUNCATE
                 );
-                CancellationSignal cancellationSignal = new CancellationSignal();
+                long layoutStartedAt = SystemClock.elapsedRealtime();
                 adapter.onLayout(
                     null,
                     attributes,
@@ -142,24 +324,55 @@ public final class CapgoPdfPrintUtils {
                     new PrintDocumentAdapter.LayoutResultCallback() {
                         @Override
                         public void onLayoutFailed(CharSequence error) {
-                            callback.onError("PDF layout failed: " + (error == null ? "" : error));
+                            fail(callback, "PDF layout failed: " + (error == null ? "" : error));
+                        }
+
+                        @Override
+                        public void onLayoutCancelled() {
+                            fail(callback, CANCELLED_MESSAGE);
                         }
 
                         @Override
                         public void onLayoutFinished(PrintDocumentInfo info, boolean changed) {
+                            if (cancelled) {
+                                return;
+                            }
+                            long writeStartedAt = SystemClock.elapsedRealtime();
+                            int pageCount = info == null ? PrintDocumentInfo.PAGE_COUNT_UNKNOWN : info.getPageCount();
+                            PageRange[] pages = pagesToWrite(pageCount);
+                            if (pages.length == 0) {
+                                fail(callback, "None of the requested pages exist; the document has " + pageCount + " pages.");
+                                return;
+                            }
                             adapter.onWrite(
-                                ALL_PAGES,
+                                pages,
                                 descriptor,
                                 cancellationSignal,
                                 new PrintDocumentAdapter.WriteResultCallback() {
                                     @Override
                                     public void onWriteFinished(PageRange[] pages) {
-                                        callback.onSuccess(file, descriptor);
+                                        if (cancelled) {
+                                            return;
+                                        }
+                                        ParcelFileDescriptor written = descriptor;
+                                        descriptor = null;
+                                        callback.onSuccess(
+                                            file,
+                                            written,
+                                            pageCount,
+                                            writeStartedAt - layoutStartedAt,
+                                            SystemClock.elapsedRealtime() - writeStartedAt
+                                        );
                                     }
 
                                     @Override
                                     public void onWriteFailed(CharSequence error) {
-                                        callback.onError("PDF write failed: " + (error == null ? "" : error));
+                                        fail(callback, "PDF write failed: " + (error == null ? "" : error));
+                                    }
+
+                                    @Override
+                                    public void onWriteCancelled() {
+                                        fail(callback, CANCELLED_MESSAGE);
                                     }
                                 }
                             );
@@ -168,7 +381,7 @@ public final class CapgoPdfPrintUtils {
                     null
                 );
             } catch (Exception ex) {
-                callback.onError("Failed to create PDF output.");
+                fail(callback, "Failed to create PDF output.");
             }
         }
     }
@@ -177,17 +390,19 @@ public final class CapgoPdfPrintUtils {
 
         private PdfIoUtils() {}
 
-        static String readBase64(File file) throws Exception {
-            FileInputStream inputStream = new FileInputStream(file);
-            try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-                byte[] buffer = new byte[8192];
-                int read;
-                while ((read = inputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, read);
-                }
-                return Base64.encodeToString(outputStream.toByteArray(), Base64.NO_WRAP);
-            } finally {
-                inputStream.close();
+        /**
+         * Counts the pages of a written PDF. WebView print adapters usually report
+         * {@link PrintDocumentInfo#PAGE_COUNT_UNKNOWN} at layout time, so the file is opened with
+         * {@link PdfRenderer}, which only parses the document's page tree.
+         */
+        static int countPages(File file) {
+            try (
+                ParcelFileDescriptor descriptor = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+                PdfRenderer renderer = new PdfRenderer(descriptor)
+            ) {
+                return renderer.getPageCount();
+            } catch (Exception ex) {
+                return PrintDocumentInfo.PAGE_COUNT_UNKNOWN;
             }
         }
 
@@ -0,0 +1,125 @@
+package app.capgo.pdfgenerator;
+
+import android.os.Process;
+import android.os.SystemClock;
+import com.getcapacitor.JSObject;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed-size pool of background-priority threads for the work that follows a PDF write:
+ * encoding, copying, hashing and cleanup. The queue itself is unbounded, but its depth is
+ * limited in practice by the job scheduler, which caps how many jobs can be in flight.
+ */
+final class BackgroundExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final int threads;
+
+    private long submitted;
+    private long completed;
+    private long maxQueued;
+    private long busyMs;
+    private long waitMs;
+    private long maxWaitMs;
+    private long startedAt = SystemClock.elapsedRealtime();
+
+    BackgroundExecutor(int threads) {
+        this.threads = Math.max(1, threads);
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(
+                () -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                },
+                "capgo-pdf-io-" + counter.incrementAndGet()
+            );
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(this.threads, this.threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Default thread count: enough to overlap I/O with encoding without competing with the UI
+     * thread and the WebView renderers for every core.
+     */
+    static int defaultThreads() {
+        return Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Queues {@code runnable}. Returns {@code false} once the executor has been shut down.
+     */
+    boolean execute(Runnable runnable) {
+        long queuedAt = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            submitted++;
+        }
+        try {
+            executor.execute(() -> {
+                long startedRunningAt = SystemClock.elapsedRealtime();
+                try {
+                    runnable.run();
+                } finally {
+                    long finishedAt = SystemClock.elapsedRealtime();
+                    onCompleted(startedRunningAt - queuedAt, finishedAt - startedRunningAt);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            synchronized (this) {
+                submitted--;
+            }
+            return false;
+        }
+        synchronized (this) {
+            maxQueued = Math.max(maxQueued, executor.getQueue().size());
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting work. Tasks already queued still run so temporary files get cleaned up.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    synchronized void reset() {
+        submitted = executor.getQueue().size() + executor.getActiveCount();
+        completed = 0;
+        maxQueued = executor.getQueue().size();
+        busyMs = 0;
+        waitMs = 0;
+        maxWaitMs = 0;
+        startedAt = SystemClock.elapsedRealtime();
+    }
+
+    synchronized JSObject stats() {
+        long elapsedMs = Math.max(1, SystemClock.elapsedRealtime() - startedAt);
+        JSObject stats = new JSObject();
+        stats.put("threads", threads);
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("maxQueued", maxQueued);
+        stats.put("submitted", submitted);
+        stats.put("completed", completed);
+        stats.put("meanWaitMs", completed > 0 ? waitMs / completed : 0);
+        stats.put("maxWaitMs", maxWaitMs);
+        stats.put("utilization", Math.min(1.0, busyMs / (double) (elapsedMs * threads)));
+        return stats;
+    }
+
+    private synchronized void onCompleted(long waitedMs, long ranMs) {
+        completed++;
+        waitMs += waitedMs;
+        maxWaitMs = Math.max(maxWaitMs, waitedMs);
+        busyMs += ranMs;
+    }
+}
@@ -0,0 +1,52 @@
+package app.capgo.pdfgenerator;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * {@link PdfOptimizer.ImageResampler} backed by {@link BitmapFactory}. The JPEG is decoded at the
+ * smallest power-of-two subsample that still covers the target size, so a large photo never has
+ * to be decoded at full resolution.
+ */
+final class BitmapImageResampler implements PdfOptimizer.ImageResampler {
+
+    @Override
+    public byte[] resample(byte[] jpeg, int width, int height, int quality) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1;
+        while (bounds.outWidth / (options.inSampleSize * 2) >= width && bounds.outHeight / (options.inSampleSize * 2) >= height) {
+            options.inSampleSize *= 2;
+        }
+
+        Bitmap decoded = null;
+        Bitmap scaled = null;
+        try {
+            decoded = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+            if (decoded == null) {
+                return null;
+            }
+            scaled = Bitmap.createScaledBitmap(decoded, width, height, true);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!scaled.compress(Bitmap.CompressFormat.JPEG, quality, out)) {
+                return null;
+            }
+            return out.toByteArray();
+        } catch (OutOfMemoryError ex) {
+            return null;
+        } finally {
+            if (scaled != null && scaled != decoded) {
+                scaled.recycle();
+            }
+            if (decoded != null) {
+                decoded.recycle();
+            }
+        }
+    }
+}
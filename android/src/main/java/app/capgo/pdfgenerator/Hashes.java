@@ -0,0 +1,58 @@
+package app.capgo.pdfgenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+final class Hashes {
+
+    private Hashes() {}
+
+    /**
+     * Returns the lowercase hex SHA-256 of the UTF-8 encoded parts, separated by a zero byte so
+     * that different splits of the same text never collide.
+     */
+    static String sha256Hex(String... parts) {
+        MessageDigest digest = sha256();
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                digest.update((byte) 0);
+            }
+            digest.update(parts[i].getBytes(StandardCharsets.UTF_8));
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Returns the lowercase hex SHA-256 of everything left in {@code in}, which is closed.
+     */
+    static String sha256Hex(InputStream in) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream input = in) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,141 @@
+package app.capgo.pdfgenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * HTML document with {@code {{ path }}} placeholders, split into literal and placeholder segments
+ * once at registration so every render is a single pass of appends. Double braces insert the
+ * HTML-escaped value, triple braces ({@code {{{ path }}}}) insert it as is. Paths are dot
+ * separated and may index arrays ({@code items.0.name}); missing values render as empty strings.
+ *
+ * <p>Instances are immutable and safe to render from any thread.
+ */
+final class HtmlTemplate {
+
+    final String baseUrl;
+
+    /** One more literal than placeholders: literal, placeholder, literal, ..., literal. */
+    private final String[] literals;
+    private final String[][] paths;
+    private final boolean[] raw;
+    private final int literalLength;
+
+    private HtmlTemplate(String baseUrl, List<String> literals, List<String[]> paths, List<Boolean> raw) {
+        this.baseUrl = baseUrl;
+        this.literals = literals.toArray(new String[0]);
+        this.paths = paths.toArray(new String[0][]);
+        this.raw = new boolean[raw.size()];
+        int length = 0;
+        for (String literal : this.literals) {
+            length += literal.length();
+        }
+        for (int i = 0; i < this.raw.length; i++) {
+            this.raw[i] = raw.get(i);
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Parses {@code html}.
+     *
+     * @throws IllegalArgumentException when a placeholder is unclosed or empty.
+     */
+    static HtmlTemplate compile(String html, String baseUrl) {
+        List<String> literals = new ArrayList<>();
+        List<String[]> paths = new ArrayList<>();
+        List<Boolean> raw = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int open = html.indexOf("{{", position);
+            if (open < 0) {
+                literals.add(html.substring(position));
+                break;
+            }
+            boolean triple = html.startsWith("{{{", open);
+            String closing = triple ? "}}}" : "}}";
+            int start = open + (triple ? 3 : 2);
+            int close = html.indexOf(closing, start);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder at offset " + open + ".");
+            }
+            String path = html.substring(start, close).trim();
+            if (path.isEmpty()) {
+                throw new IllegalArgumentException("Empty placeholder at offset " + open + ".");
+            }
+            literals.add(html.substring(position, open));
+            paths.add(path.split("\\."));
+            raw.add(triple);
+            position = close + closing.length();
+        }
+        return new HtmlTemplate(baseUrl, literals, paths, raw);
+    }
+
+    int placeholderCount() {
+        return paths.length;
+    }
+
+    String render(JSONObject data) {
+        StringBuilder html = new StringBuilder(literalLength + paths.length * 16);
+        for (int i = 0; i < paths.length; i++) {
+            html.append(literals[i]);
+            String value = lookup(data, paths[i]);
+            if (raw[i]) {
+                html.append(value);
+            } else {
+                appendEscaped(html, value);
+            }
+        }
+        html.append(literals[literals.length - 1]);
+        return html.toString();
+    }
+
+    private static String lookup(JSONObject data, String[] path) {
+        Object value = data;
+        for (String segment : path) {
+            if (value instanceof JSONObject) {
+                value = ((JSONObject) value).opt(segment);
+            } else if (value instanceof JSONArray) {
+                value = arrayElement((JSONArray) value, segment);
+            } else {
+                return "";
+            }
+        }
+        return value == null || value == JSONObject.NULL ? "" : value.toString();
+    }
+
+    private static Object arrayElement(JSONArray array, String segment) {
+        try {
+            return array.opt(Integer.parseInt(segment));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static void appendEscaped(StringBuilder html, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    html.append("&amp;");
+                    break;
+                case '<':
+                    html.append("&lt;");
+                    break;
+                case '>':
+                    html.append("&gt;");
+                    break;
+                case '"':
+                    html.append("&quot;");
+                    break;
+                case '\'':
+                    html.append("&#39;");
+                    break;
+                default:
+                    html.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package app.capgo.pdfgenerator;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import com.getcapacitor.JSObject;
+import java.util.Locale;
+
+/**
+ * Derives the plugin's resource limits from memory pressure. Pressure is the worse of the last
+ * {@code onTrimMemory} signal, which is held for {@link #TRIM_HOLD_MS}, and what the system and
+ * heap report when {@link #evaluate()} runs, so limits recover once memory frees up.
+ *
+ * <p>Heap headroom counts garbage that has not been collected yet, so it only ever raises the
+ * pressure to {@link Pressure#LOW} when it is nearly exhausted, and only drops it again once twice
+ * that much is free. {@link Pressure#MODERATE} comes from {@code onTrimMemory} alone.
+ */
+final class MemoryGovernor implements ComponentCallbacks2 {
+
+    enum Pressure {
+        NORMAL,
+        MODERATE,
+        LOW,
+        CRITICAL;
+
+        String jsName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    interface Listener {
+        /** Called whenever the pressure level changes. */
+        void onLimitsChanged(MemoryGovernor governor);
+    }
+
+    static final long TRIM_HOLD_MS = 30_000;
+    private static final long MIN_HEAP_HEADROOM_BYTES = 16L * 1024 * 1024;
+    private static final long RECOVERED_HEAP_HEADROOM_BYTES = 2 * MIN_HEAP_HEADROOM_BYTES;
+
+    private final ActivityManager activityManager;
+    private final Listener listener;
+    private final int configuredConcurrency;
+    private final int configuredPoolSize;
+    private final boolean enabled;
+    private final boolean lowRamDevice;
+
+    private Pressure pressure = Pressure.NORMAL;
+    private Pressure trimPressure = Pressure.NORMAL;
+    private long trimmedAt;
+    private int lastTrimLevel = -1;
+    private long availableMemory = -1;
+    private boolean lowMemory;
+    private long heapHeadroom = -1;
+    private boolean heapLow;
+
+    /**
+     * @param enabled when {@code false} the configured limits always apply.
+     */
+    MemoryGovernor(Context context, boolean enabled, int configuredConcurrency, int configuredPoolSize, Listener listener) {
+        this.activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        this.listener = listener;
+        this.enabled = enabled;
+        this.configuredConcurrency = Math.max(1, configuredConcurrency);
+        this.configuredPoolSize = Math.max(0, configuredPoolSize);
+        this.lowRamDevice = enabled && activityManager != null && activityManager.isLowRamDevice();
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Samples available memory and updates the pressure level. Cheap enough to run per job.
+     */
+    void evaluate() {
+        if (!enabled) {
+            return;
+        }
+        Pressure measured = measure();
+        Pressure next;
+        synchronized (this) {
+            Pressure held = SystemClock.elapsedRealtime() - trimmedAt < TRIM_HOLD_MS ? trimPressure : Pressure.NORMAL;
+            next = measured.compareTo(held) > 0 ? measured : held;
+            if (next == pressure) {
+                return;
+            }
+            pressure = next;
+        }
+        listener.onLimitsChanged(this);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        Pressure signalled;
+        if (level >= TRIM_MEMORY_COMPLETE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            signalled = Pressure.CRITICAL;
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+            signalled = Pressure.LOW;
+        } else if (level == TRIM_MEMORY_RUNNING_MODERATE) {
+            signalled = Pressure.MODERATE;
+        } else {
+            // TRIM_MEMORY_UI_HIDDEN only means the UI went away; exports keep going.
+            return;
+        }
+        synchronized (this) {
+            lastTrimLevel = level;
+            trimPressure = signalled;
+            trimmedAt = SystemClock.elapsedRealtime();
+        }
+        evaluate();
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration configuration) {}
+
+    synchronized Pressure pressure() {
+        return pressure;
+    }
+
+    synchronized int maxConcurrentJobs() {
+        if (lowRamDevice || pressure.compareTo(Pressure.LOW) >= 0) {
+            return 1;
+        }
+        return pressure == Pressure.MODERATE ? Math.max(1, configuredConcurrency / 2) : configuredConcurrency;
+    }
+
+    synchronized int webViewPoolSize() {
+        switch (pressure) {
+            case NORMAL:
+                return lowRamDevice ? Math.min(1, configuredPoolSize) : configuredPoolSize;
+            case MODERATE:
+                return Math.min(1, configuredPoolSize);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Scales the heap budget for building a base64 result. Above normal pressure, jobs over it are
+     * delivered as files.
+     */
+    synchronized long base64Budget(long budget) {
+        switch (pressure) {
+            case NORMAL:
+                return budget;
+            case MODERATE:
+                return budget / 2;
+            case LOW:
+                return budget / 4;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Fraction of the in-memory subresource cache to keep.
+     */
+    synchronized double cacheRetention() {
+        switch (pressure) {
+            case NORMAL:
+                return 1;
+            case MODERATE:
+                return 0.5;
+            default:
+                return 0;
+        }
+    }
+
+    synchronized JSObject stats(long base64BudgetBytes) {
+        JSObject stats = new JSObject();
+        stats.put("enabled", enabled);
+        stats.put("pressure", pressure.jsName());
+        stats.put("maxConcurrentJobs", maxConcurrentJobs());
+        stats.put("webViewPoolSize", webViewPoolSize());
+        stats.put("base64MaxBytes", base64Budget(base64BudgetBytes));
+        stats.put("lowRamDevice", lowRamDevice);
+        stats.put("lowMemory", lowMemory);
+        stats.put("availableMemoryBytes", availableMemory);
+        stats.put("heapHeadroomBytes", heapHeadroom);
+        stats.put("lastTrimLevel", lastTrimLevel);
+        return stats;
+    }
+
+    private Pressure measure() {
+        Runtime runtime = Runtime.getRuntime();
+        long headroom = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        long available = -1;
+        boolean low = false;
+        long threshold = 0;
+        if (activityManager != null) {
+            ActivityManager.MemoryInfo info = new ActivityManager.MemoryInfo();
+            activityManager.getMemoryInfo(info);
+            available = info.availMem;
+            threshold = info.threshold;
+            low = info.lowMemory;
+        }
+        boolean tightHeap;
+        synchronized (this) {
+            heapHeadroom = headroom;
+            availableMemory = available;
+            lowMemory = low;
+            heapLow = headroom < (heapLow ? RECOVERED_HEAP_HEADROOM_BYTES : MIN_HEAP_HEADROOM_BYTES);
+            tightHeap = heapLow;
+        }
+        if (low) {
+            return Pressure.CRITICAL;
+        }
+        if ((available >= 0 && available < threshold * 2) || tightHeap) {
+            return Pressure.LOW;
+        }
+        return Pressure.NORMAL;
+    }
+}
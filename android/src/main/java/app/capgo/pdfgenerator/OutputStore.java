@@ -0,0 +1,211 @@
+package app.capgo.pdfgenerator;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Owns the files the plugin writes on its own behalf, such as shared PDFs, base64 jobs delivered
+ * as files and thumbnails. Each job gets its own directory, so jobs using the same file name never
+ * overwrite each other, and the store is kept under a byte quota and a maximum age.
+ *
+ * <p>Directories of jobs that are still running are never removed.
+ */
+final class OutputStore {
+
+    private static final Pattern PLAIN_ID = Pattern.compile("[A-Za-z0-9._-]{1,100}");
+
+    private final File root;
+    private final long maxBytes;
+    private final long maxAgeMs;
+    private final Set<String> active = new HashSet<>();
+
+    /**
+     * @param maxBytes quota for all stored outputs, {@code 0} for none.
+     * @param maxAgeMs age after which outputs are removed, {@code 0} to keep them until evicted.
+     */
+    OutputStore(File root, long maxBytes, long maxAgeMs) {
+        this.root = root;
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxAgeMs = Math.max(0, maxAgeMs);
+    }
+
+    /**
+     * Returns where {@code jobId} writes {@code fileName}, protecting the job's directory until
+     * {@link #release(String)}.
+     */
+    File fileFor(String jobId, String fileName) {
+        return new File(directoryFor(jobId), fileName);
+    }
+
+    /**
+     * Returns the job's directory, created if needed and protected until {@link #release(String)}.
+     */
+    synchronized File directoryFor(String jobId) {
+        String name = directoryName(jobId);
+        active.add(name);
+        File directory = new File(root, name);
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        return directory;
+    }
+
+    /**
+     * Lets cleanup consider the job's outputs again. Returns whether the job stored anything.
+     */
+    synchronized boolean release(String jobId) {
+        return active.remove(directoryName(jobId));
+    }
+
+    /**
+     * Removes outputs older than the maximum age, then the least recently written ones until the
+     * store fits its quota.
+     */
+    synchronized void trim() {
+        List<Entry> entries = entries();
+        long now = System.currentTimeMillis();
+        long total = 0;
+        List<Entry> kept = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (maxAgeMs > 0 && now - entry.modifiedAt >= maxAgeMs) {
+                delete(entry.directory);
+            } else {
+                kept.add(entry);
+                total += entry.bytes;
+            }
+        }
+        if (maxBytes == 0) {
+            return;
+        }
+        Collections.sort(kept, (a, b) -> Long.compare(a.modifiedAt, b.modifiedAt));
+        for (Entry entry : kept) {
+            if (total <= maxBytes) {
+                break;
+            }
+            delete(entry.directory);
+            total -= entry.bytes;
+        }
+    }
+
+    /**
+     * Removes the outputs of finished jobs, only those in {@code jobIds} when it is not
+     * {@code null} and only those older than {@code olderThanMs} when it is positive. Returns
+     * the number of removed files and their size in bytes.
+     */
+    synchronized long[] purge(Collection<String> jobIds, long olderThanMs) {
+        Set<String> names = null;
+        if (jobIds != null) {
+            names = new HashSet<>();
+            for (String jobId : jobIds) {
+                names.add(directoryName(jobId));
+            }
+        }
+        long now = System.currentTimeMillis();
+        long files = 0;
+        long bytes = 0;
+        for (Entry entry : entries()) {
+            if (names != null && !names.contains(entry.directory.getName())) {
+                continue;
+            }
+            if (olderThanMs > 0 && now - entry.modifiedAt < olderThanMs) {
+                continue;
+            }
+            files += entry.files.size();
+            bytes += entry.bytes;
+            delete(entry.directory);
+        }
+        return new long[] { files, bytes };
+    }
+
+    synchronized JSObject list() {
+        JSArray outputs = new JSArray();
+        long total = 0;
+        for (Entry entry : entries()) {
+            for (File file : entry.files) {
+                JSObject output = new JSObject();
+                output.put("jobId", entry.directory.getName());
+                output.put("path", file.getAbsolutePath());
+                output.put("size", file.length());
+                output.put("modifiedAt", file.lastModified());
+                outputs.put(output);
+            }
+            total += entry.bytes;
+        }
+        JSObject result = new JSObject();
+        result.put("outputs", outputs);
+        result.put("totalBytes", total);
+        result.put("maxBytes", maxBytes);
+        result.put("maxAgeMs", maxAgeMs);
+        return result;
+    }
+
+    /**
+     * Job ids are chosen by callers, so anything that is not a plain file name is replaced by
+     * its hash to keep the directory inside the store.
+     */
+    static String directoryName(String jobId) {
+        if (PLAIN_ID.matcher(jobId).matches() && !".".equals(jobId) && !"..".equals(jobId)) {
+            return jobId;
+        }
+        return Hashes.sha256Hex(jobId).substring(0, 32);
+    }
+
+    /** Directories of finished jobs. */
+    private List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>();
+        File[] directories = root.listFiles();
+        if (directories == null) {
+            return entries;
+        }
+        for (File directory : directories) {
+            if (!directory.isDirectory() || active.contains(directory.getName())) {
+                continue;
+            }
+            entries.add(new Entry(directory));
+        }
+        return entries;
+    }
+
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    private static final class Entry {
+
+        final File directory;
+        final List<File> files = new ArrayList<>();
+        long bytes;
+        long modifiedAt;
+
+        Entry(File directory) {
+            this.directory = directory;
+            modifiedAt = directory.lastModified();
+            File[] children = directory.listFiles();
+            if (children == null) {
+                return;
+            }
+            for (File child : children) {
+                if (child.isFile()) {
+                    files.add(child);
+                    bytes += child.length();
+                    modifiedAt = Math.max(modifiedAt, child.lastModified());
+                }
+            }
+        }
+    }
+}
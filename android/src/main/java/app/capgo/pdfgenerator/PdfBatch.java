@@ -0,0 +1,168 @@
+package app.capgo.pdfgenerator;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Runs many PDF sources through the plugin's render pipeline on behalf of a single plugin call.
+ * At most {@code parallelism} items are handed to the scheduler at a time; each finished item is
+ * reported through a {@code batchItem} event and the call resolves with a summary once every item
+ * has completed.
+ *
+ * <p>When merging, every item renders to its own shard file in parallel and the shards are
+ * concatenated in item order once all of them are done; the call then resolves like a single
+ * {@code fromURL}/{@code fromData} call.
+ */
+final class PdfBatch {
+
+    static final class Item {
+
+        final PdfSource source;
+        final PdfGeneratorOptions options;
+
+        Item(PdfSource source, PdfGeneratorOptions options) {
+            this.source = source;
+            this.options = options;
+        }
+    }
+
+    final String id = UUID.randomUUID().toString();
+
+    private final PdfGeneratorPlugin plugin;
+    private final PluginCall call;
+    private final List<Item> items;
+    private final int parallelism;
+    /** Options of the merged document, or {@code null} when items are delivered one by one. */
+    private final PdfGeneratorOptions mergeInto;
+    private final File[] shards;
+
+    private int nextIndex;
+    private int completed;
+    private int succeeded;
+    private String firstError;
+
+    PdfBatch(PdfGeneratorPlugin plugin, PluginCall call, List<Item> items, int parallelism, PdfGeneratorOptions mergeInto) {
+        this.plugin = plugin;
+        this.call = call;
+        this.items = items;
+        this.parallelism = Math.max(1, parallelism);
+        this.mergeInto = mergeInto;
+        this.shards = new File[items.size()];
+    }
+
+    void start() {
+        if (items.isEmpty()) {
+            call.resolve(summary());
+            return;
+        }
+        int initial = Math.min(parallelism, items.size());
+        for (int i = 0; i < initial; i++) {
+            submitNext();
+        }
+    }
+
+    private void submitNext() {
+        final int index;
+        synchronized (this) {
+            if (nextIndex >= items.size()) {
+                return;
+            }
+            index = nextIndex++;
+        }
+        Item item = items.get(index);
+        plugin.enqueueTask(
+            new PdfGenerationTask(
+                plugin,
+                new PdfJobListener() {
+                    @Override
+                    public void onResult(JSObject result) {
+                        JSObject event = newItemEvent(index, true);
+                        if (mergeInto != null) {
+                            // Shards are internal; they are deleted once merged.
+                            synchronized (PdfBatch.this) {
+                                shards[index] = new File(result.getString("path"));
+                            }
+                        } else {
+                            event.put("result", result);
+                        }
+                        onItemDone(event, true);
+                    }
+
+                    @Override
+                    public void onError(String message) {
+                        JSObject event = newItemEvent(index, false);
+                        event.put("error", message);
+                        synchronized (PdfBatch.this) {
+                            if (firstError == null) {
+                                firstError = "Batch item " + index + " failed: " + message;
+                            }
+                        }
+                        onItemDone(event, false);
+                    }
+                },
+                item.source,
+                item.options
+            )
+        );
+    }
+
+    private JSObject newItemEvent(int index, boolean success) {
+        JSObject event = new JSObject();
+        event.put("batchId", id);
+        event.put("index", index);
+        event.put("success", success);
+        return event;
+    }
+
+    private void onItemDone(JSObject event, boolean success) {
+        plugin.notifyBatchItem(event);
+        boolean done;
+        synchronized (this) {
+            completed++;
+            if (success) {
+                succeeded++;
+            }
+            done = completed == items.size();
+        }
+        if (!done) {
+            submitNext();
+        } else if (mergeInto == null) {
+            call.resolve(summary());
+        } else {
+            finishMerge();
+        }
+    }
+
+    private void finishMerge() {
+        List<File> files;
+        String error;
+        synchronized (this) {
+            files = new ArrayList<>(Arrays.asList(shards));
+            files.removeIf((file) -> file == null);
+            error = firstError;
+        }
+        if (error != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+            call.reject(error);
+            return;
+        }
+        plugin.deliverMerged(call, files, mergeInto);
+    }
+
+    private synchronized JSObject summary() {
+        JSObject result = new JSObject();
+        result.put("batchId", id);
+        result.put("total", items.size());
+        result.put("succeeded", succeeded);
+        result.put("failed", completed - succeeded);
+        return result;
+    }
+}
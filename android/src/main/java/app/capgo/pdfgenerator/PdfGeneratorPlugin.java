@@ -2,37 +2,315 @@ package app.capgo.pdfgenerator;
 
 import android.app.Activity;
 import android.content.ActivityNotFoundException;
+import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
+import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.print.CapgoPdfPrintUtils;
+import android.print.PageRange;
 import android.print.PrintAttributes;
 import android.print.PrintDocumentAdapter;
+import android.util.Log;
 import android.webkit.WebResourceError;
 import android.webkit.WebResourceRequest;
-import android.webkit.WebSettings;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 import androidx.annotation.NonNull;
 import androidx.core.content.FileProvider;
+import app.capgo.pdfgenerator.core.OptionValues;
+import app.capgo.pdfgenerator.core.PdfFiles;
+import com.getcapacitor.FileUtils;
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 @CapacitorPlugin(name = "PdfGenerator")
 public class PdfGeneratorPlugin extends Plugin {
 
+    private static final String TAG = "PdfGenerator";
+    private static final String WARM_UP_HTML = "<!DOCTYPE html><html><body><p>Warm-up</p></body></html>";
+    private static final String NO_CHUNK_LISTENER = "The 'stream' output type requires a 'pdfChunk' listener.";
+    /** How often a stream waiting for its last chunk to be dispatched checks for cancellation. */
+    private static final long CHUNK_DISPATCH_POLL_MS = 100;
+    /** Starts after which an unfinished background job is failed instead of resumed. */
+    private static final int MAX_BACKGROUND_JOB_ATTEMPTS = 3;
+
     private final String pluginVersion = "8.0.36";
 
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private final List<PdfGenerationTask> tasks = new ArrayList<>();
+    private final Map<String, HtmlTemplate> templates = new ConcurrentHashMap<>();
+    /** Jobs that other identical calls can still join, by {@link #flightKeyFor}. */
+    private final Map<String, PdfGenerationTask> inFlight = new HashMap<>();
+    /** Stored background jobs not handed to the scheduler yet, oldest first, by id. */
+    private final Map<String, JSObject> backgroundBacklog = new LinkedHashMap<>();
+    /** Ids of the stored background jobs handed to the scheduler that have not finished. */
+    private final Set<String> backgroundJobsRunning = new HashSet<>();
+
+    private WebViewPool webViewPool;
+    private PdfJobScheduler scheduler;
+    private long base64MemoryBudgetBytes;
+    private int jobTimeoutMs;
+    private RenderCache renderCache;
+    private boolean renderCacheEnabled;
+    private boolean deduplicateJobs;
+    private SubresourceCache subresourceCache;
+    private final PdfMetrics metrics = new PdfMetrics();
+    private BackgroundExecutor backgroundExecutor;
+    private PersistentJobQueue backgroundJobs;
+    private MemoryGovernor memoryGovernor;
+    private OutputStore outputStore;
+
+    /** Creates the print adapter of a loaded page. */
+    interface PrintAdapterFactory {
+        PrintDocumentAdapter create(WebView webView, String jobName);
+    }
+
+    /** Returns the activity to show the share sheet from, or {@code null} when there is none. */
+    interface ActivityProvider {
+        Activity get();
+    }
+
+    private WebViewPool.WebViewFactory webViewFactory = WebView::new;
+    private PrintAdapterFactory printAdapterFactory = WebView::createPrintDocumentAdapter;
+    private ActivityProvider activityProvider = this::getActivity;
+
+    /**
+     * Replaces how WebViews are created, so the pipeline can run against fakes in JVM tests.
+     * Must be called before {@link #load()}.
+     */
+    void setWebViewFactory(WebViewPool.WebViewFactory webViewFactory) {
+        this.webViewFactory = webViewFactory;
+    }
+
+    void setPrintAdapterFactory(PrintAdapterFactory printAdapterFactory) {
+        this.printAdapterFactory = printAdapterFactory;
+    }
+
+    void setActivityProvider(ActivityProvider activityProvider) {
+        this.activityProvider = activityProvider;
+    }
+
+    @Override
+    public void load() {
+        super.load();
+        int backgroundThreads = getConfig().getInt("backgroundThreads", 0);
+        backgroundExecutor = new BackgroundExecutor(backgroundThreads > 0 ? backgroundThreads : BackgroundExecutor.defaultThreads());
+        int poolSize = getConfig().getInt("webViewPoolSize", 2);
+        int idleTimeoutMs = getConfig().getInt("webViewPoolIdleTimeoutMs", 60_000);
+        // Jobs never attach their WebView to a window, so the application context lets them keep
+        // running without a foreground activity.
+        webViewPool = new WebViewPool(getContext().getApplicationContext(), webViewFactory, mainHandler, poolSize, idleTimeoutMs);
+        int maxConcurrentJobs = getConfig().getInt("maxConcurrentJobs", 2);
+        scheduler = new PdfJobScheduler(
+            mainHandler,
+            maxConcurrentJobs,
+            getConfig().getInt("maxQueuedJobs", 32),
+            PdfJobScheduler.OverflowPolicy.from(getConfig().getString("queueOverflowPolicy", "reject")),
+            getConfig().getInt("queueWaitTimeoutMs", 30_000)
+        );
+        base64MemoryBudgetBytes = getConfig().getInt("base64MemoryBudgetBytes", 0);
+        jobTimeoutMs = Math.max(0, getConfig().getInt("jobTimeoutMs", 120_000));
+        backgroundJobs = new PersistentJobQueue(new File(getContext().getFilesDir(), "capgo_pdf_background_jobs.json"));
+        outputStore = new OutputStore(
+            new File(getContext().getCacheDir(), "capgo_pdf_outputs"),
+            getConfig().getInt("outputStoreMaxBytes", 100 * 1024 * 1024),
+            getConfig().getInt("outputStoreMaxAgeMs", 24 * 60 * 60 * 1000)
+        );
+        long loadedAt = System.currentTimeMillis();
+        runInBackground(() -> {
+            // Nothing has been written yet by this process, so older temporary files are leftovers.
+            PdfFiles.deleteStaleTemps(getContext().getCacheDir(), loadedAt);
+            outputStore.trim();
+        });
+        renderCacheEnabled = getConfig().getBoolean("renderCache", false);
+        deduplicateJobs = getConfig().getBoolean("deduplicateJobs", true);
+        renderCache = new RenderCache(
+            new File(getContext().getCacheDir(), "capgo_pdf_render_cache"),
+            getConfig().getInt("renderCacheMaxBytes", 50 * 1024 * 1024),
+            getConfig().getInt("renderCacheTtlMs", 24 * 60 * 60 * 1000)
+        );
+        if (getConfig().getBoolean("subresourceCache", false)) {
+            subresourceCache = new SubresourceCache(
+                new File(getContext().getCacheDir(), "capgo_pdf_subresource_cache"),
+                getConfig().getInt("subresourceCacheMemoryBytes", 8 * 1024 * 1024),
+                getConfig().getInt("subresourceCacheDiskBytes", 32 * 1024 * 1024),
+                getConfig().getInt("subresourceCacheMaxAgeMs", 60 * 60 * 1000)
+            );
+            String[] manifest = getConfig().getArray("subresourceManifest");
+            if (manifest != null && manifest.length > 0) {
+                runInBackground(() -> {
+                    for (String url : manifest) {
+                        subresourceCache.preload(url);
+                    }
+                });
+            }
+        }
+        memoryGovernor = new MemoryGovernor(
+            getContext(),
+            getConfig().getBoolean("adaptiveLimits", true),
+            maxConcurrentJobs,
+            poolSize,
+            this::applyAdaptiveLimits
+        );
+        if (memoryGovernor.isEnabled()) {
+            // The listener only hears about pressure changes; limits that hold at normal pressure,
+            // e.g. on low-RAM devices, are applied here.
+            applyAdaptiveLimits(memoryGovernor);
+            getContext().getApplicationContext().registerComponentCallbacks(memoryGovernor);
+            memoryGovernor.evaluate();
+        }
+        resumeBackgroundJobs();
+        if (getConfig().getBoolean("warmUpOnLoad", false)) {
+            warmUp(
+                true,
+                1,
+                new PdfJobListener() {
+                    @Override
+                    public void onResult(JSObject result) {
+                        Log.d(TAG, "Warm-up finished in " + result.getInteger("durationMs") + " ms.");
+                    }
+
+                    @Override
+                    public void onError(String message) {
+                        Log.w(TAG, "Warm-up failed: " + message);
+                    }
+                }
+            );
+        }
+    }
+
+    @PluginMethod
+    public void warmUp(PluginCall call) {
+        warmUp(Boolean.TRUE.equals(call.getBoolean("render", true)), call.getInt("webViews", 1), PdfJobListener.forCall(call));
+    }
+
+    /**
+     * Pays the one-off costs of the first export once the main thread is idle: loading the
+     * WebView provider and, with {@code render}, initializing the print pipeline by rendering a
+     * throwaway document. Then keeps up to {@code webViews} WebViews ready in the pool.
+     */
+    private void warmUp(boolean render, int webViews, PdfJobListener listener) {
+        long startedAt = SystemClock.elapsedRealtime();
+        runWhenIdle(() -> {
+            if (!render) {
+                finishWarmUp(startedAt, false, webViews, listener);
+                return;
+            }
+            JSObject data = new JSObject();
+            data.put("type", "base64");
+            data.put("priority", "background");
+            data.put("cache", false);
+            PdfJobListener renderListener = new PdfJobListener() {
+                @Override
+                public void onResult(JSObject result) {
+                    // Once idle again, the render's WebView is back in the pool and counts.
+                    runWhenIdle(() -> finishWarmUp(startedAt, true, webViews, listener));
+                }
+
+                @Override
+                public void onError(String message) {
+                    listener.onError("Warm-up render failed: " + message);
+                }
+            };
+            PdfGenerationTask task = new PdfGenerationTask(this, renderListener, new HtmlSource(WARM_UP_HTML, null), PdfGeneratorOptions.from(data));
+            task.internal = true;
+            enqueueTask(task);
+        });
+    }
+
+    /**
+     * Runs {@code runnable} on the main thread once its queue has no pending work.
+     */
+    private void runWhenIdle(Runnable runnable) {
+        mainHandler.post(() ->
+            Looper.myQueue().addIdleHandler(() -> {
+                runnable.run();
+                return false;
+            })
+        );
+    }
+
+    private void finishWarmUp(long startedAt, boolean rendered, int webViews, PdfJobListener listener) {
+        webViewPool.prewarm(Math.max(0, webViews));
+        JSObject result = new JSObject();
+        result.put("rendered", rendered);
+        result.put("durationMs", SystemClock.elapsedRealtime() - startedAt);
+        result.put("webViewPool", webViewPool.stats());
+        listener.onResult(result);
+    }
+
+    /**
+     * Follows a change of memory pressure: adjusts the render slots and shrinks or restores the
+     * WebView pool and the in-memory subresource cache.
+     */
+    private void applyAdaptiveLimits(MemoryGovernor governor) {
+        scheduler.setMaxConcurrent(governor.maxConcurrentJobs());
+        int poolSize = governor.webViewPoolSize();
+        mainHandler.post(() -> webViewPool.setMaxIdle(poolSize));
+        if (subresourceCache != null) {
+            subresourceCache.retainMemory(governor.cacheRetention());
+        }
+    }
+
+    @PluginMethod
+    public void getAdaptiveLimits(PluginCall call) {
+        memoryGovernor.evaluate();
+        call.resolve(memoryGovernor.stats(CapgoPdfPrintUtils.base64MemoryBudget(base64MemoryBudgetBytes)));
+    }
+
+    /**
+     * Resumes background jobs that were interrupted when the process was last killed, except those
+     * that were already started {@link #MAX_BACKGROUND_JOB_ATTEMPTS} times: they are likely what
+     * killed it.
+     */
+    private void resumeBackgroundJobs() {
+        runInBackground(() -> {
+            for (JSObject job : backgroundJobs.failExhausted(MAX_BACKGROUND_JOB_ATTEMPTS)) {
+                reportBackgroundJob(job);
+            }
+            for (JSObject request : backgroundJobs.pendingRequests()) {
+                scheduleBackgroundJob(request);
+            }
+        });
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        mainHandler.post(() -> webViewPool.clear());
+        if (memoryGovernor.isEnabled()) {
+            getContext().getApplicationContext().unregisterComponentCallbacks(memoryGovernor);
+        }
+        backgroundExecutor.shutdown();
+        super.handleOnDestroy();
+    }
 
     @PluginMethod
     public void fromURL(PluginCall call) {
@@ -42,9 +320,12 @@ public class PdfGeneratorPlugin extends Plugin {
             return;
         }
 
-        PdfGeneratorOptions options = PdfGeneratorOptions.from(call);
+        PdfGeneratorOptions options = parseOptions(call);
+        if (options == null) {
+            return;
+        }
         PdfSource source = new UrlSource(url);
-        enqueueTask(new PdfGenerationTask(this, call, source, options));
+        enqueueTask(new PdfGenerationTask(this, PdfJobListener.forCall(call), source, options));
     }
 
     @PluginMethod
@@ -55,84 +336,1031 @@ public class PdfGeneratorPlugin extends Plugin {
             return;
         }
 
-        PdfGeneratorOptions options = PdfGeneratorOptions.from(call);
+        PdfGeneratorOptions options = parseOptions(call);
+        if (options == null) {
+            return;
+        }
         PdfSource source = new HtmlSource(data, options.baseUrl);
-        enqueueTask(new PdfGenerationTask(this, call, source, options));
+        enqueueTask(new PdfGenerationTask(this, PdfJobListener.forCall(call), source, options));
     }
 
-    private void enqueueTask(PdfGenerationTask task) {
+    @PluginMethod
+    public void fromFile(PluginCall call) {
+        String path = call.getString("path");
+        if (path == null || path.trim().isEmpty()) {
+            call.reject("A valid 'path' is required.");
+            return;
+        }
+        Uri uri = FileSource.parse(path.trim());
+        if (uri == null) {
+            call.reject("The 'path' must be an absolute path, a file:// URI or a content:// URI.");
+            return;
+        }
+        FileSource source = new FileSource(getContext(), uri);
+        if (source.isFile() && !(source.file().isFile() && source.file().canRead())) {
+            call.reject("File not found or not readable: " + source.file().getAbsolutePath());
+            return;
+        }
+
+        PdfGeneratorOptions options = parseOptions(call);
+        if (options == null) {
+            return;
+        }
+        enqueueTask(new PdfGenerationTask(this, PdfJobListener.forCall(call), source, options));
+    }
+
+    @PluginMethod
+    public void enqueueBackgroundJob(PluginCall call) {
+        JSObject request = call.getData();
+        if (!"file".equals(request.getString("type", "file"))) {
+            call.reject("Background jobs only support the 'file' output type.");
+            return;
+        }
+        request.put("type", "file");
+        PdfGeneratorOptions options;
+        try {
+            options = PdfGeneratorOptions.from(request);
+        } catch (IllegalArgumentException ex) {
+            call.reject(ex.getMessage());
+            return;
+        }
+        if (backgroundSource(request, options) == null) {
+            call.reject("Exactly one of 'url', 'data' or 'path' is required.");
+            return;
+        }
+        // Resumed jobs must keep the id the caller was given, so a missing one is generated here.
+        String jobId = options.jobId != null ? options.jobId : UUID.randomUUID().toString();
+        if (backgroundJobs.contains(jobId)) {
+            call.reject("A background job with id '" + jobId + "' already exists.");
+            return;
+        }
+        request.put("jobId", jobId);
+        backgroundJobs.add(jobId, request);
+        JSObject result = new JSObject();
+        result.put("jobId", jobId);
+        call.resolve(result);
+        scheduleBackgroundJob(request);
+    }
+
+    @PluginMethod
+    public void getBackgroundJobs(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("jobs", backgroundJobs.list());
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void listOutputs(PluginCall call) {
+        runInBackground(() -> call.resolve(outputStore.list()));
+    }
+
+    @PluginMethod
+    public void purgeOutputs(PluginCall call) {
+        JSArray jobIds = call.getArray("jobIds");
+        List<String> ids = null;
+        if (jobIds != null) {
+            ids = new ArrayList<>();
+            for (int i = 0; i < jobIds.length(); i++) {
+                ids.add(jobIds.optString(i));
+            }
+        }
+        List<String> selected = ids;
+        long olderThanMs = call.getInt("olderThanMs", 0);
+        runInBackground(() -> {
+            long[] purged = outputStore.purge(selected, olderThanMs);
+            JSObject result = new JSObject();
+            result.put("removed", purged[0]);
+            result.put("bytes", purged[1]);
+            call.resolve(result);
+        });
+    }
+
+    @PluginMethod
+    public void clearBackgroundJobs(PluginCall call) {
+        JSArray jobIds = call.getArray("jobIds");
+        List<String> ids = null;
+        if (jobIds != null) {
+            ids = new ArrayList<>();
+            for (int i = 0; i < jobIds.length(); i++) {
+                ids.add(jobIds.optString(i));
+            }
+        }
+        JSObject result = new JSObject();
+        result.put("removed", backgroundJobs.removeFinished(ids));
+        call.resolve(result);
+    }
+
+    /**
+     * Builds the source of a background job from the same keys the single-document methods take,
+     * or returns {@code null} unless exactly one of them is set.
+     */
+    private PdfSource backgroundSource(JSObject request, PdfGeneratorOptions options) {
+        String url = request.getString("url");
+        String data = request.getString("data");
+        String path = request.getString("path");
+        List<PdfSource> sources = new ArrayList<>();
+        if (url != null && !url.trim().isEmpty()) {
+            sources.add(new UrlSource(url));
+        }
+        if (data != null && !data.trim().isEmpty()) {
+            sources.add(new HtmlSource(data, options.baseUrl));
+        }
+        if (path != null && !path.trim().isEmpty()) {
+            Uri uri = FileSource.parse(path.trim());
+            sources.add(uri == null ? null : new FileSource(getContext(), uri));
+        }
+        return sources.size() == 1 ? sources.get(0) : null;
+    }
+
+    /**
+     * Adds a stored background job to the backlog, unless it is already there or running.
+     */
+    private void scheduleBackgroundJob(JSObject request) {
+        String jobId = request.getString("jobId");
+        synchronized (backgroundBacklog) {
+            if (backgroundJobsRunning.contains(jobId) || backgroundBacklog.containsKey(jobId)) {
+                return;
+            }
+            backgroundBacklog.put(jobId, request);
+        }
+        feedBackgroundJobs();
+    }
+
+    /**
+     * Hands backlogged background jobs to the scheduler, no more at a time than there are render
+     * slots, so a large backlog neither overflows the scheduler's queue nor sits in memory as
+     * tasks. Called again whenever one of them finishes.
+     */
+    private void feedBackgroundJobs() {
+        List<JSObject> toRun = new ArrayList<>();
+        synchronized (backgroundBacklog) {
+            Iterator<JSObject> iterator = backgroundBacklog.values().iterator();
+            while (backgroundJobsRunning.size() < scheduler.maxConcurrent() && iterator.hasNext()) {
+                JSObject request = iterator.next();
+                iterator.remove();
+                backgroundJobsRunning.add(request.getString("jobId"));
+                toRun.add(request);
+            }
+        }
+        for (JSObject request : toRun) {
+            runBackgroundJob(request);
+        }
+    }
+
+    private void backgroundJobFinished(String jobId) {
+        synchronized (backgroundBacklog) {
+            backgroundJobsRunning.remove(jobId);
+        }
+        feedBackgroundJobs();
+    }
+
+    /**
+     * Runs a stored background job. Its outcome is recorded in the queue and emitted as a
+     * retained {@code backgroundJob} event, so a listener added later, e.g. when the app returns
+     * to the foreground, still receives it.
+     */
+    private void runBackgroundJob(JSObject request) {
+        PdfGeneratorOptions options = PdfGeneratorOptions.from(request);
+        String jobId = options.jobId;
+        PdfJobListener listener = new PdfJobListener() {
+            @Override
+            public void onResult(JSObject result) {
+                runInBackground(() -> {
+                    reportBackgroundJob(backgroundJobs.finish(jobId, result, null));
+                    backgroundJobFinished(jobId);
+                });
+            }
+
+            @Override
+            public void onError(String message) {
+                runInBackground(() -> {
+                    reportBackgroundJob(backgroundJobs.finish(jobId, null, message));
+                    backgroundJobFinished(jobId);
+                });
+            }
+        };
+        PdfSource source = backgroundSource(request, options);
+        if (source == null) {
+            listener.onError("The stored background job is invalid.");
+            return;
+        }
+        backgroundJobs.recordAttempt(jobId);
+        PdfGenerationTask task = new PdfGenerationTask(this, listener, source, options);
+        // Admitted by feedBackgroundJobs, so it never overflows the queue for long.
+        task.stored = true;
+        enqueueTask(task);
+    }
+
+    private void reportBackgroundJob(JSObject job) {
+        if (job != null) {
+            notifyListeners("backgroundJob", job, true);
+        }
+    }
+
+    @PluginMethod
+    public void registerTemplate(PluginCall call) {
+        String id = call.getString("id");
+        String html = call.getString("html");
+        if (id == null || id.trim().isEmpty()) {
+            call.reject("A valid 'id' is required.");
+            return;
+        }
+        if (html == null || html.trim().isEmpty()) {
+            call.reject("The 'html' option is required.");
+            return;
+        }
+        HtmlTemplate template;
+        try {
+            template = HtmlTemplate.compile(html, OptionValues.baseUrl(call.getString("baseUrl")));
+        } catch (IllegalArgumentException ex) {
+            call.reject("Invalid template: " + ex.getMessage());
+            return;
+        }
+        templates.put(id, template);
+        JSObject result = new JSObject();
+        result.put("placeholders", template.placeholderCount());
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void unregisterTemplate(PluginCall call) {
+        String id = call.getString("id");
+        JSObject result = new JSObject();
+        result.put("removed", id != null && templates.remove(id) != null);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void fromTemplate(PluginCall call) {
+        String id = call.getString("id");
+        HtmlTemplate template = id == null ? null : templates.get(id);
+        if (template == null) {
+            call.reject("No template is registered with id '" + id + "'.");
+            return;
+        }
+
+        PdfGeneratorOptions options = parseOptions(call);
+        if (options == null) {
+            return;
+        }
+        // A per-call baseUrl overrides the one registered with the template.
+        String baseUrl = call.getString("baseUrl") != null ? options.baseUrl : template.baseUrl;
+        PdfSource source = new HtmlSource(template.render(call.getObject("data", new JSObject())), baseUrl);
+        enqueueTask(new PdfGenerationTask(this, PdfJobListener.forCall(call), source, options));
+    }
+
+    @PluginMethod
+    public void fromURLBatch(PluginCall call) {
+        startBatch(call, "url");
+    }
+
+    @PluginMethod
+    public void fromDataBatch(PluginCall call) {
+        startBatch(call, "data");
+    }
+
+    private void startBatch(PluginCall call, String sourceKey) {
+        JSArray items = call.getArray("items");
+        if (items == null) {
+            call.reject("The 'items' option is required.");
+            return;
+        }
+
+        JSObject shared = call.getData();
+        boolean merge = Boolean.TRUE.equals(call.getBoolean("merge", false));
+        if (merge && items.length() == 0) {
+            call.reject("At least one item is required to merge.");
+            return;
+        }
+        String shardTag = "shard_" + UUID.randomUUID() + "_";
+        String sharedJobId = OptionValues.jobId(shared.getString("jobId"));
+        Map<String, Integer> jobIds = new HashMap<>();
+        Map<String, Integer> targets = new HashMap<>();
+        List<PdfBatch.Item> batchItems = new ArrayList<>();
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject item = items.optJSONObject(i);
+            String value = item == null ? null : item.optString(sourceKey, null);
+            if (value == null || value.trim().isEmpty()) {
+                call.reject("Batch item " + i + " is missing '" + sourceKey + "'.");
+                return;
+            }
+            PdfGeneratorOptions options;
+            try {
+                JSObject itemOptions = mergeOptions(shared, item);
+                // Items run as jobs of their own, so they must not share an id or a file.
+                if (sharedJobId != null && !item.has("jobId")) {
+                    itemOptions.put("jobId", sharedJobId + "-" + i);
+                }
+                if (!merge && !item.has("fileName")) {
+                    itemOptions.put("fileName", OptionValues.indexedFileName(shared.getString("fileName"), i));
+                }
+                if (merge) {
+                    // Each shard is rendered to its own file and only lives until the merge.
+                    itemOptions.put("type", "file");
+                    itemOptions.put("directory", "cache");
+                    // Named like a temporary file, so shards left by a killed process are swept.
+                    itemOptions.put("fileName", PdfFiles.tempFileName(shardTag + i));
+                    // Applied once to the merged document instead.
+                    itemOptions.remove("optimize");
+                    itemOptions.remove("thumbnail");
+                }
+                options = PdfGeneratorOptions.from(itemOptions);
+            } catch (JSONException ex) {
+                call.reject("Invalid options for batch item " + i + ".");
+                return;
+            } catch (IllegalArgumentException ex) {
+                call.reject("Invalid options for batch item " + i + ": " + ex.getMessage());
+                return;
+            }
+            if (!merge && options.outputType == PdfGeneratorOptions.OutputType.SHARE) {
+                call.reject("The 'share' output type is not supported for batches.");
+                return;
+            }
+            if (options.jobId != null) {
+                Integer previous = jobIds.put(options.jobId, i);
+                if (previous != null) {
+                    call.reject("Batch items " + previous + " and " + i + " use the same jobId '" + options.jobId + "'.");
+                    return;
+                }
+            }
+            if (options.outputType == PdfGeneratorOptions.OutputType.FILE) {
+                File target = new File(options.directory.resolve(getContext()), options.fileName);
+                Integer previous = targets.put(target.getAbsolutePath(), i);
+                if (previous != null) {
+                    call.reject("Batch items " + previous + " and " + i + " write to the same file '" + options.fileName + "'.");
+                    return;
+                }
+            }
+            PdfSource source = "url".equals(sourceKey) ? new UrlSource(value) : new HtmlSource(value, options.baseUrl);
+            batchItems.add(new PdfBatch.Item(source, options));
+        }
+
+        PdfGeneratorOptions mergeInto = null;
+        if (merge) {
+            mergeInto = parseOptions(call);
+            if (mergeInto == null) {
+                return;
+            }
+        }
+        new PdfBatch(this, call, batchItems, call.getInt("parallelism", 2), mergeInto).start();
+    }
+
+    /**
+     * Returns the options of {@code call}, or rejects it and returns {@code null} when they are
+     * invalid.
+     */
+    private static PdfGeneratorOptions parseOptions(PluginCall call) {
+        try {
+            return PdfGeneratorOptions.from(call);
+        } catch (IllegalArgumentException ex) {
+            call.reject(ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the shared call options overridden by the keys of a single batch item. The shared
+     * {@code jobId} is left out: it identifies the batch, not its items.
+     */
+    private static JSObject mergeOptions(JSObject shared, JSONObject item) throws JSONException {
+        JSObject merged = new JSObject();
+        Iterator<String> sharedKeys = shared.keys();
+        while (sharedKeys.hasNext()) {
+            String key = sharedKeys.next();
+            if (!"items".equals(key) && !"jobId".equals(key)) {
+                merged.put(key, shared.get(key));
+            }
+        }
+        Iterator<String> itemKeys = item.keys();
+        while (itemKeys.hasNext()) {
+            String key = itemKeys.next();
+            merged.put(key, item.get(key));
+        }
+        return merged;
+    }
+
+    /**
+     * Concatenates the shards of a merged batch in order and delivers the result as a single job
+     * of the call. The shards are deleted afterwards.
+     */
+    void deliverMerged(PluginCall call, List<File> shards, PdfGeneratorOptions options) {
+        PdfGenerationTask task = new PdfGenerationTask(this, PdfJobListener.forCall(call), null, options);
+        runInBackground(() -> {
+            boolean temporary = !options.outputType.writesToTarget();
+            File output = null;
+            int pageCount;
+            try {
+                output = temporary ? PdfFiles.createTemp(getContext().getCacheDir()) : outputFileFor(task);
+                pageCount = PdfMerger.merge(shards, output);
+            } catch (IOException ex) {
+                if (output != null) {
+                    //noinspection ResultOfMethodCallIgnored
+                    output.delete();
+                }
+                failTask(task, "Failed to merge PDFs: " + ex.getMessage());
+                return;
+            } finally {
+                for (File shard : shards) {
+                    //noinspection ResultOfMethodCallIgnored
+                    shard.delete();
+                }
+            }
+            task.setPageCounts(pageCount, pageCount);
+            optimize(task, output);
+            deliver(task, output, temporary);
+        });
+    }
+
+    void notifyBatchItem(JSObject event) {
+        notifyListeners("batchItem", event);
+    }
+
+    void enqueueTask(PdfGenerationTask task) {
+        memoryGovernor.evaluate();
+        addTask(task);
+        if (task.options.outputType == PdfGeneratorOptions.OutputType.STREAM && !hasListeners("pdfChunk")) {
+            // Every chunk would be dropped, so there is no point in rendering.
+            task.reject(NO_CHUNK_LISTENER);
+            return;
+        }
+        admit(task);
+    }
+
+    /**
+     * Renders calls that had joined a job that was cancelled or timed out. The first to be
+     * admitted becomes the job the others join.
+     */
+    void renderDetached(List<PdfGenerationTask> followers) {
+        for (PdfGenerationTask follower : followers) {
+            if (!follower.isCancelled()) {
+                admit(follower);
+            }
+        }
+    }
+
+    /**
+     * Answers a registered task from the render cache, joins it to an identical job or hands it
+     * to the scheduler.
+     */
+    private void admit(PdfGenerationTask task) {
+        boolean cache = task.options.cache == null ? renderCacheEnabled : task.options.cache;
+        boolean joinable = deduplicateJobs && task.options.isJoinable();
+        if (!cache && !joinable) {
+            scheduler.submit(task);
+            return;
+        }
+        // Source identities may hash file contents, so keys are computed off the main thread.
+        runInBackground(() -> {
+            if (task.isCancelled()) {
+                return;
+            }
+            String renderKey = RenderCache.keyFor(task.source, task.options);
+            if (cache) {
+                task.cacheKey = renderKey;
+                if (deliverFromCache(task)) {
+                    return;
+                }
+            }
+            if (joinable && joinInFlight(task, Hashes.sha256Hex(renderKey, task.options.outputIdentity()))) {
+                return;
+            }
+            scheduler.submit(task);
+        });
+    }
+
+    /**
+     * Attaches {@code task} to an identical job that has not been answered yet, or registers it
+     * as the job later identical calls join. Returns {@code true} when it joined.
+     */
+    private boolean joinInFlight(PdfGenerationTask task, String flightKey) {
+        synchronized (inFlight) {
+            PdfGenerationTask leader = inFlight.get(flightKey);
+            if (leader != null && leader.addFollower(task)) {
+                metrics.recordDeduplicated();
+                task.armTimeout();
+                return true;
+            }
+            task.flightKey = flightKey;
+            inFlight.put(flightKey, task);
+            return false;
+        }
+    }
+
+    /**
+     * Stops new calls from joining {@code task}. Called once it is answered.
+     */
+    void leaveInFlight(PdfGenerationTask task) {
+        if (task.flightKey == null) {
+            return;
+        }
+        synchronized (inFlight) {
+            if (inFlight.get(task.flightKey) == task) {
+                inFlight.remove(task.flightKey);
+            }
+        }
+    }
+
+    void addTask(PdfGenerationTask task) {
         synchronized (tasks) {
             tasks.add(task);
         }
-        task.start();
+    }
+
+    void notifyJobQueued(PdfGenerationTask task, int position) {
+        if (task.internal) {
+            return;
+        }
+        JSObject event = new JSObject();
+        event.put("jobId", task.id);
+        event.put("position", position);
+        event.put("priority", task.priority().jsName());
+        notifyListeners("jobQueued", event);
+    }
+
+    Handler getMainHandler() {
+        return mainHandler;
+    }
+
+    /**
+     * Returns the shared subresource cache, or {@code null} when it is disabled.
+     */
+    SubresourceCache getSubresourceCache() {
+        return subresourceCache;
+    }
+
+    /**
+     * Leases a WebView from the pool for {@code task}. Must be called on the main thread.
+     */
+    WebView acquireWebView(PdfGenerationTask task) {
+        return webViewPool.acquire(!task.internal);
+    }
+
+    /**
+     * Destroys a leased WebView instead of returning it to the pool, for jobs that were cancelled
+     * or timed out while it may still be loading or printing. Must be called on the main thread.
+     */
+    void discardWebView(WebView webView) {
+        webViewPool.discard(webView);
+    }
+
+    /**
+     * Returns a leased WebView to the pool, which resets it for the next job or destroys it when
+     * the pool is full. Must be called on the main thread.
+     */
+    void releaseWebView(WebView webView) {
+        webViewPool.release(webView);
+    }
+
+    /**
+     * Number of jobs that have not been torn down yet, including those waiting for a slot.
+     */
+    int activeTaskCount() {
+        synchronized (tasks) {
+            return tasks.size();
+        }
+    }
+
+    /**
+     * Number of render slots in use.
+     */
+    int runningJobCount() {
+        return scheduler.runningCount();
+    }
+
+    /**
+     * Number of render slots, after adaptive limits.
+     */
+    int maxConcurrentJobs() {
+        return scheduler.maxConcurrent();
     }
 
     void removeTask(PdfGenerationTask task) {
         synchronized (tasks) {
             tasks.remove(task);
         }
+        if (outputStore.release(task.id)) {
+            runInBackground(outputStore::trim);
+        }
+        releaseSlot(task);
+    }
+
+    /**
+     * Frees the render slot of a started job; later calls for the same job do nothing.
+     */
+    void releaseSlot(PdfGenerationTask task) {
+        if (task.takeSlot()) {
+            scheduler.onJobFinished();
+        }
+    }
+
+    /**
+     * Drops a job that has not started yet from the scheduler queues.
+     */
+    void dequeue(PdfGenerationTask task) {
+        scheduler.remove(task);
+    }
+
+    int getJobTimeoutMs() {
+        return jobTimeoutMs;
+    }
+
+    void notifyJobStarted(PdfGenerationTask task) {
+        if (task.internal) {
+            return;
+        }
+        JSObject event = new JSObject();
+        event.put("jobId", task.id);
+        event.put("queueWaitMs", Math.max(0, task.metrics.get(PdfJobMetrics.Phase.QUEUE)));
+        notifyListeners("jobStarted", event);
+    }
+
+    @PluginMethod
+    public void cancel(PluginCall call) {
+        String jobId = call.getString("jobId");
+        if (jobId == null || jobId.trim().isEmpty()) {
+            call.reject("A valid 'jobId' is required.");
+            return;
+        }
+        String id = jobId.trim();
+        mainHandler.post(() -> {
+            List<PdfGenerationTask> matching = new ArrayList<>();
+            synchronized (tasks) {
+                for (PdfGenerationTask task : tasks) {
+                    if (task.id.equals(id)) {
+                        matching.add(task);
+                    }
+                }
+            }
+            for (PdfGenerationTask task : matching) {
+                task.cancel("PDF generation was cancelled.");
+            }
+            JSObject result = new JSObject();
+            result.put("cancelled", !matching.isEmpty());
+            call.resolve(result);
+        });
     }
 
     void generatePdf(PdfGenerationTask task, WebView webView) {
         PrintAttributes attributes = createPrintAttributes(task.options);
         String jobName = task.options.printJobName();
-        PrintDocumentAdapter adapter = webView.createPrintDocumentAdapter(jobName);
-
-        if (task.options.outputType == PdfGeneratorOptions.OutputType.BASE64) {
-            CapgoPdfPrintUtils.createBase64(
-                getContext(),
-                adapter,
-                attributes,
-                new CapgoPdfPrintUtils.Base64Callback() {
-                    @Override
-                    public void onSuccess(@NonNull String base64) {
-                        mainHandler.post(() -> {
-                            JSObject result = new JSObject();
-                            result.put("type", "base64");
-                            result.put("base64", base64);
-                            task.call.resolve(result);
-                            task.finish();
-                        });
-                    }
+        PrintDocumentAdapter adapter = printAdapterFactory.create(webView, jobName);
 
-                    @Override
-                    public void onError(@NonNull String message) {
-                        mainHandler.post(() -> {
-                            task.call.reject(message);
-                            task.finish();
-                        });
+        CapgoPdfPrintUtils.FileCallback callback = new CapgoPdfPrintUtils.FileCallback() {
+            @Override
+            public void onSuccess(@NonNull CapgoPdfPrintUtils.WriteResult written) {
+                File file = written.file;
+                task.setPageCounts(written.pageCount, written.documentPageCount);
+                task.metrics.record(PdfJobMetrics.Phase.LAYOUT, written.layoutMs);
+                task.metrics.record(PdfJobMetrics.Phase.WRITE, written.writeMs);
+                // Already on the background executor, which counted the pages.
+                if (task.isCancelled()) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                    return;
+                }
+                optimize(task, file);
+                // A page printed because waiting for it timed out is not worth serving again.
+                if (task.cacheKey != null && !task.isReadyTimedOut()) {
+                    try {
+                        renderCache.put(task.cacheKey, file);
+                    } catch (IOException ex) {
+                        Log.w(TAG, "Failed to store PDF in the render cache.", ex);
                     }
                 }
+                deliver(task, file, !task.options.outputType.writesToTarget());
+            }
+
+            @Override
+            public void onError(@NonNull String message) {
+                failTask(task, message);
+            }
+        };
+
+        if (task.options.outputType.writesToTarget()) {
+            task.setWriteHandle(
+                CapgoPdfPrintUtils.writeToFile(
+                    getContext(),
+                    adapter,
+                    attributes,
+                    task.options.pageRanges,
+                    outputFileFor(task),
+                    this::runInBackground,
+                    callback
+                )
             );
         } else {
-            File output = new File(getContext().getCacheDir(), task.options.fileName);
-            CapgoPdfPrintUtils.writeToFile(
-                getContext(),
-                adapter,
-                attributes,
-                output,
-                new CapgoPdfPrintUtils.FileCallback() {
-                    @Override
-                    public void onSuccess(@NonNull File file) {
-                        mainHandler.post(() -> sharePdf(task, file));
-                    }
+            task.setWriteHandle(
+                CapgoPdfPrintUtils.writeToTempFile(getContext(), adapter, attributes, task.options.pageRanges, this::runInBackground, callback)
+            );
+        }
+    }
+
+    /**
+     * Runs the optional optimizer over a written PDF and replaces it when the result is smaller.
+     * A failure only costs the optimization; the PDF is delivered as printed.
+     */
+    private void optimize(PdfGenerationTask task, File file) {
+        PdfOptimizer.Settings settings = task.options.optimize;
+        if (settings == null) {
+            return;
+        }
+        long startedAt = SystemClock.elapsedRealtime();
+        long originalSize = file.length();
+        File optimized = null;
+        try {
+            // A temporary file rather than a sibling, which could be left in the caller's directory.
+            optimized = PdfFiles.createTemp(getContext().getCacheDir());
+            // An image cannot be shown larger than the page, so its pixels beyond the page size at
+            // the target resolution are never visible.
+            PrintAttributes.MediaSize mediaSize = task.options.mediaSize();
+            int maxImageDimension = (int) Math.round(
+                (Math.max(mediaSize.getWidthMils(), mediaSize.getHeightMils()) / 1000.0) * settings.imageDpi
+            );
+            PdfOptimizer.Result result = new PdfOptimizer(maxImageDimension, settings.jpegQuality, new BitmapImageResampler()).optimize(
+                file,
+                optimized
+            );
+            if (result.optimizedBytes < result.originalBytes && !optimized.renameTo(file)) {
+                // The target may be on another file system.
+                PdfFiles.copy(optimized, file);
+            }
+            task.setOptimizedSizes(originalSize, file.length());
+        } catch (IOException ex) {
+            Log.w(TAG, "Failed to optimize PDF, delivering it unchanged.", ex);
+        } finally {
+            if (optimized != null) {
+                //noinspection ResultOfMethodCallIgnored
+                optimized.delete();
+            }
+            task.metrics.record(PdfJobMetrics.Phase.OPTIMIZE, SystemClock.elapsedRealtime() - startedAt);
+        }
+    }
+
+    /**
+     * Serves a job from the render cache without loading it in a WebView. Returns {@code false}
+     * on a cache miss. Runs on the calling thread.
+     */
+    private boolean deliverFromCache(PdfGenerationTask task) {
+        boolean toTarget = task.options.outputType.writesToTarget();
+        File output;
+        try {
+            // Eviction may delete a cached file at any time, so the job only reads its own copy.
+            output = toTarget ? outputFileFor(task) : PdfFiles.createTemp(getContext().getCacheDir());
+        } catch (IOException ex) {
+            return false;
+        }
+        try {
+            if (!renderCache.copyTo(task.cacheKey, output)) {
+                if (!toTarget) {
+                    //noinspection ResultOfMethodCallIgnored
+                    output.delete();
+                }
+                return false;
+            }
+        } catch (IOException ex) {
+            if (!toTarget) {
+                //noinspection ResultOfMethodCallIgnored
+                output.delete();
+            }
+            failTask(task, "Failed to copy cached PDF.");
+            return true;
+        }
+        task.markCacheHit();
+        int pageCount = CapgoPdfPrintUtils.countPages(output);
+        // The full document length is only known when the cached render covers every page.
+        task.setPageCounts(pageCount, task.options.pageRanges == null ? pageCount : -1);
+        deliver(task, output, !toTarget);
+        return true;
+    }
+
+    /**
+     * Returns where the job's PDF goes: the caller's directory for file output, otherwise the
+     * job's own directory in the output store.
+     */
+    private File outputFileFor(PdfGenerationTask task) {
+        if (task.options.outputType == PdfGeneratorOptions.OutputType.FILE) {
+            return new File(task.options.directory.resolve(getContext()), task.options.fileName);
+        }
+        return outputStore.fileFor(task.id, task.options.fileName);
+    }
+
+    /**
+     * Hands a written PDF to the caller according to the job's output type. Must not be called
+     * on the main thread since encoding may take a while.
+     *
+     * @param deleteAfter whether {@code file} is a temporary file owned by this job.
+     */
+    private void deliver(PdfGenerationTask task, File file, boolean deleteAfter) {
+        task.markDeliveryStarted(file.length());
+        renderThumbnails(task, file);
+        try {
+            switch (task.options.outputType) {
+                case BASE64:
+                    deliverBase64(task, file);
+                    break;
+                case STREAM:
+                    deliverStream(task, file);
+                    break;
+                case FILE:
+                    deliverFile(task, file);
+                    break;
+                default:
+                    mainHandler.post(() -> sharePdf(task, file));
+                    break;
+            }
+        } catch (IOException ex) {
+            failTask(task, deliveryError(task.options.outputType) + ": " + ex.getMessage());
+        } finally {
+            if (deleteAfter) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Describes what failed when delivering with {@code outputType} threw.
+     */
+    private static String deliveryError(PdfGeneratorOptions.OutputType outputType) {
+        switch (outputType) {
+            case BASE64:
+                return "Failed to convert PDF to base64";
+            case STREAM:
+                return "Failed to stream PDF";
+            case FILE:
+                return "Failed to write PDF file";
+            default:
+                return "Failed to share PDF";
+        }
+    }
+
+    /**
+     * Renders the requested preview images from the PDF about to be delivered. A failure is
+     * logged and only drops the thumbnails from the result.
+     */
+    private void renderThumbnails(PdfGenerationTask task, File file) {
+        PdfThumbnails.Settings settings = task.options.thumbnail;
+        if (settings == null) {
+            return;
+        }
+        long startedAt = SystemClock.elapsedRealtime();
+        boolean nextToPdf = task.options.outputType == PdfGeneratorOptions.OutputType.FILE;
+        File directory = nextToPdf ? file.getParentFile() : null;
+        if (!nextToPdf && settings.asFile) {
+            directory = outputStore.directoryFor(task.id);
+        }
+        String baseName = nextToPdf ? task.options.printJobName() : "thumbnail";
+        try {
+            task.setThumbnails(PdfThumbnails.render(file, settings, directory, baseName));
+        } catch (IOException | RuntimeException ex) {
+            Log.w(TAG, "Failed to render PDF thumbnails.", ex);
+        } finally {
+            task.metrics.record(PdfJobMetrics.Phase.THUMBNAIL, SystemClock.elapsedRealtime() - startedAt);
+        }
+    }
+
+    private void deliverBase64(PdfGenerationTask task, File file) throws IOException {
+        long peakBytes = CapgoPdfPrintUtils.estimateBase64PeakBytes(file.length());
+        long budget = CapgoPdfPrintUtils.base64MemoryBudget(base64MemoryBudgetBytes);
+        if (
+            memoryGovernor.isEnabled() &&
+            memoryGovernor.pressure() != MemoryGovernor.Pressure.NORMAL &&
+            peakBytes > memoryGovernor.base64Budget(budget)
+        ) {
+            // Building the string could exhaust the heap under the current memory pressure, so
+            // the PDF is handed over as a file instead; the result reports the requested type.
+            // At normal pressure a result over the configured budget is rejected below.
+            File output = outputFileFor(task);
+            try {
+                PdfFiles.copy(file, output);
+            } catch (IOException ex) {
+                failTask(task, "Failed to write PDF to the output store: " + ex.getMessage());
+                return;
+            }
+            deliverFile(task, output);
+            return;
+        }
+        if (peakBytes > budget) {
+            failTask(
+                task,
+                "PDF is too large to return as base64 (" + file.length() + " bytes would need about " + peakBytes + " bytes of memory)."
+            );
+            return;
+        }
+        long encodeStartedAt = SystemClock.elapsedRealtime();
+        String base64 = CapgoPdfPrintUtils.readBase64(file);
+        task.metrics.record(PdfJobMetrics.Phase.ENCODE, SystemClock.elapsedRealtime() - encodeStartedAt);
+        mainHandler.post(() -> {
+            JSObject result = task.newResult("base64");
+            result.put("base64", base64);
+            task.resolve(result);
+            task.finish();
+        });
+    }
+
+    private void deliverStream(PdfGenerationTask task, File file) throws IOException {
+        if (!hasListeners("pdfChunk")) {
+            failTask(task, NO_CHUNK_LISTENER);
+            return;
+        }
+        long budget = CapgoPdfPrintUtils.base64MemoryBudget(base64MemoryBudgetBytes);
+        if (memoryGovernor.isEnabled()) {
+            budget = memoryGovernor.base64Budget(budget);
+        }
+        long encodeStartedAt = SystemClock.elapsedRealtime();
+        CapgoPdfPrintUtils.streamBase64(
+            file,
+            CapgoPdfPrintUtils.streamChunkSize(task.options.chunkSize, budget),
+            new CapgoPdfPrintUtils.ChunkCallback() {
+                @Override
+                public void onChunk(@NonNull String base64, int index, long offset, long totalSize, int chunkCount)
+                    throws IOException {
+                    JSObject event = new JSObject();
+                    event.put("jobId", task.id);
+                    event.put("index", index);
+                    event.put("offset", offset);
+                    event.put("totalSize", totalSize);
+                    event.put("chunkCount", chunkCount);
+                    event.put("data", base64);
+                    dispatchChunk(task, event);
+                }
+
+                @Override
+                public void onComplete(long totalSize, int chunkCount) {
+                    task.metrics.record(PdfJobMetrics.Phase.ENCODE, SystemClock.elapsedRealtime() - encodeStartedAt);
+                    // Chunk events and the call response are both delivered through the main
+                    // looper, so posting here keeps the resolve behind the last chunk.
+                    mainHandler.post(() -> {
+                        JSObject result = task.newResult("stream");
+                        result.put("totalSize", totalSize);
+                        result.put("chunkCount", chunkCount);
+                        task.resolve(result);
+                        task.finish();
+                    });
+                }
+            }
+        );
+    }
 
-                    @Override
-                    public void onError(@NonNull String message) {
-                        mainHandler.post(() -> {
-                            task.call.reject(message);
-                            task.finish();
-                        });
-                    }
+    /**
+     * Emits a chunk event from the main thread and waits until it has been handed to the bridge,
+     * so the next chunk is only read once this one has left the main looper queue. Throws when the
+     * job is cancelled meanwhile, which stops the stream.
+     */
+    private void dispatchChunk(PdfGenerationTask task, JSObject event) throws IOException {
+        CountDownLatch dispatched = new CountDownLatch(1);
+        mainHandler.post(() -> {
+            if (!task.isCancelled()) {
+                notifyListeners("pdfChunk", event);
+            }
+            dispatched.countDown();
+        });
+        try {
+            while (!dispatched.await(CHUNK_DISPATCH_POLL_MS, TimeUnit.MILLISECONDS)) {
+                if (task.isCancelled()) {
+                    break;
                 }
-            );
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while streaming the PDF.");
+        }
+        if (task.isCancelled()) {
+            throw new IOException("PDF generation was cancelled.");
         }
     }
 
+    private void deliverFile(PdfGenerationTask task, File file) {
+        mainHandler.post(() -> {
+            JSObject result = task.newResult("file");
+            if (task.options.outputType == PdfGeneratorOptions.OutputType.BASE64) {
+                result.put("requestedType", "base64");
+            }
+            result.put("path", file.getAbsolutePath());
+            result.put("uri", Uri.fromFile(file).toString());
+            result.put("webPath", FileUtils.getPortablePath(getContext(), getBridge().getLocalUrl(), Uri.fromFile(file)));
+            result.put("size", file.length());
+            task.resolve(result);
+            task.finish();
+        });
+    }
+
+    private void runInBackground(Runnable runnable) {
+        // Only refused after handleOnDestroy, when there is no one left to answer.
+        backgroundExecutor.execute(runnable);
+    }
+
+    private void failTask(PdfGenerationTask task, String message) {
+        mainHandler.post(() -> {
+            task.reject(message);
+            task.finish();
+        });
+    }
+
     private void sharePdf(PdfGenerationTask task, File file) {
-        Activity activity = getActivity();
+        Activity activity = activityProvider.get();
         if (activity == null) {
-            task.call.reject("Unable to open share dialog: no active activity.");
+            task.reject("Unable to open share dialog: no active activity.");
             task.finish();
             return;
         }
@@ -144,17 +1372,14 @@ public class PdfGeneratorPlugin extends Plugin {
         shareIntent.putExtra(Intent.EXTRA_STREAM, uri);
         shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
 
-        file.deleteOnExit();
-
         try {
             Intent chooser = Intent.createChooser(shareIntent, task.options.fileName);
             activity.startActivity(chooser);
-            JSObject result = new JSObject();
-            result.put("type", "share");
+            JSObject result = task.newResult("share");
             result.put("completed", true);
-            task.call.resolve(result);
+            task.resolve(result);
         } catch (ActivityNotFoundException ex) {
-            task.call.reject("No compatible application found to share the PDF.");
+            task.reject("No compatible application found to share the PDF.");
         } finally {
             task.finish();
         }
@@ -169,6 +1394,130 @@ public class PdfGeneratorPlugin extends Plugin {
         return builder.build();
     }
 
+    @PluginMethod
+    public void getRenderCacheStats(PluginCall call) {
+        call.resolve(renderCache.stats());
+    }
+
+    @PluginMethod
+    public void clearRenderCache(PluginCall call) {
+        runInBackground(() -> {
+            renderCache.clear();
+            call.resolve();
+        });
+    }
+
+    @PluginMethod
+    public void invalidateRenderCache(PluginCall call) {
+        String url = call.getString("url");
+        String data = call.getString("data");
+        if ((url == null || url.isEmpty()) == (data == null || data.isEmpty())) {
+            call.reject("Exactly one of 'url' or 'data' is required.");
+            return;
+        }
+        PdfGeneratorOptions options = parseOptions(call);
+        if (options == null) {
+            return;
+        }
+        PdfSource source = url != null && !url.isEmpty() ? new UrlSource(url) : new HtmlSource(data, options.baseUrl);
+        runInBackground(() -> {
+            JSObject result = new JSObject();
+            result.put("removed", renderCache.invalidate(RenderCache.keyFor(source, options)));
+            call.resolve(result);
+        });
+    }
+
+    @PluginMethod
+    public void preloadSubresources(PluginCall call) {
+        if (subresourceCache == null) {
+            call.reject("The subresource cache is disabled. Set 'subresourceCache' in the plugin configuration.");
+            return;
+        }
+        JSArray urls = call.getArray("urls");
+        if (urls == null) {
+            call.reject("The 'urls' option is required.");
+            return;
+        }
+        runInBackground(() -> {
+            int loaded = 0;
+            int failed = 0;
+            for (int i = 0; i < urls.length(); i++) {
+                String url = urls.optString(i);
+                if (url != null && !url.isEmpty() && subresourceCache.preload(url)) {
+                    loaded++;
+                } else {
+                    failed++;
+                }
+            }
+            JSObject result = new JSObject();
+            result.put("loaded", loaded);
+            result.put("failed", failed);
+            call.resolve(result);
+        });
+    }
+
+    @PluginMethod
+    public void clearSubresourceCache(PluginCall call) {
+        if (subresourceCache == null) {
+            call.resolve();
+            return;
+        }
+        runInBackground(() -> {
+            subresourceCache.clear();
+            call.resolve();
+        });
+    }
+
+    @PluginMethod
+    public void getSubresourceCacheStats(PluginCall call) {
+        if (subresourceCache == null) {
+            call.reject("The subresource cache is disabled. Set 'subresourceCache' in the plugin configuration.");
+            return;
+        }
+        call.resolve(subresourceCache.stats());
+    }
+
+    @PluginMethod
+    public void getWebViewPoolStats(PluginCall call) {
+        mainHandler.post(() -> call.resolve(webViewPool.stats()));
+    }
+
+    @PluginMethod
+    public void getMetrics(PluginCall call) {
+        JSObject snapshot = metrics.snapshot();
+        snapshot.put("backgroundExecutor", backgroundExecutor.stats());
+        call.resolve(snapshot);
+    }
+
+    @PluginMethod
+    public void resetMetrics(PluginCall call) {
+        metrics.reset();
+        backgroundExecutor.reset();
+        call.resolve();
+    }
+
+    /**
+     * Adds a finished job to the aggregate metrics and emits its {@code jobMetrics} event.
+     */
+    void recordJobMetrics(PdfGenerationTask task, boolean success, String error) {
+        if (task.internal) {
+            return;
+        }
+        metrics.record(task.metrics, success, task.isCacheHit());
+        if (!hasListeners("jobMetrics")) {
+            return;
+        }
+        JSObject event = new JSObject();
+        event.put("jobId", task.id);
+        event.put("success", success);
+        event.put("cached", task.isCacheHit());
+        if (error != null) {
+            event.put("error", error);
+        }
+        event.put("metrics", task.metrics.toJSObject());
+        notifyListeners("jobMetrics", event);
+    }
+
     @PluginMethod
     public void getPluginVersion(final PluginCall call) {
         try {
@@ -183,6 +1532,11 @@ public class PdfGeneratorPlugin extends Plugin {
 
 interface PdfSource {
     void load(WebView webView);
+
+    /**
+     * Stable description of the content this source renders, used to build render cache keys.
+     */
+    String cacheIdentity();
 }
 
 final class UrlSource implements PdfSource {
@@ -197,6 +1551,11 @@ final class UrlSource implements PdfSource {
     public void load(WebView webView) {
         webView.loadUrl(url);
     }
+
+    @Override
+    public String cacheIdentity() {
+        return "url:" + url;
+    }
 }
 
 final class HtmlSource implements PdfSource {
@@ -213,72 +1572,485 @@ final class HtmlSource implements PdfSource {
     public void load(WebView webView) {
         webView.loadDataWithBaseURL(baseUrl, html, "text/html", "UTF-8", null);
     }
+
+    @Override
+    public String cacheIdentity() {
+        return "html:" + baseUrl + "\n" + html;
+    }
+}
+
+/**
+ * HTML read from a local file or content URI by the WebView itself, so large documents never
+ * cross the bridge or become a Java string. Relative resources of a file resolve against its
+ * directory.
+ */
+final class FileSource implements PdfSource {
+
+    private final Context context;
+    private final Uri uri;
+
+    FileSource(Context context, Uri uri) {
+        this.context = context;
+        this.uri = uri;
+    }
+
+    /**
+     * Accepts an absolute path, a {@code file://} URI or a {@code content://} URI. Returns
+     * {@code null} for anything else.
+     */
+    static Uri parse(String value) {
+        if (value.startsWith("/")) {
+            return Uri.fromFile(new File(value));
+        }
+        Uri uri = Uri.parse(value);
+        String scheme = uri.getScheme();
+        return "file".equalsIgnoreCase(scheme) || "content".equalsIgnoreCase(scheme) ? uri : null;
+    }
+
+    boolean isFile() {
+        return "file".equalsIgnoreCase(uri.getScheme());
+    }
+
+    File file() {
+        return new File(uri.getPath());
+    }
+
+    @Override
+    public void load(WebView webView) {
+        if (isFile()) {
+            // Reset by the pool when the WebView is released.
+            webView.getSettings().setAllowFileAccess(true);
+        }
+        webView.loadUrl(uri.toString());
+    }
+
+    /**
+     * Files are identified by size and modification time. Content URIs expose neither reliably,
+     * so their content is hashed; this runs on the background executor.
+     */
+    @Override
+    public String cacheIdentity() {
+        if (isFile()) {
+            File file = file();
+            return "file:" + uri + "\n" + file.length() + "\n" + file.lastModified();
+        }
+        try {
+            return "content:" + uri + "\n" + Hashes.sha256Hex(context.getContentResolver().openInputStream(uri));
+        } catch (IOException | RuntimeException ex) {
+            // Unreadable now; the load will fail too, so make sure nothing is served from cache.
+            return "content:" + uri + "\n" + UUID.randomUUID();
+        }
+    }
 }
 
-final class PdfGenerationTask extends WebViewClient {
+final class PdfGenerationTask extends WebViewClient implements PdfJobScheduler.Job {
 
-    final PluginCall call;
+    final String id;
     final PdfGeneratorOptions options;
 
+    final PdfSource source;
+
+    /** Render cache key, or {@code null} when caching is disabled for this job. */
+    volatile String cacheKey;
+
+    /** Key identical calls join this job under, or {@code null} when it cannot be joined. */
+    volatile String flightKey;
+
+    /** Whether this call waits for another job's result instead of rendering. */
+    private volatile boolean following;
+
+    /**
+     * Whether this runs a stored background job, which waits for queue space instead of being
+     * rejected when the queue is full.
+     */
+    boolean stored;
+
+    /**
+     * Whether the plugin started this job itself, e.g. to warm up: it is left out of metrics,
+     * WebView pool counters and job events.
+     */
+    boolean internal;
+
+    final PdfJobMetrics metrics = new PdfJobMetrics();
+
     private final PdfGeneratorPlugin plugin;
+    private final PdfJobListener listener;
+    private final long createdAt = SystemClock.elapsedRealtime();
+    private long loadStartedAt;
+    private long loadedAt;
+    private volatile long deliveryStartedAt;
+    private volatile boolean started;
+    private volatile boolean cacheHit;
+    private boolean settled;
+    private boolean slotReleased;
+    private volatile boolean cancelled;
+    private Runnable timeout;
+    private CapgoPdfPrintUtils.WriteHandle writeHandle;
+    private boolean pageLoaded;
+    private volatile boolean readyTimedOut;
+    private volatile int pageCount = -1;
+    private volatile int documentPageCount = -1;
+    private volatile long originalSize = -1;
+    private volatile long optimizedSize = -1;
+    private volatile JSArray thumbnails;
+    private final List<PdfGenerationTask> followers = new ArrayList<>();
+    private boolean followersDetached;
+    private Runnable cancelReadiness;
+    private final SubresourceCache.Stats subresourceStats = new SubresourceCache.Stats();
     private WebView webView;
     private boolean finished;
 
-    PdfGenerationTask(PdfGeneratorPlugin plugin, PluginCall call, PdfSource source, PdfGeneratorOptions options) {
+    PdfGenerationTask(PdfGeneratorPlugin plugin, PdfJobListener listener, PdfSource source, PdfGeneratorOptions options) {
         this.plugin = plugin;
-        this.call = call;
+        this.listener = listener;
         this.options = options;
         this.source = source;
+        this.id = options.jobId != null ? options.jobId : UUID.randomUUID().toString();
     }
 
-    private final PdfSource source;
+    @Override
+    public PdfJobScheduler.Priority priority() {
+        return options.priority;
+    }
 
-    void start() {
-        Activity activity = plugin.getActivity();
-        if (activity == null) {
-            call.reject("No activity available.");
+    @Override
+    public boolean waitsForQueueSpace() {
+        return stored;
+    }
+
+    @Override
+    public void onQueued(int position) {
+        plugin.notifyJobQueued(this, position);
+    }
+
+    void resolve(JSObject result) {
+        if (!settle()) {
+            return;
+        }
+        // Outside the settle lock: joinInFlight takes the plugin's lock before this task's.
+        plugin.leaveInFlight(this);
+        result.put("metrics", metrics.toJSObject());
+        plugin.recordJobMetrics(this, true, null);
+        listener.onResult(result);
+        for (PdfGenerationTask follower : followers) {
+            follower.resolveShared(id, result);
+        }
+        finishIfNeverStarted();
+    }
+
+    @Override
+    public void reject(String message) {
+        if (!settle()) {
+            return;
+        }
+        plugin.leaveInFlight(this);
+        if (!following) {
+            // Followers are counted as deduplicated, not as failed jobs.
+            plugin.recordJobMetrics(this, false, message);
+        }
+        listener.onError(message);
+        for (PdfGenerationTask follower : followers) {
+            follower.rejectShared(message);
+        }
+        finishIfNeverStarted();
+    }
+
+    /**
+     * Lets an identical call share this job's outcome. Returns {@code false} once the job has
+     * been answered; the caller then has to render on its own.
+     */
+    synchronized boolean addFollower(PdfGenerationTask follower) {
+        if (settled || followersDetached) {
+            return false;
+        }
+        follower.following = true;
+        followers.add(follower);
+        return true;
+    }
+
+    /**
+     * Stops sharing this job's outcome and returns the calls that joined it, so they can render
+     * on their own.
+     */
+    private synchronized List<PdfGenerationTask> detachFollowers() {
+        followersDetached = true;
+        List<PdfGenerationTask> detached = new ArrayList<>(followers);
+        followers.clear();
+        for (PdfGenerationTask follower : detached) {
+            follower.following = false;
+            follower.flightKey = null;
+        }
+        return detached;
+    }
+
+    /**
+     * Answers a call that joined the job {@code leaderId} with a copy of its result. Followers
+     * never render, so they are left out of the aggregated metrics.
+     */
+    private void resolveShared(String leaderId, JSObject shared) {
+        if (!settle()) {
+            return;
+        }
+        JSObject result = new JSObject();
+        Iterator<String> keys = shared.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            result.put(key, shared.opt(key));
+        }
+        result.put("jobId", id);
+        result.put("deduplicatedFrom", leaderId);
+        result.put("metrics", metrics.toJSObject());
+        listener.onResult(result);
+        finishIfNeverStarted();
+    }
+
+    private void rejectShared(String message) {
+        if (!settle()) {
+            return;
+        }
+        listener.onError(message);
+        finishIfNeverStarted();
+    }
+
+    /**
+     * Jobs answered without reaching a render slot, from the render cache or rejected by the
+     * scheduler, have nothing else that would unregister them.
+     */
+    private void finishIfNeverStarted() {
+        if (!started) {
+            plugin.getMainHandler().post(this::finish);
+        }
+    }
+
+    /**
+     * Marks the job as answered and records its final timings. Returns {@code false} when it was
+     * already answered, e.g. by a load error reported after the PDF was written.
+     */
+    private synchronized boolean settle() {
+        if (settled) {
+            return false;
+        }
+        settled = true;
+        long now = SystemClock.elapsedRealtime();
+        if (deliveryStartedAt > 0) {
+            metrics.record(PdfJobMetrics.Phase.DELIVER, now - deliveryStartedAt);
+        }
+        metrics.record(PdfJobMetrics.Phase.TOTAL, now - createdAt);
+        return true;
+    }
+
+    /**
+     * Creates a result object pre-filled with the fields shared by every output type.
+     */
+    JSObject newResult(String type) {
+        JSObject result = new JSObject();
+        result.put("type", type);
+        result.put("jobId", id);
+        result.put("queueWaitMs", Math.max(0, metrics.get(PdfJobMetrics.Phase.QUEUE)));
+        result.put("cached", cacheHit);
+        result.put("readyTimedOut", readyTimedOut);
+        result.put("pageCount", pageCount);
+        if (documentPageCount >= 0) {
+            result.put("documentPageCount", documentPageCount);
+        }
+        if (originalSize >= 0) {
+            result.put("originalSize", originalSize);
+            result.put("optimizedSize", optimizedSize);
+        }
+        if (thumbnails != null) {
+            result.put("thumbnails", thumbnails);
+        }
+        subresourceStats.writeTo(result);
+        return result;
+    }
+
+    boolean isReadyTimedOut() {
+        return readyTimedOut;
+    }
+
+    void markCacheHit() {
+        cacheHit = true;
+    }
+
+    boolean isCacheHit() {
+        return cacheHit;
+    }
+
+    /**
+     * Marks the PDF as available; the remaining time until the result is handed over counts as
+     * delivery.
+     */
+    void markDeliveryStarted(long outputBytes) {
+        deliveryStartedAt = SystemClock.elapsedRealtime();
+        metrics.setOutput(outputBytes, pageCount);
+    }
+
+    /**
+     * Records the pages written for this job and the length of the whole document; {@code -1}
+     * when unknown.
+     */
+    void setPageCounts(int pageCount, int documentPageCount) {
+        this.pageCount = pageCount;
+        this.documentPageCount = documentPageCount;
+    }
+
+    void setThumbnails(JSArray thumbnails) {
+        this.thumbnails = thumbnails;
+    }
+
+    void setOptimizedSizes(long originalSize, long optimizedSize) {
+        this.originalSize = originalSize;
+        this.optimizedSize = optimizedSize;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Keeps the handle of the running PDF write so it can be cancelled. Main thread only.
+     */
+    void setWriteHandle(CapgoPdfPrintUtils.WriteHandle writeHandle) {
+        this.writeHandle = finished ? null : writeHandle;
+    }
+
+    /**
+     * Stops the job wherever it is: drops it from the queue, signals the print adapter, deletes
+     * the partial output and destroys its WebView, which frees the render slot right away.
+     * Main thread only.
+     */
+    void cancel(String message) {
+        if (finished) {
             return;
         }
+        cancelled = true;
+        plugin.dequeue(this);
+        if (writeHandle != null) {
+            writeHandle.cancel();
+            writeHandle = null;
+        }
+        // The calls that joined this one did not ask for it to stop.
+        plugin.leaveInFlight(this);
+        List<PdfGenerationTask> detached = detachFollowers();
+        reject(message);
+        finish();
+        if (!detached.isEmpty()) {
+            plugin.renderDetached(detached);
+        }
+    }
+
+    /**
+     * Returns {@code true} once for a job started by the scheduler, whose render slot then has
+     * to be freed by the caller.
+     */
+    synchronized boolean takeSlot() {
+        if (!started || slotReleased) {
+            return false;
+        }
+        slotReleased = true;
+        return true;
+    }
 
-        activity.runOnUiThread(() -> {
-            webView = new WebView(plugin.getContext());
-            WebSettings settings = webView.getSettings();
-            settings.setJavaScriptEnabled(true);
-            settings.setDatabaseEnabled(true);
+    @Override
+    public void start() {
+        started = true;
+        loadStartedAt = SystemClock.elapsedRealtime();
+        metrics.record(PdfJobMetrics.Phase.QUEUE, loadStartedAt - createdAt);
+        plugin.notifyJobStarted(this);
+        armTimeout();
+        plugin.getMainHandler().post(() -> {
+            if (finished) {
+                // Cancelled while its cache key was being computed: finish() may already have run
+                // before this job held a slot.
+                disarmTimeout();
+                plugin.releaseSlot(this);
+                return;
+            }
+            webView = plugin.acquireWebView(this);
             webView.setWebViewClient(this);
             source.load(webView);
         });
     }
 
+    /**
+     * Starts the job's timeout, unless it already runs: a call that joined another job keeps the
+     * clock started when it joined if it later renders on its own.
+     */
+    synchronized void armTimeout() {
+        if (timeout != null) {
+            return;
+        }
+        int timeoutMs = options.timeoutMs >= 0 ? options.timeoutMs : plugin.getJobTimeoutMs();
+        if (timeoutMs > 0) {
+            timeout = () -> cancel("PDF generation timed out after " + timeoutMs + " ms.");
+            plugin.getMainHandler().postDelayed(timeout, timeoutMs);
+        }
+    }
+
+    private synchronized void disarmTimeout() {
+        if (timeout != null) {
+            plugin.getMainHandler().removeCallbacks(timeout);
+            timeout = null;
+        }
+    }
+
     void finish() {
         if (finished) {
             return;
         }
         finished = true;
-        Activity activity = plugin.getActivity();
-        if (activity != null) {
-            activity.runOnUiThread(() -> {
-                if (webView != null) {
-                    webView.stopLoading();
-                    webView.setWebViewClient(null);
-                    webView.destroy();
-                    webView = null;
+        disarmTimeout();
+        if (cancelReadiness != null) {
+            cancelReadiness.run();
+            cancelReadiness = null;
+        }
+        writeHandle = null;
+        // A job cancelled while its key was computed may have registered after it settled.
+        plugin.leaveInFlight(this);
+        plugin.getMainHandler().post(() -> {
+            if (webView != null) {
+                if (cancelled) {
+                    plugin.discardWebView(webView);
+                } else {
+                    plugin.releaseWebView(webView);
                 }
-                plugin.removeTask(this);
-            });
-        } else {
+                webView = null;
+            }
             plugin.removeTask(this);
-        }
+        });
     }
 
     @Override
     public void onPageFinished(WebView view, String url) {
-        plugin.generatePdf(this, view);
+        if (finished || pageLoaded) {
+            return;
+        }
+        pageLoaded = true;
+        loadedAt = SystemClock.elapsedRealtime();
+        metrics.record(PdfJobMetrics.Phase.LOAD, loadedAt - loadStartedAt);
+        if (options.readiness == null) {
+            plugin.generatePdf(this, view);
+            return;
+        }
+        cancelReadiness = options.readiness.await(view, plugin.getMainHandler(), (timedOut) -> {
+            cancelReadiness = null;
+            readyTimedOut = timedOut;
+            metrics.record(PdfJobMetrics.Phase.READY, SystemClock.elapsedRealtime() - loadedAt);
+            if (!finished) {
+                plugin.generatePdf(this, view);
+            }
+        });
+    }
+
+    @Override
+    public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+        SubresourceCache cache = plugin.getSubresourceCache();
+        return cache == null ? null : cache.intercept(request, subresourceStats);
     }
 
     @Override
     public void onReceivedError(WebView view, WebResourceRequest request, WebResourceError error) {
-        call.reject("Failed to load content: " + error.getDescription());
+        reject("Failed to load content: " + error.getDescription());
         finish();
     }
 }
@@ -287,81 +2059,213 @@ final class PdfGeneratorOptions {
 
     enum OutputType {
         BASE64,
+        STREAM,
+        FILE,
         SHARE;
 
+        /**
+         * Whether the PDF is rendered straight to its final location instead of a temporary file.
+         */
+        boolean writesToTarget() {
+            return this == FILE || this == SHARE;
+        }
+
         static OutputType from(String value) {
-            return "share".equalsIgnoreCase(value) ? SHARE : BASE64;
+            if ("share".equalsIgnoreCase(value)) {
+                return SHARE;
+            }
+            if ("file".equalsIgnoreCase(value)) {
+                return FILE;
+            }
+            if ("stream".equalsIgnoreCase(value)) {
+                return STREAM;
+            }
+            return BASE64;
+        }
+    }
+
+    enum OutputDirectory {
+        CACHE,
+        DATA,
+        DOCUMENTS;
+
+        static OutputDirectory from(String value) {
+            if ("data".equalsIgnoreCase(value)) {
+                return DATA;
+            }
+            if ("documents".equalsIgnoreCase(value)) {
+                return DOCUMENTS;
+            }
+            return CACHE;
+        }
+
+        File resolve(Context context) {
+            switch (this) {
+                case DATA:
+                    return context.getFilesDir();
+                case DOCUMENTS:
+                    File documents = context.getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
+                    return documents != null ? documents : context.getFilesDir();
+                default:
+                    return context.getCacheDir();
+            }
         }
     }
 
+    static final int DEFAULT_CHUNK_SIZE = 512 * 1024;
+
     final OutputType outputType;
     final String documentSize;
     final boolean landscape;
     final String fileName;
     final String baseUrl;
+    final String jobId;
+    final PdfJobScheduler.Priority priority;
+    final int chunkSize;
+    final OutputDirectory directory;
+    /** Per-call render cache override, {@code null} to follow the plugin configuration. */
+    final Boolean cache;
+    /** When to print after the page has loaded, {@code null} to print right away. */
+    final RenderReadiness readiness;
+    /** Zero-based pages to write, {@code null} for the whole document. */
+    final PageRange[] pageRanges;
+    /** Maximum run time once started, {@code 0} for none, {@code -1} for the plugin default. */
+    final int timeoutMs;
+    /** Post-write optimization, {@code null} to deliver the PDF as printed. */
+    final PdfOptimizer.Settings optimize;
+    /** Preview images to return with the PDF, {@code null} for none. */
+    final PdfThumbnails.Settings thumbnail;
 
-    private PdfGeneratorOptions(OutputType outputType, String documentSize, boolean landscape, String fileName, String baseUrl) {
+    private PdfGeneratorOptions(
+        OutputType outputType,
+        String documentSize,
+        boolean landscape,
+        String fileName,
+        String baseUrl,
+        String jobId,
+        PdfJobScheduler.Priority priority,
+        int chunkSize,
+        OutputDirectory directory,
+        Boolean cache,
+        RenderReadiness readiness,
+        PageRange[] pageRanges,
+        int timeoutMs,
+        PdfOptimizer.Settings optimize,
+        PdfThumbnails.Settings thumbnail
+    ) {
         this.outputType = outputType;
         this.documentSize = documentSize;
         this.landscape = landscape;
-        this.fileName = ensurePdfExtension(fileName);
+        this.fileName = OptionValues.fileName(fileName);
         this.baseUrl = baseUrl;
+        this.jobId = jobId;
+        this.priority = priority;
+        this.chunkSize = chunkSize;
+        this.directory = directory;
+        this.cache = cache;
+        this.readiness = readiness;
+        this.pageRanges = pageRanges;
+        this.timeoutMs = timeoutMs;
+        this.optimize = optimize;
+        this.thumbnail = thumbnail;
     }
 
     static PdfGeneratorOptions from(PluginCall call) {
-        String docSize = call.getString("documentSize", "A4");
-        boolean landscape = resolveLandscape(call);
-        String type = call.getString("type", "base64");
-        String fileName = call.getString("fileName", "default.pdf");
-        String baseUrl = normalizeBaseUrl(call.getString("baseUrl"));
-        return new PdfGeneratorOptions(OutputType.from(type), docSize, landscape, fileName, baseUrl);
+        return from(call.getData());
     }
 
-    private static boolean resolveLandscape(PluginCall call) {
-        JSObject data = call.getData();
-        if (data != null && data.has("landscape")) {
-            Object landscapeOption = data.opt("landscape");
-            if (landscapeOption instanceof Boolean) {
-                return (Boolean) landscapeOption;
-            }
-            if (landscapeOption instanceof String) {
-                return ((String) landscapeOption).equalsIgnoreCase("landscape");
-            }
-        }
-
-        String orientation = call.getString("orientation");
-        if (orientation != null) {
-            return orientation.equalsIgnoreCase("landscape");
-        }
-
-        String landscapeString = call.getString("landscape", "portrait");
-        return landscapeString.equalsIgnoreCase("landscape");
+    /**
+     * @throws IllegalArgumentException when an option is invalid, with a message for the caller.
+     */
+    static PdfGeneratorOptions from(JSObject data) {
+        String docSize = data.getString("documentSize", "A4");
+        boolean landscape = OptionValues.isLandscape(data.opt("landscape"), data.getString("orientation"));
+        String type = data.getString("type", "base64");
+        String fileName = data.getString("fileName", OptionValues.DEFAULT_FILE_NAME);
+        String baseUrl = OptionValues.baseUrl(data.getString("baseUrl"));
+        String jobId = OptionValues.jobId(data.getString("jobId"));
+        PdfJobScheduler.Priority priority = PdfJobScheduler.Priority.from(data.getString("priority"));
+        int chunkSize = data.getInteger("chunkSize", DEFAULT_CHUNK_SIZE);
+        OutputDirectory directory = OutputDirectory.from(data.getString("directory"));
+        Boolean cache = data.has("cache") ? data.getBoolean("cache", false) : null;
+        RenderReadiness readiness = RenderReadiness.from(
+            data.optJSONObject("waitFor"),
+            data.getInteger("readyTimeoutMs", RenderReadiness.DEFAULT_TIMEOUT_MS)
+        );
+        PageRange[] pageRanges = parsePageRanges(data.optJSONArray("pageRanges"));
+        int timeoutMs = data.has("timeoutMs") ? Math.max(0, data.getInteger("timeoutMs", 0)) : -1;
+        return new PdfGeneratorOptions(
+            OutputType.from(type),
+            docSize,
+            landscape,
+            fileName,
+            baseUrl,
+            jobId,
+            priority,
+            chunkSize,
+            directory,
+            cache,
+            readiness,
+            pageRanges,
+            timeoutMs,
+            PdfOptimizer.Settings.from(data.opt("optimize")),
+            PdfThumbnails.Settings.from(data.opt("thumbnail"))
+        );
     }
 
-    private static String ensurePdfExtension(String value) {
-        String trimmed = value == null ? "" : value.trim();
-        if (trimmed.isEmpty()) {
-            trimmed = "default.pdf";
+    /**
+     * Converts the one-based, inclusive {@code pageRanges} option to print framework ranges. A
+     * range without {@code end} covers a single page. Returns {@code null} when every page should
+     * be written.
+     */
+    /**
+     * Parses one-based, inclusive {@code pageRanges} into zero-based ranges, sorted and with
+     * overlapping or adjacent ranges merged, as print adapters expect them.
+     *
+     * @throws IllegalArgumentException when a range is malformed.
+     */
+    private static PageRange[] parsePageRanges(JSONArray value) {
+        if (value == null) {
+            return null;
         }
-        String sanitized = trimmed.replaceAll("[\\\\/:]", "_");
-        if (!sanitized.toLowerCase(Locale.ROOT).endsWith(".pdf")) {
-            sanitized = sanitized + ".pdf";
+        List<PageRange> ranges = new ArrayList<>();
+        for (int i = 0; i < value.length(); i++) {
+            JSONObject range = value.optJSONObject(i);
+            if (range == null) {
+                throw new IllegalArgumentException("pageRanges[" + i + "] must be an object with a 'start' page.");
+            }
+            int start = pageNumber(range, "start", i);
+            int end = range.isNull("end") ? start : pageNumber(range, "end", i);
+            if (end < start) {
+                throw new IllegalArgumentException("pageRanges[" + i + "] ends at page " + end + " before its start page " + start + ".");
+            }
+            ranges.add(new PageRange(start - 1, end - 1));
         }
-        return sanitized;
-    }
-
-    private static String normalizeBaseUrl(String baseUrl) {
-        if (baseUrl == null) {
+        if (ranges.isEmpty()) {
             return null;
         }
-        String trimmed = baseUrl.trim();
-        if (trimmed.isEmpty()) {
-            return null;
+        Collections.sort(ranges, (a, b) -> Integer.compare(a.getStart(), b.getStart()));
+        List<PageRange> merged = new ArrayList<>();
+        for (PageRange range : ranges) {
+            PageRange last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range.getStart() <= last.getEnd() + 1) {
+                merged.set(merged.size() - 1, new PageRange(last.getStart(), Math.max(last.getEnd(), range.getEnd())));
+            } else {
+                merged.add(range);
+            }
         }
-        if ("BUNDLE".equalsIgnoreCase(trimmed)) {
-            return "file:///android_asset/";
+        return merged.toArray(new PageRange[0]);
+    }
+
+    private static int pageNumber(JSONObject range, String key, int index) {
+        Object value = range.opt(key);
+        if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            if (number >= 1 && number <= Integer.MAX_VALUE && number == Math.rint(number)) {
+                return (int) number;
+            }
         }
-        return trimmed;
+        throw new IllegalArgumentException("pageRanges[" + index + "]." + key + " must be a whole page number of at least 1.");
     }
 
     PrintAttributes.MediaSize mediaSize() {
@@ -372,6 +2276,48 @@ final class PdfGeneratorOptions {
         return landscape ? mediaSize.asLandscape() : mediaSize.asPortrait();
     }
 
+    /**
+     * Describes every option that affects the rendered PDF bytes, used to build render cache keys.
+     * Output-only options such as the type, file name or job id are deliberately left out.
+     */
+    String renderIdentity() {
+        StringBuilder identity = new StringBuilder();
+        identity.append(documentSize.toUpperCase(Locale.ROOT)).append('|').append(landscape ? "landscape" : "portrait");
+        if (pageRanges != null) {
+            for (PageRange range : pageRanges) {
+                identity.append('|').append(range.getStart()).append('-').append(range.getEnd());
+            }
+        }
+        if (readiness != null) {
+            identity.append("|ready:").append(readiness.identity());
+        }
+        if (optimize != null) {
+            identity.append("|optimize:").append(optimize.identity());
+        }
+        return identity.toString();
+    }
+
+    /**
+     * Whether identical calls may share this job's result. Jobs with a caller-chosen id are
+     * tracked individually, and stream chunks are only emitted under the rendering job's id.
+     */
+    boolean isJoinable() {
+        return jobId == null && outputType != OutputType.STREAM;
+    }
+
+    /**
+     * Describes the options {@link #renderIdentity()} leaves out that still change what the
+     * caller receives. Together they decide whether two calls can share one job.
+     */
+    String outputIdentity() {
+        StringBuilder identity = new StringBuilder();
+        identity.append(outputType.name()).append('|').append(directory.name()).append('|').append(fileName);
+        if (thumbnail != null) {
+            identity.append("|thumbnail:").append(thumbnail.identity());
+        }
+        return identity.toString();
+    }
+
     String printJobName() {
         String name = fileName;
         int dotIndex = name.lastIndexOf('.');
@@ -0,0 +1,27 @@
+package app.capgo.pdfgenerator;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+/**
+ * Receives the outcome of a single PDF job. Exactly one of the methods is called, once.
+ */
+interface PdfJobListener {
+    void onResult(JSObject result);
+
+    void onError(String message);
+
+    static PdfJobListener forCall(PluginCall call) {
+        return new PdfJobListener() {
+            @Override
+            public void onResult(JSObject result) {
+                call.resolve(result);
+            }
+
+            @Override
+            public void onError(String message) {
+                call.reject(message);
+            }
+        };
+    }
+}
@@ -0,0 +1,88 @@
+package app.capgo.pdfgenerator;
+
+import com.getcapacitor.JSObject;
+import java.util.Arrays;
+
+/**
+ * Durations of the phases a single PDF job goes through, measured on the monotonic clock, plus
+ * the size of what it produced. Phases a job skipped, such as loading for a render cache hit, are
+ * left out of the reported values.
+ */
+final class PdfJobMetrics {
+
+    enum Phase {
+        /** Waiting for a render slot. */
+        QUEUE("queueWaitMs"),
+        /** From handing the source to the WebView until {@code onPageFinished}. */
+        LOAD("loadMs"),
+        /** Waiting for the {@code waitFor} condition. */
+        READY("readyMs"),
+        /** {@code PrintDocumentAdapter.onLayout}. */
+        LAYOUT("layoutMs"),
+        /** {@code PrintDocumentAdapter.onWrite}. */
+        WRITE("writeMs"),
+        /** The optional post-write optimizer. */
+        OPTIMIZE("optimizeMs"),
+        /** Rendering the requested thumbnails. */
+        THUMBNAIL("thumbnailMs"),
+        /** Base64 encoding of the written PDF. */
+        ENCODE("encodeMs"),
+        /** From the PDF being available until the result is handed to the bridge. */
+        DELIVER("deliverMs"),
+        /** From the call until the result is handed to the bridge. */
+        TOTAL("totalMs");
+
+        final String key;
+
+        Phase(String key) {
+            this.key = key;
+        }
+    }
+
+    private final long[] durations = new long[Phase.values().length];
+    private long outputBytes = -1;
+    private int pageCount = -1;
+
+    PdfJobMetrics() {
+        Arrays.fill(durations, -1);
+    }
+
+    synchronized void record(Phase phase, long durationMs) {
+        durations[phase.ordinal()] = Math.max(0, durationMs);
+    }
+
+    /** Returns the recorded duration, or {@code -1} when the phase did not run. */
+    synchronized long get(Phase phase) {
+        return durations[phase.ordinal()];
+    }
+
+    synchronized void setOutput(long bytes, int pages) {
+        outputBytes = bytes;
+        pageCount = pages;
+    }
+
+    synchronized long outputBytes() {
+        return outputBytes;
+    }
+
+    synchronized int pageCount() {
+        return pageCount;
+    }
+
+    synchronized JSObject toJSObject() {
+        JSObject metrics = new JSObject();
+        for (Phase phase : Phase.values()) {
+            long value = durations[phase.ordinal()];
+            if (value >= 0) {
+                metrics.put(phase.key, value);
+            }
+        }
+        if (outputBytes >= 0) {
+            metrics.put("outputBytes", outputBytes);
+        }
+        if (pageCount >= 0) {
+            metrics.put("pageCount", pageCount);
+        }
+        return metrics;
+    }
+}
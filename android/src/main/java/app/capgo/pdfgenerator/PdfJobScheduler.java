@@ -0,0 +1,219 @@
+package app.capgo.pdfgenerator;
+
+import android.os.Handler;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Admits PDF jobs into a bounded number of render slots. Jobs that cannot start right away are
+ * queued FIFO per priority class; interactive jobs always start before background ones. When the
+ * queue is full the overflow policy decides whether a job is rejected immediately or waits for
+ * queue space. Jobs that {@linkplain Job#waitsForQueueSpace() wait for queue space} are never
+ * rejected.
+ */
+final class PdfJobScheduler {
+
+    enum Priority {
+        INTERACTIVE,
+        BACKGROUND;
+
+        static Priority from(String value) {
+            return "background".equalsIgnoreCase(value) ? BACKGROUND : INTERACTIVE;
+        }
+
+        String jsName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    enum OverflowPolicy {
+        REJECT,
+        WAIT;
+
+        static OverflowPolicy from(String value) {
+            return "wait".equalsIgnoreCase(value) ? WAIT : REJECT;
+        }
+    }
+
+    interface Job {
+        Priority priority();
+
+        void start();
+
+        void reject(String message);
+
+        /**
+         * Whether the job waits for queue space when the queue is full, whatever the overflow
+         * policy and without a timeout.
+         */
+        boolean waitsForQueueSpace();
+
+        /**
+         * Called when the job could not start immediately. {@code position} is the 1-based place
+         * of the job in the queue.
+         */
+        void onQueued(int position);
+    }
+
+    private final Handler handler;
+    private int maxConcurrent;
+    private final int maxQueued;
+    private final OverflowPolicy overflowPolicy;
+    private final long waitTimeoutMs;
+
+    private final ArrayDeque<Job> interactive = new ArrayDeque<>();
+    private final ArrayDeque<Job> background = new ArrayDeque<>();
+    private final ArrayDeque<Job> overflow = new ArrayDeque<>();
+    private int running;
+
+    PdfJobScheduler(Handler handler, int maxConcurrent, int maxQueued, OverflowPolicy overflowPolicy, long waitTimeoutMs) {
+        this.handler = handler;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxQueued = Math.max(0, maxQueued);
+        this.overflowPolicy = overflowPolicy;
+        this.waitTimeoutMs = Math.max(0, waitTimeoutMs);
+    }
+
+    void submit(Job job) {
+        int position;
+        synchronized (this) {
+            if (running < maxConcurrent && queuedCount() == 0 && overflow.isEmpty()) {
+                running++;
+                position = 0;
+            } else if (queuedCount() < maxQueued) {
+                queueFor(job.priority()).addLast(job);
+                position = positionOf(job);
+            } else if (overflowPolicy == OverflowPolicy.WAIT || job.waitsForQueueSpace()) {
+                overflow.addLast(job);
+                position = queuedCount() + overflow.size();
+                if (waitTimeoutMs > 0 && !job.waitsForQueueSpace()) {
+                    handler.postDelayed(() -> expire(job), waitTimeoutMs);
+                }
+            } else {
+                position = -1;
+            }
+        }
+
+        if (position == 0) {
+            job.start();
+        } else if (position > 0) {
+            job.onQueued(position);
+        } else {
+            job.reject("PDF generation queue is full (" + maxQueued + " pending jobs).");
+        }
+    }
+
+    /**
+     * Releases the render slot held by a finished job and starts the next queued jobs.
+     */
+    void onJobFinished() {
+        List<Job> toStart;
+        synchronized (this) {
+            running = Math.max(0, running - 1);
+            toStart = takeStartable();
+        }
+        startAll(toStart);
+    }
+
+    /**
+     * Changes the number of render slots. Running jobs are never interrupted; a lower limit takes
+     * effect as they finish, a higher one starts queued jobs right away.
+     */
+    void setMaxConcurrent(int maxConcurrent) {
+        List<Job> toStart;
+        synchronized (this) {
+            this.maxConcurrent = Math.max(1, maxConcurrent);
+            toStart = takeStartable();
+        }
+        startAll(toStart);
+    }
+
+    synchronized int maxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Takes the jobs that can start in the free render slots, counting them as running. Jobs waiting
+     * for queue space move into the queue as it frees up, and start straight from the overflow when
+     * the queue has no room at all.
+     */
+    private List<Job> takeStartable() {
+        List<Job> toStart = new ArrayList<>();
+        while (true) {
+            fillQueueFromOverflow();
+            if (running >= maxConcurrent) {
+                break;
+            }
+            Job next = interactive.isEmpty() ? background.pollFirst() : interactive.pollFirst();
+            if (next == null) {
+                next = overflow.pollFirst();
+            }
+            if (next == null) {
+                break;
+            }
+            running++;
+            toStart.add(next);
+        }
+        return toStart;
+    }
+
+    private void fillQueueFromOverflow() {
+        while (!overflow.isEmpty() && queuedCount() < maxQueued) {
+            Job waiting = overflow.pollFirst();
+            queueFor(waiting.priority()).addLast(waiting);
+        }
+    }
+
+    private static void startAll(List<Job> jobs) {
+        for (Job job : jobs) {
+            job.start();
+        }
+    }
+
+    /**
+     * Removes a job that has not started yet. Returns {@code false} when it is not queued, e.g.
+     * because it already runs.
+     */
+    synchronized boolean remove(Job job) {
+        if (interactive.remove(job) || background.remove(job)) {
+            fillQueueFromOverflow();
+            return true;
+        }
+        return overflow.remove(job);
+    }
+
+    synchronized int runningCount() {
+        return running;
+    }
+
+    synchronized int queuedCount() {
+        return interactive.size() + background.size();
+    }
+
+    synchronized int waitingCount() {
+        return overflow.size();
+    }
+
+    private void expire(Job job) {
+        boolean removed;
+        synchronized (this) {
+            removed = overflow.remove(job);
+        }
+        if (removed) {
+            job.reject("Timed out waiting for space in the PDF generation queue.");
+        }
+    }
+
+    private ArrayDeque<Job> queueFor(Priority priority) {
+        return priority == Priority.BACKGROUND ? background : interactive;
+    }
+
+    private int positionOf(Job job) {
+        if (job.priority() == Priority.BACKGROUND) {
+            return interactive.size() + background.size();
+        }
+        return interactive.size();
+    }
+}
@@ -0,0 +1,1003 @@
+package app.capgo.pdfgenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Concatenates PDFs into a single document without loading them in memory. Objects are copied one
+ * at a time with their references renumbered, and the page trees of the inputs are hung under a
+ * new root page tree in input order, so memory use is bounded by the largest object rather than by
+ * the document.
+ *
+ * <p>Named destinations, the targets of internal links, are kept: those of the catalog's
+ * {@code /Dests} dictionary and of its {@code /Names} destination tree are merged into the new
+ * catalog, with the names of each input prefixed so that inputs rendered from the same template
+ * do not clash, and the links of that input are rewritten to match. The first input's
+ * {@code /Lang} is kept as well. Document outlines, structure trees and the other name trees are
+ * dropped.
+ *
+ * <p>Only files with classic cross-reference tables are supported, which is what the WebView
+ * (Skia) PDF backend writes. Encrypted files and cross-reference streams are rejected.
+ */
+final class PdfMerger {
+
+    /** Deepest {@code /Kids} nesting of a name tree that is followed, against reference cycles. */
+    private static final int MAX_NAME_TREE_DEPTH = 32;
+
+    private PdfMerger() {}
+
+    /**
+     * Merges {@code inputs} into {@code output} and returns the total number of pages.
+     */
+    static int merge(List<File> inputs, File output) throws IOException {
+        List<Source> sources = new ArrayList<>();
+        try {
+            int nextNumber = 1;
+            for (File input : inputs) {
+                Source source = new Source(input);
+                source.destinationPrefix = "doc" + sources.size() + "-";
+                sources.add(source);
+                nextNumber = source.assignNumbers(nextNumber);
+            }
+            int pagesNumber = nextNumber;
+            int catalogNumber = nextNumber + 1;
+
+            try (CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(output), 64 * 1024))) {
+                long[] offsets = new long[catalogNumber + 1];
+                String version = "1.4";
+                for (Source source : sources) {
+                    if (source.version.compareTo(version) > 0) {
+                        version = source.version;
+                    }
+                }
+                out.writeAscii("%PDF-" + version + "\n%\u00e2\u00e3\u00cf\u00d3\n");
+
+                int pageCount = 0;
+                StringBuilder kids = new StringBuilder();
+                for (Source source : sources) {
+                    source.copyObjects(out, offsets, pagesNumber);
+                    kids.append(source.newNumber(source.pagesRoot)).append(" 0 R ");
+                    pageCount += source.pageCount;
+                }
+
+                offsets[pagesNumber] = out.count;
+                out.writeAscii(pagesNumber + " 0 obj\n<< /Type /Pages /Kids [ " + kids + "] /Count " + pageCount + " >>\nendobj\n");
+                offsets[catalogNumber] = out.count;
+                out.writeAscii(catalogNumber + " 0 obj\n" + catalog(sources, pagesNumber) + "\nendobj\n");
+
+                long xrefOffset = out.count;
+                StringBuilder xref = new StringBuilder();
+                xref.append("xref\n0 ").append(offsets.length).append("\n0000000000 65535 f \n");
+                for (int i = 1; i < offsets.length; i++) {
+                    xref.append(String.format(Locale.ROOT, "%010d 00000 n \n", offsets[i]));
+                }
+                xref.append("trailer\n<< /Size ").append(offsets.length).append(" /Root ").append(catalogNumber).append(" 0 R >>\n");
+                xref.append("startxref\n").append(xrefOffset).append("\n%%EOF\n");
+                out.writeAscii(xref.toString());
+                return pageCount;
+            }
+        } finally {
+            for (Source source : sources) {
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the merged catalog: the new page tree, the destinations of every input under their
+     * prefixed names, and the first language found.
+     */
+    private static String catalog(List<Source> sources, int pagesNumber) {
+        StringBuilder dests = new StringBuilder();
+        // Name tree keys have to be sorted.
+        Map<String, String> namedDests = new TreeMap<>();
+        String language = null;
+        for (Source source : sources) {
+            for (Destination destination : source.dests) {
+                dests
+                    .append(" /")
+                    .append(source.destinationPrefix)
+                    .append(destination.key.substring(1))
+                    .append(' ')
+                    .append(PdfObjectReader.render(destination.value, source::newNumber, null));
+            }
+            for (Destination destination : source.namedDests) {
+                namedDests.put(source.destinationPrefix + destination.key, PdfObjectReader.render(destination.value, source::newNumber, null));
+            }
+            if (language == null && source.language != null) {
+                language = PdfObjectReader.render(source.language, source::newNumber, null);
+            }
+        }
+        StringBuilder catalog = new StringBuilder("<< /Type /Catalog /Pages ").append(pagesNumber).append(" 0 R");
+        if (dests.length() > 0) {
+            catalog.append(" /Dests <<").append(dests).append(" >>");
+        }
+        if (!namedDests.isEmpty()) {
+            catalog.append(" /Names << /Dests << /Names [");
+            for (Map.Entry<String, String> destination : namedDests.entrySet()) {
+                catalog.append(' ').append(PdfObjectReader.encodeString(destination.getKey())).append(' ').append(destination.getValue());
+            }
+            catalog.append(" ] >> >>");
+        }
+        if (language != null) {
+            catalog.append(" /Lang ").append(language);
+        }
+        return catalog.append(" >>").toString();
+    }
+
+    /** A named destination of an input and the tokens of its target. */
+    static final class Destination {
+
+        /** The name, e.g. {@code /top}, or the decoded string of a name tree key. */
+        final String key;
+        final List<PdfObjectReader.Token> value;
+
+        Destination(String key, List<PdfObjectReader.Token> value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /** One input document and the mapping of its object numbers into the output. */
+    static final class Source implements Closeable {
+
+        final PdfObjectReader reader;
+        final String version;
+        long[] offsets = new long[0];
+        int[] numbers = new int[0];
+        int catalog;
+        /** Document information dictionary, or 0 when there is none. */
+        int info;
+        int pagesRoot;
+        int pageCount;
+        /** Entries of the catalog's {@code /Dests} dictionary. */
+        final List<Destination> dests = new ArrayList<>();
+        /** Entries of the catalog's {@code /Names /Dests} name tree. */
+        final List<Destination> namedDests = new ArrayList<>();
+        /** Value of the catalog's {@code /Lang}, or {@code null}. */
+        List<PdfObjectReader.Token> language;
+        /** Prepended to the names of this input's destinations in the output. */
+        String destinationPrefix = "";
+
+        Source(File file) throws IOException {
+            reader = new PdfObjectReader(file);
+            version = reader.readVersion();
+            readCrossReferences();
+        }
+
+        private void readCrossReferences() throws IOException {
+            long xrefOffset = reader.findStartXref();
+            PdfObjectReader.Token rootRef = null;
+            while (xrefOffset >= 0) {
+                reader.seek(xrefOffset);
+                PdfObjectReader.Token keyword = reader.nextSignificant();
+                if (keyword == null || !keyword.is("xref")) {
+                    throw new IOException("Cross-reference streams are not supported.");
+                }
+                while (true) {
+                    PdfObjectReader.Token token = reader.nextSignificant();
+                    if (token == null) {
+                        throw new IOException("Truncated cross-reference table.");
+                    }
+                    if (token.is("trailer")) {
+                        break;
+                    }
+                    int start = token.intValue();
+                    int count = reader.nextSignificant().intValue();
+                    ensureCapacity(start + count);
+                    for (int i = 0; i < count; i++) {
+                        long offset = reader.nextSignificant().longValue();
+                        reader.nextSignificant();
+                        PdfObjectReader.Token type = reader.nextSignificant();
+                        // Older sections are read last; entries already seen take precedence.
+                        if (type.is("n") && offsets[start + i] == 0) {
+                            offsets[start + i] = offset;
+                        }
+                    }
+                }
+                List<PdfObjectReader.Token> trailer = reader.readDictionary();
+                if (PdfObjectReader.find(trailer, "/Encrypt") >= 0) {
+                    throw new IOException("Encrypted PDFs cannot be merged.");
+                }
+                if (rootRef == null) {
+                    int root = PdfObjectReader.find(trailer, "/Root");
+                    if (root >= 0) {
+                        rootRef = trailer.get(root + 1);
+                    }
+                }
+                if (info == 0) {
+                    int infoIndex = PdfObjectReader.find(trailer, "/Info");
+                    if (infoIndex >= 0) {
+                        info = trailer.get(infoIndex + 1).intValue();
+                    }
+                }
+                int prev = PdfObjectReader.find(trailer, "/Prev");
+                xrefOffset = prev >= 0 ? trailer.get(prev + 1).longValue() : -1;
+            }
+            if (rootRef == null) {
+                throw new IOException("PDF has no document catalog.");
+            }
+            catalog = rootRef.intValue();
+
+            PdfObjectReader.ObjectHead catalogHead = reader.readObjectHead(offsetOf(catalog));
+            int pages = PdfObjectReader.find(catalogHead.values, "/Pages");
+            if (pages < 0) {
+                throw new IOException("PDF has no page tree.");
+            }
+            pagesRoot = catalogHead.values.get(pages + 1).intValue();
+            PdfObjectReader.ObjectHead pagesHead = reader.readObjectHead(offsetOf(pagesRoot));
+            int count = PdfObjectReader.find(pagesHead.values, "/Count");
+            pageCount = count >= 0 ? pagesHead.values.get(count + 1).intValue() : 0;
+
+            List<List<PdfObjectReader.Token>> entries = PdfObjectReader.elements(resolve(PdfObjectReader.valueOf(catalogHead.tokens, "/Dests")));
+            for (int i = 0; i + 1 < entries.size(); i += 2) {
+                PdfObjectReader.Token key = entries.get(i).get(0);
+                if (key.type == PdfObjectReader.Type.NAME) {
+                    dests.add(new Destination(key.text, entries.get(i + 1)));
+                }
+            }
+            List<PdfObjectReader.Token> names = resolve(PdfObjectReader.valueOf(catalogHead.tokens, "/Names"));
+            if (names != null) {
+                readNameTree(resolve(PdfObjectReader.valueOf(names, "/Dests")), 0);
+            }
+            language = resolve(PdfObjectReader.valueOf(catalogHead.tokens, "/Lang"));
+        }
+
+        private void readNameTree(List<PdfObjectReader.Token> node, int depth) throws IOException {
+            if (node == null || depth > MAX_NAME_TREE_DEPTH) {
+                return;
+            }
+            List<List<PdfObjectReader.Token>> leaves = PdfObjectReader.elements(resolve(PdfObjectReader.valueOf(node, "/Names")));
+            for (int i = 0; i + 1 < leaves.size(); i += 2) {
+                PdfObjectReader.Token key = leaves.get(i).get(0);
+                if (key.type == PdfObjectReader.Type.STRING) {
+                    namedDests.add(new Destination(PdfObjectReader.decodeString(key.text), leaves.get(i + 1)));
+                }
+            }
+            for (List<PdfObjectReader.Token> kid : PdfObjectReader.elements(resolve(PdfObjectReader.valueOf(node, "/Kids")))) {
+                readNameTree(resolve(kid), depth + 1);
+            }
+        }
+
+        /** Returns the tokens of the object {@code value} refers to, or {@code value} itself. */
+        private List<PdfObjectReader.Token> resolve(List<PdfObjectReader.Token> value) throws IOException {
+            int number = PdfObjectReader.referencedNumber(value);
+            return number > 0 ? reader.readObjectHead(offsetOf(number)).tokens : value;
+        }
+
+        /**
+         * Assigns consecutive output numbers to every in-use object except the catalog, which is
+         * replaced by the merged document's own catalog.
+         */
+        int assignNumbers(int firstNumber) {
+            numbers = new int[offsets.length];
+            int next = firstNumber;
+            for (int i = 1; i < offsets.length; i++) {
+                if (offsets[i] > 0 && i != catalog) {
+                    numbers[i] = next++;
+                }
+            }
+            return next;
+        }
+
+        int newNumber(int oldNumber) {
+            return oldNumber >= 0 && oldNumber < numbers.length ? numbers[oldNumber] : 0;
+        }
+
+        void copyObjects(CountingOutputStream out, long[] outputOffsets, int mergedPagesNumber) throws IOException {
+            for (int i = 1; i < offsets.length; i++) {
+                if (numbers[i] == 0) {
+                    continue;
+                }
+                PdfObjectReader.ObjectHead head = reader.readObjectHead(offsets[i]);
+                outputOffsets[numbers[i]] = out.count;
+                out.writeAscii(numbers[i] + " 0 obj\n");
+                String extra = i == pagesRoot ? " /Parent " + mergedPagesNumber + " 0 R " : null;
+                out.writeAscii(PdfObjectReader.render(head.tokens, this::newNumber, extra, destinationPrefix));
+                if (head.streamOffset >= 0) {
+                    long length = head.streamLength(reader, this::offsetOf);
+                    out.writeAscii("\nstream\n");
+                    reader.copy(head.streamOffset, length, out);
+                    out.writeAscii("\nendstream");
+                }
+                out.writeAscii("\nendobj\n");
+            }
+        }
+
+        long offsetOf(int number) throws IOException {
+            if (number <= 0 || number >= offsets.length || offsets[number] == 0) {
+                throw new IOException("Missing PDF object " + number + ".");
+            }
+            return offsets[number];
+        }
+
+        private void ensureCapacity(int size) {
+            if (offsets.length < size) {
+                long[] grown = new long[size];
+                System.arraycopy(offsets, 0, grown, 0, offsets.length);
+                offsets = grown;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    static final class CountingOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeAscii(String text) throws IOException {
+            write(text.getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /** Minimal random-access tokenizer for the object syntax of a PDF file. */
+    static final class PdfObjectReader implements Closeable {
+
+        interface Renumbering {
+            int newNumber(int oldNumber);
+        }
+
+        interface OffsetLookup {
+            long offsetOf(int number) throws IOException;
+        }
+
+        enum Type {
+            WHITESPACE,
+            COMMENT,
+            REGULAR,
+            NAME,
+            STRING,
+            DICT_OPEN,
+            DICT_CLOSE,
+            DELIMITER
+        }
+
+        static final class Token {
+
+            final Type type;
+            final String text;
+
+            Token(Type type, String text) {
+                this.type = type;
+                this.text = text;
+            }
+
+            boolean is(String value) {
+                return type == Type.REGULAR && text.equals(value);
+            }
+
+            boolean isInteger() {
+                if (type != Type.REGULAR || text.isEmpty()) {
+                    return false;
+                }
+                for (int i = 0; i < text.length(); i++) {
+                    if (!Character.isDigit(text.charAt(i))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            int intValue() throws IOException {
+                return (int) longValue();
+            }
+
+            long longValue() throws IOException {
+                try {
+                    return Long.parseLong(text);
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Expected a number but found '" + text + "'.");
+                }
+            }
+        }
+
+        /** Tokens of an object up to its {@code stream} or {@code endobj} keyword. */
+        static final class ObjectHead {
+
+            /** Every token, including whitespace, so the object can be written back verbatim. */
+            final List<Token> tokens;
+            /** The tokens without whitespace and comments, for looking up values. */
+            final List<Token> values = new ArrayList<>();
+            /** File offset of the stream data, or -1 when the object has no stream. */
+            final long streamOffset;
+
+            ObjectHead(List<Token> tokens, long streamOffset) {
+                this.tokens = tokens;
+                this.streamOffset = streamOffset;
+                for (Token token : tokens) {
+                    if (token.type != Type.WHITESPACE && token.type != Type.COMMENT) {
+                        values.add(token);
+                    }
+                }
+            }
+
+            long streamLength(PdfObjectReader reader, OffsetLookup lookup) throws IOException {
+                int index = find(values, "/Length");
+                if (index < 0) {
+                    throw new IOException("Stream without /Length.");
+                }
+                Token value = values.get(index + 1);
+                if (index + 3 < values.size() && values.get(index + 3).is("R")) {
+                    long resume = reader.position();
+                    ObjectHead lengthObject = reader.readObjectHead(lookup.offsetOf(value.intValue()));
+                    reader.seek(resume);
+                    return lengthObject.values.get(0).longValue();
+                }
+                return value.longValue();
+            }
+        }
+
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private final RandomAccessFile file;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private long bufferStart;
+        private int bufferLength;
+        private long position;
+
+        PdfObjectReader(File file) throws IOException {
+            this.file = new RandomAccessFile(file, "r");
+        }
+
+        String readVersion() throws IOException {
+            seek(0);
+            StringBuilder header = new StringBuilder();
+            int b;
+            while (header.length() < 16 && (b = read()) != -1 && b != '\n' && b != '\r') {
+                header.append((char) b);
+            }
+            String text = header.toString();
+            if (!text.startsWith("%PDF-")) {
+                throw new IOException("Not a PDF file.");
+            }
+            return text.substring(5).trim();
+        }
+
+        long findStartXref() throws IOException {
+            long length = file.length();
+            int tail = (int) Math.min(1024, length);
+            byte[] bytes = new byte[tail];
+            file.seek(length - tail);
+            file.readFully(bytes);
+            String text = new String(bytes, StandardCharsets.ISO_8859_1);
+            int index = text.lastIndexOf("startxref");
+            if (index < 0) {
+                throw new IOException("PDF has no startxref.");
+            }
+            seek(length - tail + index + "startxref".length());
+            return nextSignificant().longValue();
+        }
+
+        /**
+         * Reads the {@code N G obj} header at {@code offset} and the tokens that follow it.
+         */
+        ObjectHead readObjectHead(long offset) throws IOException {
+            seek(offset);
+            nextSignificant();
+            nextSignificant();
+            Token keyword = nextSignificant();
+            if (keyword == null || !keyword.is("obj")) {
+                throw new IOException("Malformed PDF object at offset " + offset + ".");
+            }
+            List<Token> tokens = new ArrayList<>();
+            while (true) {
+                Token token = next();
+                if (token == null) {
+                    throw new IOException("Unterminated PDF object at offset " + offset + ".");
+                }
+                if (token.is("endobj")) {
+                    return new ObjectHead(trim(tokens), -1);
+                }
+                if (token.is("stream")) {
+                    int b = read();
+                    if (b == '\r') {
+                        b = read();
+                    }
+                    if (b != '\n') {
+                        position--;
+                    }
+                    return new ObjectHead(trim(tokens), position);
+                }
+                tokens.add(token);
+            }
+        }
+
+        /**
+         * Reads a dictionary starting at the next significant token, e.g. a trailer.
+         */
+        List<Token> readDictionary() throws IOException {
+            List<Token> tokens = new ArrayList<>();
+            int depth = 0;
+            Token token;
+            while ((token = next()) != null) {
+                if (token.type == Type.WHITESPACE || token.type == Type.COMMENT) {
+                    continue;
+                }
+                tokens.add(token);
+                if (token.type == Type.DICT_OPEN) {
+                    depth++;
+                } else if (token.type == Type.DICT_CLOSE && --depth == 0) {
+                    break;
+                }
+            }
+            return tokens;
+        }
+
+        /**
+         * Returns the index of the name {@code key} in the outermost dictionary of the significant
+         * tokens {@code values}, so that its value starts at {@code index + 1}, or -1.
+         */
+        static int find(List<Token> values, String key) {
+            int depth = 0;
+            for (int i = 0; i < values.size(); i++) {
+                Token token = values.get(i);
+                if (token.type == Type.DICT_OPEN) {
+                    depth++;
+                } else if (token.type == Type.DICT_CLOSE) {
+                    depth--;
+                } else if (depth == 1 && token.type == Type.NAME && token.text.equals(key) && i + 1 < values.size()) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Serializes tokens, rewriting every {@code N G R} reference through {@code renumbering}.
+         * References to objects that do not exist become {@code null}. {@code extraEntry} is
+         * inserted right after the opening {@code <<} when not {@code null}.
+         */
+        static String render(List<Token> tokens, Renumbering renumbering, String extraEntry) {
+            return render(tokens, renumbering, extraEntry, null);
+        }
+
+        /**
+         * {@link #render}, also prefixing the destination names that {@code /Dest} and
+         * {@code /D} entries link to with {@code destinationPrefix} when it is not empty.
+         */
+        static String render(List<Token> tokens, Renumbering renumbering, String extraEntry, String destinationPrefix) {
+            StringBuilder out = new StringBuilder();
+            boolean inserted = extraEntry == null;
+            boolean renaming = destinationPrefix != null && !destinationPrefix.isEmpty();
+            for (int i = 0; i < tokens.size(); i++) {
+                Token token = tokens.get(i);
+                if (renaming && token.type == Type.NAME && (token.text.equals("/Dest") || token.text.equals("/D"))) {
+                    int value = nextSignificantIndex(tokens, i + 1);
+                    if (value >= 0 && (tokens.get(value).type == Type.NAME || tokens.get(value).type == Type.STRING)) {
+                        for (int j = i; j < value; j++) {
+                            out.append(tokens.get(j).text);
+                        }
+                        out.append(prefixed(tokens.get(value), destinationPrefix));
+                        i = value;
+                        continue;
+                    }
+                }
+                int generation = nextSignificantIndex(tokens, i + 1);
+                int keyword = generation < 0 ? -1 : nextSignificantIndex(tokens, generation + 1);
+                if (
+                    token.isInteger() &&
+                    generation >= 0 &&
+                    keyword >= 0 &&
+                    tokens.get(generation).isInteger() &&
+                    tokens.get(keyword).is("R")
+                ) {
+                    int number = renumbering.newNumber(Integer.parseInt(token.text));
+                    out.append(number > 0 ? number + " 0 R" : "null");
+                    i = keyword;
+                    continue;
+                }
+                out.append(token.text);
+                if (!inserted && token.type == Type.DICT_OPEN) {
+                    out.append(extraEntry);
+                    inserted = true;
+                }
+            }
+            return out.toString();
+        }
+
+        /** A name or string token with {@code prefix}, plain ASCII, prepended to its value. */
+        private static String prefixed(Token token, String prefix) {
+            String text = token.text;
+            if (token.type == Type.NAME) {
+                return "/" + prefix + text.substring(1);
+            }
+            if (text.startsWith("(")) {
+                return "(" + prefix + text.substring(1);
+            }
+            StringBuilder hex = new StringBuilder("<");
+            for (int i = 0; i < prefix.length(); i++) {
+                hex.append(String.format(Locale.ROOT, "%02x", (int) prefix.charAt(i)));
+            }
+            return hex.append(text.substring(1)).toString();
+        }
+
+        /**
+         * Returns the tokens of the value of {@code key} in the outermost dictionary of
+         * {@code tokens}, or {@code null}.
+         */
+        static List<Token> valueOf(List<Token> tokens, String key) {
+            int index = find(tokens, key);
+            int start = index < 0 ? -1 : nextSignificantIndex(tokens, index + 1);
+            return start < 0 ? null : new ArrayList<>(tokens.subList(start, endOfValue(tokens, start) + 1));
+        }
+
+        /**
+         * Returns the tokens of each element of the outermost array, or of each key and value of
+         * the outermost dictionary, of {@code tokens}. Empty for anything else.
+         */
+        static List<List<Token>> elements(List<Token> tokens) {
+            List<List<Token>> elements = new ArrayList<>();
+            int open = tokens == null ? -1 : nextSignificantIndex(tokens, 0);
+            if (open < 0) {
+                return elements;
+            }
+            int close = endOfValue(tokens, open);
+            int start = nextSignificantIndex(tokens, open + 1);
+            while (start >= 0 && start < close) {
+                int end = endOfValue(tokens, start);
+                elements.add(new ArrayList<>(tokens.subList(start, end + 1)));
+                start = nextSignificantIndex(tokens, end + 1);
+            }
+            return elements;
+        }
+
+        /** The object number of the {@code N G R} reference {@code value}, or -1. */
+        static int referencedNumber(List<Token> value) {
+            if (value == null) {
+                return -1;
+            }
+            List<Token> significant = new ArrayList<>();
+            for (Token token : value) {
+                if (token.type != Type.WHITESPACE && token.type != Type.COMMENT) {
+                    significant.add(token);
+                }
+            }
+            if (significant.size() == 3 && significant.get(0).isInteger() && significant.get(1).isInteger() && significant.get(2).is("R")) {
+                return Integer.parseInt(significant.get(0).text);
+            }
+            return -1;
+        }
+
+        /** Decodes a literal {@code (...)} or hexadecimal {@code <...>} string token into ISO-8859-1. */
+        static String decodeString(String text) {
+            StringBuilder out = new StringBuilder();
+            if (text.startsWith("<")) {
+                String digits = text.substring(1, text.length() - 1).replaceAll("\\s", "");
+                if (digits.length() % 2 != 0) {
+                    digits += "0";
+                }
+                for (int i = 0; i < digits.length(); i += 2) {
+                    out.append((char) Integer.parseInt(digits.substring(i, i + 2), 16));
+                }
+                return out.toString();
+            }
+            int end = text.endsWith(")") ? text.length() - 1 : text.length();
+            for (int i = 1; i < end; i++) {
+                char c = text.charAt(i);
+                if (c != '\\' || i + 1 >= end) {
+                    out.append(c);
+                    continue;
+                }
+                char escaped = text.charAt(++i);
+                switch (escaped) {
+                    case 'n':
+                        out.append('\n');
+                        break;
+                    case 'r':
+                        out.append('\r');
+                        break;
+                    case 't':
+                        out.append('\t');
+                        break;
+                    case 'b':
+                        out.append('\b');
+                        break;
+                    case 'f':
+                        out.append('\f');
+                        break;
+                    case '\r':
+                        // Line continuation.
+                        if (i + 1 < end && text.charAt(i + 1) == '\n') {
+                            i++;
+                        }
+                        break;
+                    case '\n':
+                        break;
+                    default:
+                        if (escaped >= '0' && escaped <= '7') {
+                            int value = escaped - '0';
+                            for (int digits = 1; digits < 3 && i + 1 < end && text.charAt(i + 1) >= '0' && text.charAt(i + 1) <= '7'; digits++) {
+                                value = value * 8 + (text.charAt(++i) - '0');
+                            }
+                            out.append((char) (value & 0xff));
+                        } else {
+                            out.append(escaped);
+                        }
+                        break;
+                }
+            }
+            return out.toString();
+        }
+
+        /** Encodes an ISO-8859-1 string as a literal string token. */
+        static String encodeString(String value) {
+            StringBuilder out = new StringBuilder("(");
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '(' || c == ')' || c == '\\') {
+                    out.append('\\').append(c);
+                } else if (c < 0x20 || c > 0x7e) {
+                    out.append(String.format(Locale.ROOT, "\\%03o", (int) c));
+                } else {
+                    out.append(c);
+                }
+            }
+            return out.append(')').toString();
+        }
+
+        /**
+         * Returns a copy of {@code tokens} without the given keys of the outermost dictionary and
+         * their values, e.g. to replace them through the {@code extraEntry} of {@link #render}.
+         */
+        static List<Token> withoutEntries(List<Token> tokens, String... keys) {
+            List<Token> result = new ArrayList<>(tokens.size());
+            int depth = 0;
+            for (int i = 0; i < tokens.size(); i++) {
+                Token token = tokens.get(i);
+                if (token.type == Type.DICT_OPEN) {
+                    depth++;
+                } else if (token.type == Type.DICT_CLOSE) {
+                    depth--;
+                } else if (depth == 1 && token.type == Type.NAME && isOneOf(token.text, keys)) {
+                    i = endOfValue(tokens, nextSignificantIndex(tokens, i + 1));
+                    continue;
+                }
+                result.add(token);
+            }
+            return result;
+        }
+
+        /** Index of the last token of the value starting at {@code start}. */
+        private static int endOfValue(List<Token> tokens, int start) {
+            if (start < 0) {
+                return tokens.size() - 1;
+            }
+            Token first = tokens.get(start);
+            if (first.type == Type.DICT_OPEN || first.text.equals("[")) {
+                int depth = 0;
+                for (int i = start; i < tokens.size(); i++) {
+                    Token token = tokens.get(i);
+                    if (token.type == Type.DICT_OPEN || token.text.equals("[")) {
+                        depth++;
+                    } else if ((token.type == Type.DICT_CLOSE || token.text.equals("]")) && --depth == 0) {
+                        return i;
+                    }
+                }
+                return tokens.size() - 1;
+            }
+            int generation = nextSignificantIndex(tokens, start + 1);
+            int keyword = generation < 0 ? -1 : nextSignificantIndex(tokens, generation + 1);
+            if (first.isInteger() && keyword >= 0 && tokens.get(generation).isInteger() && tokens.get(keyword).is("R")) {
+                return keyword;
+            }
+            return start;
+        }
+
+        private static boolean isOneOf(String text, String[] keys) {
+            for (String key : keys) {
+                if (key.equals(text)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static int nextSignificantIndex(List<Token> tokens, int from) {
+            for (int i = from; i < tokens.size(); i++) {
+                Type type = tokens.get(i).type;
+                if (type != Type.WHITESPACE && type != Type.COMMENT) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static List<Token> trim(List<Token> tokens) {
+            int start = 0;
+            int end = tokens.size();
+            while (start < end && tokens.get(start).type == Type.WHITESPACE) {
+                start++;
+            }
+            while (end > start && tokens.get(end - 1).type == Type.WHITESPACE) {
+                end--;
+            }
+            return new ArrayList<>(tokens.subList(start, end));
+        }
+
+        Token nextSignificant() throws IOException {
+            Token token;
+            do {
+                token = next();
+            } while (token != null && (token.type == Type.WHITESPACE || token.type == Type.COMMENT));
+            return token;
+        }
+
+        Token next() throws IOException {
+            int b = read();
+            if (b == -1) {
+                return null;
+            }
+            StringBuilder text = new StringBuilder();
+            text.append((char) b);
+            if (isWhitespace(b)) {
+                while ((b = read()) != -1 && isWhitespace(b)) {
+                    text.append((char) b);
+                }
+                unread(b);
+                return new Token(Type.WHITESPACE, text.toString());
+            }
+            switch (b) {
+                case '%':
+                    while ((b = read()) != -1 && b != '\n' && b != '\r') {
+                        text.append((char) b);
+                    }
+                    unread(b);
+                    return new Token(Type.COMMENT, text.toString());
+                case '/':
+                    while ((b = read()) != -1 && !isWhitespace(b) && !isDelimiter(b)) {
+                        text.append((char) b);
+                    }
+                    unread(b);
+                    return new Token(Type.NAME, text.toString());
+                case '(':
+                    readLiteralString(text);
+                    return new Token(Type.STRING, text.toString());
+                case '<':
+                    b = read();
+                    if (b == '<') {
+                        return new Token(Type.DICT_OPEN, "<<");
+                    }
+                    while (b != -1 && b != '>') {
+                        text.append((char) b);
+                        b = read();
+                    }
+                    text.append('>');
+                    return new Token(Type.STRING, text.toString());
+                case '>':
+                    b = read();
+                    if (b == '>') {
+                        return new Token(Type.DICT_CLOSE, ">>");
+                    }
+                    unread(b);
+                    return new Token(Type.DELIMITER, ">");
+                case '[':
+                case ']':
+                case '{':
+                case '}':
+                case ')':
+                    return new Token(Type.DELIMITER, text.toString());
+                default:
+                    while ((b = read()) != -1 && !isWhitespace(b) && !isDelimiter(b)) {
+                        text.append((char) b);
+                    }
+                    unread(b);
+                    return new Token(Type.REGULAR, text.toString());
+            }
+        }
+
+        private void readLiteralString(StringBuilder text) throws IOException {
+            int depth = 1;
+            int b;
+            while (depth > 0 && (b = read()) != -1) {
+                text.append((char) b);
+                if (b == '\\') {
+                    int escaped = read();
+                    if (escaped != -1) {
+                        text.append((char) escaped);
+                    }
+                } else if (b == '(') {
+                    depth++;
+                } else if (b == ')') {
+                    depth--;
+                }
+            }
+        }
+
+        void copy(long offset, long length, OutputStream out) throws IOException {
+            seek(offset);
+            byte[] chunk = new byte[BUFFER_SIZE];
+            long remaining = length;
+            file.seek(offset);
+            while (remaining > 0) {
+                int read = file.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+                if (read == -1) {
+                    throw new IOException("Stream data is truncated.");
+                }
+                out.write(chunk, 0, read);
+                remaining -= read;
+            }
+            seek(offset + length);
+        }
+
+        void seek(long offset) {
+            position = offset;
+        }
+
+        long position() {
+            return position;
+        }
+
+        private int read() throws IOException {
+            if (position < bufferStart || position >= bufferStart + bufferLength) {
+                file.seek(position);
+                bufferStart = position;
+                bufferLength = Math.max(0, file.read(buffer, 0, buffer.length));
+                if (bufferLength == 0) {
+                    return -1;
+                }
+            }
+            return buffer[(int) (position++ - bufferStart)] & 0xff;
+        }
+
+        private void unread(int b) {
+            if (b != -1) {
+                position--;
+            }
+        }
+
+        private static boolean isWhitespace(int b) {
+            return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0;
+        }
+
+        private static boolean isDelimiter(int b) {
+            return b == '(' || b == ')' || b == '<' || b == '>' || b == '[' || b == ']' || b == '{' || b == '}' || b == '/' || b == '%';
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+}
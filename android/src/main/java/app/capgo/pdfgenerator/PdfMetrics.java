@@ -0,0 +1,128 @@
+package app.capgo.pdfgenerator;
+
+import com.getcapacitor.JSObject;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Plugin-wide aggregate of {@link PdfJobMetrics}. Counts, means and maxima cover every job since
+ * the last reset; percentiles are computed over a window of the most recent samples so memory
+ * stays bounded however many jobs run.
+ */
+final class PdfMetrics {
+
+    static final int WINDOW_SIZE = 512;
+
+    private final Map<String, Distribution> distributions = new LinkedHashMap<>();
+    private long succeeded;
+    private long failed;
+    private long cached;
+    private long deduplicated;
+    private long startedAt = System.currentTimeMillis();
+
+    PdfMetrics() {
+        reset();
+    }
+
+    synchronized void record(PdfJobMetrics metrics, boolean success, boolean cacheHit) {
+        if (success) {
+            succeeded++;
+        } else {
+            failed++;
+        }
+        if (cacheHit) {
+            cached++;
+        }
+        for (PdfJobMetrics.Phase phase : PdfJobMetrics.Phase.values()) {
+            long value = metrics.get(phase);
+            if (value >= 0) {
+                distributions.get(phase.key).add(value);
+            }
+        }
+        if (success && metrics.outputBytes() >= 0) {
+            distributions.get("outputBytes").add(metrics.outputBytes());
+        }
+        if (success && metrics.pageCount() >= 0) {
+            distributions.get("pageCount").add(metrics.pageCount());
+        }
+    }
+
+    /**
+     * Counts a call that joined an identical job already in flight instead of rendering.
+     */
+    synchronized void recordDeduplicated() {
+        deduplicated++;
+    }
+
+    synchronized void reset() {
+        distributions.clear();
+        for (PdfJobMetrics.Phase phase : PdfJobMetrics.Phase.values()) {
+            distributions.put(phase.key, new Distribution());
+        }
+        distributions.put("outputBytes", new Distribution());
+        distributions.put("pageCount", new Distribution());
+        succeeded = 0;
+        failed = 0;
+        cached = 0;
+        deduplicated = 0;
+        startedAt = System.currentTimeMillis();
+    }
+
+    synchronized JSObject snapshot() {
+        JSObject result = new JSObject();
+        result.put("since", startedAt);
+        result.put("succeeded", succeeded);
+        result.put("failed", failed);
+        result.put("cached", cached);
+        result.put("deduplicated", deduplicated);
+        JSObject values = new JSObject();
+        for (Map.Entry<String, Distribution> entry : distributions.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().summarize());
+        }
+        result.put("metrics", values);
+        return result;
+    }
+
+    private static final class Distribution {
+
+        private final long[] window = new long[WINDOW_SIZE];
+        private int windowCount;
+        private int next;
+        private long count;
+        private long sum;
+        private long max;
+
+        void add(long value) {
+            window[next] = value;
+            next = (next + 1) % window.length;
+            windowCount = Math.min(windowCount + 1, window.length);
+            count++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        JSObject summarize() {
+            JSObject summary = new JSObject();
+            summary.put("count", count);
+            if (count == 0) {
+                return summary;
+            }
+            long[] sorted = Arrays.copyOf(window, windowCount);
+            Arrays.sort(sorted);
+            summary.put("mean", sum / count);
+            summary.put("max", max);
+            summary.put("p50", percentile(sorted, 50));
+            summary.put("p90", percentile(sorted, 90));
+            summary.put("p95", percentile(sorted, 95));
+            summary.put("p99", percentile(sorted, 99));
+            return summary;
+        }
+
+        /** Nearest-rank percentile of an ascending array. */
+        private static long percentile(long[] sorted, int percent) {
+            int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+}
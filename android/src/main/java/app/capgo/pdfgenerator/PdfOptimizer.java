@@ -0,0 +1,395 @@
+package app.capgo.pdfgenerator;
+
+import app.capgo.pdfgenerator.PdfMerger.CountingOutputStream;
+import app.capgo.pdfgenerator.PdfMerger.PdfObjectReader;
+import app.capgo.pdfgenerator.PdfMerger.PdfObjectReader.ObjectHead;
+import app.capgo.pdfgenerator.PdfMerger.PdfObjectReader.Token;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import org.json.JSONObject;
+
+/**
+ * Rewrites a PDF to make it smaller: identical streams are stored once, uncompressed streams are
+ * Flate-compressed, oversized JPEG images are downsampled, and every other object is packed into
+ * compressed object streams indexed by a cross-reference stream (PDF 1.5).
+ *
+ * <p>Like {@link PdfMerger}, objects are processed one at a time, so memory use is bounded by the
+ * largest stream rather than by the document.
+ */
+final class PdfOptimizer {
+
+    /** Re-encodes JPEG images; implemented with {@code android.graphics} on the device. */
+    interface ImageResampler {
+        /**
+         * Returns the image scaled to {@code width} x {@code height} and encoded as a baseline
+         * RGB JPEG, or {@code null} to keep the original.
+         */
+        byte[] resample(byte[] jpeg, int width, int height, int quality);
+    }
+
+    /** The {@code optimize} call option. */
+    static final class Settings {
+
+        static final int DEFAULT_IMAGE_DPI = 150;
+        static final int DEFAULT_JPEG_QUALITY = 80;
+
+        /** Resolution images are downsampled to, {@code 0} to leave images alone. */
+        final int imageDpi;
+        final int jpegQuality;
+
+        Settings(int imageDpi, int jpegQuality) {
+            this.imageDpi = Math.max(0, imageDpi);
+            this.jpegQuality = Math.max(1, Math.min(100, jpegQuality));
+        }
+
+        /**
+         * Parses {@code true} or an object with {@code imageDpi} and {@code jpegQuality}. Returns
+         * {@code null} when optimization is off.
+         */
+        static Settings from(Object value) {
+            if (value instanceof JSONObject) {
+                JSONObject object = (JSONObject) value;
+                return new Settings(object.optInt("imageDpi", DEFAULT_IMAGE_DPI), object.optInt("jpegQuality", DEFAULT_JPEG_QUALITY));
+            }
+            return Boolean.TRUE.equals(value) ? new Settings(DEFAULT_IMAGE_DPI, DEFAULT_JPEG_QUALITY) : null;
+        }
+
+        String identity() {
+            return imageDpi + ":" + jpegQuality;
+        }
+    }
+
+    static final class Result {
+
+        final long originalBytes;
+        final long optimizedBytes;
+        final int duplicateStreams;
+        final int resampledImages;
+
+        Result(long originalBytes, long optimizedBytes, int duplicateStreams, int resampledImages) {
+            this.originalBytes = originalBytes;
+            this.optimizedBytes = optimizedBytes;
+            this.duplicateStreams = duplicateStreams;
+            this.resampledImages = resampledImages;
+        }
+    }
+
+    private static final int OBJECTS_PER_STREAM = 100;
+
+    private final int maxImageDimension;
+    private final int jpegQuality;
+    private final ImageResampler resampler;
+
+    /**
+     * @param maxImageDimension longest side, in pixels, kept for images; larger ones are
+     *     downsampled. {@code 0} leaves images alone.
+     */
+    PdfOptimizer(int maxImageDimension, int jpegQuality, ImageResampler resampler) {
+        this.maxImageDimension = maxImageDimension;
+        this.jpegQuality = jpegQuality;
+        this.resampler = resampler;
+    }
+
+    Result optimize(File input, File output) throws IOException {
+        try (PdfMerger.Source source = new PdfMerger.Source(input)) {
+            long[] offsets = source.offsets;
+            int[] canonical = new int[offsets.length];
+            boolean[] isStream = new boolean[offsets.length];
+            int duplicates = findDuplicateStreams(source, canonical, isStream);
+
+            // Dense numbering of the objects that are kept, then the object streams and the
+            // cross-reference stream.
+            int[] numbers = new int[offsets.length];
+            int next = 1;
+            int packed = 0;
+            for (int i = 1; i < offsets.length; i++) {
+                if (offsets[i] > 0 && canonical[i] == i) {
+                    numbers[i] = next++;
+                    if (!isStream[i]) {
+                        packed++;
+                    }
+                }
+            }
+            for (int i = 1; i < offsets.length; i++) {
+                if (offsets[i] > 0 && canonical[i] != i) {
+                    numbers[i] = numbers[canonical[i]];
+                }
+            }
+            int firstObjectStream = next;
+            int objectStreams = (packed + OBJECTS_PER_STREAM - 1) / OBJECTS_PER_STREAM;
+            int xrefNumber = firstObjectStream + objectStreams;
+            int size = xrefNumber + 1;
+            PdfObjectReader.Renumbering renumbering = old -> old > 0 && old < numbers.length ? numbers[old] : 0;
+
+            // Cross-reference entries: type, field 2, field 3 (see PDF 1.5, section 3.4.7).
+            int[] types = new int[size];
+            long[] fields = new long[size];
+            int[] indices = new int[size];
+            int resampled = 0;
+
+            try (CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(output), 64 * 1024))) {
+                String version = source.version.compareTo("1.5") < 0 ? "1.5" : source.version;
+                out.writeAscii("%PDF-" + version + "\n%\u00e2\u00e3\u00cf\u00d3\n");
+
+                ObjectStreamBuilder pending = new ObjectStreamBuilder();
+                int objectStream = firstObjectStream;
+                for (int i = 1; i < offsets.length; i++) {
+                    if (offsets[i] <= 0 || canonical[i] != i) {
+                        continue;
+                    }
+                    ObjectHead head = source.reader.readObjectHead(offsets[i]);
+                    int number = numbers[i];
+                    if (head.streamOffset < 0) {
+                        types[number] = 2;
+                        fields[number] = objectStream;
+                        indices[number] = pending.count;
+                        pending.add(number, PdfObjectReader.render(head.tokens, renumbering, null));
+                        if (pending.count == OBJECTS_PER_STREAM) {
+                            types[objectStream] = 1;
+                            fields[objectStream] = out.count;
+                            pending.writeTo(out, objectStream++);
+                            pending = new ObjectStreamBuilder();
+                        }
+                        continue;
+                    }
+                    types[number] = 1;
+                    fields[number] = out.count;
+                    if (writeStream(source, head, number, renumbering, out)) {
+                        resampled++;
+                    }
+                }
+                if (pending.count > 0) {
+                    types[objectStream] = 1;
+                    fields[objectStream] = out.count;
+                    pending.writeTo(out, objectStream);
+                }
+
+                types[xrefNumber] = 1;
+                fields[xrefNumber] = out.count;
+                writeCrossReferenceStream(out, xrefNumber, types, fields, indices, renumbering.newNumber(source.catalog), renumbering.newNumber(source.info));
+                out.flush();
+                return new Result(input.length(), out.count, duplicates, resampled);
+            }
+        }
+    }
+
+    /**
+     * Maps every object to the first object with the same stream dictionary and data. Returns the
+     * number of duplicates found.
+     */
+    private static int findDuplicateStreams(PdfMerger.Source source, int[] canonical, boolean[] isStream) throws IOException {
+        Map<String, Integer> seen = new HashMap<>();
+        int duplicates = 0;
+        for (int i = 1; i < source.offsets.length; i++) {
+            canonical[i] = i;
+            if (source.offsets[i] <= 0) {
+                continue;
+            }
+            ObjectHead head = source.reader.readObjectHead(source.offsets[i]);
+            if (head.streamOffset < 0) {
+                continue;
+            }
+            isStream[i] = true;
+            long length = head.streamLength(source.reader, source::offsetOf);
+            MessageDigest digest = Hashes.sha256();
+            String dictionary = PdfObjectReader.render(PdfObjectReader.withoutEntries(head.tokens, "/Length"), old -> old, null);
+            digest.update(dictionary.getBytes(StandardCharsets.ISO_8859_1));
+            digest.update((byte) 0);
+            try (DigestOutputStream sink = new DigestOutputStream(new DiscardingOutputStream(), digest)) {
+                source.reader.copy(head.streamOffset, length, sink);
+            }
+            String key = Hashes.hex(digest.digest());
+            Integer first = seen.get(key);
+            if (first == null) {
+                seen.put(key, i);
+            } else {
+                canonical[i] = first;
+                duplicates++;
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Writes a stream object, compressing or downsampling it when that makes it smaller. Returns
+     * {@code true} when an image was resampled.
+     */
+    private boolean writeStream(PdfMerger.Source source, ObjectHead head, int number, PdfObjectReader.Renumbering renumbering, CountingOutputStream out)
+        throws IOException {
+        long length = head.streamLength(source.reader, source::offsetOf);
+        List<Token> tokens = PdfObjectReader.withoutEntries(head.tokens, "/Length");
+        out.writeAscii(number + " 0 obj\n");
+
+        int[] target = resampleTarget(head.values);
+        if (target != null && length <= Integer.MAX_VALUE) {
+            byte[] resampled = resampler.resample(read(source, head.streamOffset, length), target[0], target[1], jpegQuality);
+            if (resampled != null && resampled.length < length) {
+                List<Token> rest = PdfObjectReader.withoutEntries(tokens, "/Width", "/Height");
+                String entries = " /Width " + target[0] + " /Height " + target[1] + " /Length " + resampled.length + " ";
+                out.writeAscii(PdfObjectReader.render(rest, renumbering, entries));
+                writeData(out, resampled);
+                return true;
+            }
+        }
+
+        boolean compressible = PdfObjectReader.find(head.values, "/Filter") < 0 && PdfObjectReader.find(head.values, "/DecodeParms") < 0;
+        if (compressible && length <= Integer.MAX_VALUE) {
+            byte[] compressed = deflate(read(source, head.streamOffset, length));
+            if (compressed.length < length) {
+                out.writeAscii(PdfObjectReader.render(tokens, renumbering, " /Filter /FlateDecode /Length " + compressed.length + " "));
+                writeData(out, compressed);
+                return false;
+            }
+        }
+
+        out.writeAscii(PdfObjectReader.render(tokens, renumbering, " /Length " + length + " "));
+        out.writeAscii("\nstream\n");
+        source.reader.copy(head.streamOffset, length, out);
+        out.writeAscii("\nendstream\nendobj\n");
+        return false;
+    }
+
+    /**
+     * Returns the downsampled width and height for a JPEG image larger than the limit, or
+     * {@code null} when it should be copied as is. Only plain 8-bit RGB JPEGs are handled since
+     * the re-encoded image is always RGB.
+     */
+    private int[] resampleTarget(List<Token> values) throws IOException {
+        if (maxImageDimension <= 0 || resampler == null) {
+            return null;
+        }
+        if (!isName(values, "/Subtype", "/Image") || !isName(values, "/Filter", "/DCTDecode") || !isName(values, "/ColorSpace", "/DeviceRGB")) {
+            return null;
+        }
+        if (PdfObjectReader.find(values, "/Decode") >= 0 || PdfObjectReader.find(values, "/DecodeParms") >= 0) {
+            return null;
+        }
+        int width = PdfObjectReader.find(values, "/Width");
+        int height = PdfObjectReader.find(values, "/Height");
+        if (width < 0 || height < 0 || !values.get(width + 1).isInteger() || !values.get(height + 1).isInteger()) {
+            return null;
+        }
+        int w = values.get(width + 1).intValue();
+        int h = values.get(height + 1).intValue();
+        int longest = Math.max(w, h);
+        if (longest <= maxImageDimension) {
+            return null;
+        }
+        double scale = maxImageDimension / (double) longest;
+        return new int[] { Math.max(1, (int) Math.round(w * scale)), Math.max(1, (int) Math.round(h * scale)) };
+    }
+
+    private static boolean isName(List<Token> values, String key, String name) {
+        int index = PdfObjectReader.find(values, key);
+        return index >= 0 && values.get(index + 1).text.equals(name);
+    }
+
+    private static void writeCrossReferenceStream(
+        CountingOutputStream out,
+        int number,
+        int[] types,
+        long[] fields,
+        int[] indices,
+        int root,
+        int info
+    ) throws IOException {
+        ByteArrayOutputStream table = new ByteArrayOutputStream(types.length * 7);
+        for (int i = 0; i < types.length; i++) {
+            long second = fields[i];
+            // Object 0 is the head of the free list; every other number is in use.
+            int third = types[i] == 2 ? indices[i] : (i == 0 ? 0xffff : 0);
+            table.write(types[i]);
+            table.write((int) (second >>> 24));
+            table.write((int) (second >>> 16));
+            table.write((int) (second >>> 8));
+            table.write((int) second);
+            table.write(third >>> 8);
+            table.write(third);
+        }
+        byte[] data = deflate(table.toByteArray());
+        out.writeAscii(number + " 0 obj\n<< /Type /XRef /Size " + types.length + " /W [ 1 4 2 ] /Root " + root + " 0 R ");
+        if (info > 0) {
+            out.writeAscii("/Info " + info + " 0 R ");
+        }
+        out.writeAscii("/Filter /FlateDecode /Length " + data.length + " >>");
+        writeData(out, data);
+        out.writeAscii("startxref\n" + fields[number] + "\n%%EOF\n");
+    }
+
+    private static void writeData(CountingOutputStream out, byte[] data) throws IOException {
+        out.writeAscii("\nstream\n");
+        out.write(data, 0, data.length);
+        out.writeAscii("\nendstream\nendobj\n");
+    }
+
+    private static byte[] read(PdfMerger.Source source, long offset, long length) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream((int) length);
+        source.reader.copy(offset, length, data);
+        return data.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater)) {
+            out.write(data);
+        } finally {
+            deflater.end();
+        }
+        return compressed.toByteArray();
+    }
+
+    /** Collects non-stream objects and writes them as one compressed object stream. */
+    private static final class ObjectStreamBuilder {
+
+        private final StringBuilder header = new StringBuilder();
+        private final StringBuilder body = new StringBuilder();
+        int count;
+
+        void add(int number, String object) {
+            header.append(number).append(' ').append(body.length()).append(' ');
+            body.append(object).append('\n');
+            count++;
+        }
+
+        void writeTo(CountingOutputStream out, int number) throws IOException {
+            byte[] headerBytes = header.toString().getBytes(StandardCharsets.ISO_8859_1);
+            ByteArrayOutputStream content = new ByteArrayOutputStream(headerBytes.length + body.length());
+            content.write(headerBytes);
+            content.write(body.toString().getBytes(StandardCharsets.ISO_8859_1));
+            byte[] data = deflate(content.toByteArray());
+            out.writeAscii(
+                number +
+                " 0 obj\n<< /Type /ObjStm /N " +
+                count +
+                " /First " +
+                headerBytes.length +
+                " /Filter /FlateDecode /Length " +
+                data.length +
+                " >>"
+            );
+            writeData(out, data);
+        }
+    }
+
+    private static final class DiscardingOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+    }
+}
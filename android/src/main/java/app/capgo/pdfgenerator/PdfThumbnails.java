@@ -0,0 +1,171 @@
+package app.capgo.pdfgenerator;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.pdf.PdfRenderer;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.util.Base64;
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Renders preview images of pages of a written PDF with {@link PdfRenderer}, so callers do not
+ * have to decode the whole PDF again to show a thumbnail.
+ */
+final class PdfThumbnails {
+
+    enum Format {
+        PNG("png"),
+        WEBP("webp");
+
+        final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        static Format from(String value) {
+            return "webp".equalsIgnoreCase(value) ? WEBP : PNG;
+        }
+
+        @SuppressWarnings("deprecation")
+        Bitmap.CompressFormat compressFormat() {
+            if (this == PNG) {
+                return Bitmap.CompressFormat.PNG;
+            }
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+        }
+    }
+
+    /** The {@code thumbnail} call option. */
+    static final class Settings {
+
+        static final int DEFAULT_WIDTH = 256;
+        static final int MAX_WIDTH = 2048;
+
+        /** One-based page numbers of the delivered PDF. */
+        final int[] pages;
+        final int width;
+        final Format format;
+        final int quality;
+        /** Write image files instead of returning base64. */
+        final boolean asFile;
+
+        private Settings(int[] pages, int width, Format format, int quality, boolean asFile) {
+            this.pages = pages;
+            this.width = width;
+            this.format = format;
+            this.quality = quality;
+            this.asFile = asFile;
+        }
+
+        /**
+         * Parses {@code true} or an object with {@code pages}, {@code width}, {@code format},
+         * {@code quality} and {@code type}. Returns {@code null} when no thumbnail is requested.
+         */
+        static Settings from(Object value) {
+            if (value instanceof JSONObject) {
+                JSONObject object = (JSONObject) value;
+                int width = Math.max(1, Math.min(MAX_WIDTH, object.optInt("width", DEFAULT_WIDTH)));
+                return new Settings(
+                    parsePages(object.optJSONArray("pages")),
+                    width,
+                    Format.from(object.optString("format", "png")),
+                    Math.max(1, Math.min(100, object.optInt("quality", 80))),
+                    "file".equalsIgnoreCase(object.optString("type", "base64"))
+                );
+            }
+            return Boolean.TRUE.equals(value) ? new Settings(new int[] { 1 }, DEFAULT_WIDTH, Format.PNG, 80, false) : null;
+        }
+
+        String identity() {
+            StringBuilder identity = new StringBuilder();
+            for (int page : pages) {
+                identity.append(page).append(',');
+            }
+            return identity.append(width).append(':').append(format.extension).append(':').append(quality).append(':').append(asFile).toString();
+        }
+
+        private static int[] parsePages(JSONArray pages) {
+            if (pages == null || pages.length() == 0) {
+                return new int[] { 1 };
+            }
+            int[] result = new int[pages.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = pages.optInt(i, 1);
+            }
+            return result;
+        }
+    }
+
+    private PdfThumbnails() {}
+
+    /**
+     * Renders the requested pages that exist in {@code pdf}. Files are written to
+     * {@code directory}, when {@code settings.asFile}, and named after {@code baseName}.
+     */
+    static JSArray render(File pdf, Settings settings, File directory, String baseName) throws IOException {
+        JSArray thumbnails = new JSArray();
+        try (
+            ParcelFileDescriptor descriptor = ParcelFileDescriptor.open(pdf, ParcelFileDescriptor.MODE_READ_ONLY);
+            PdfRenderer renderer = new PdfRenderer(descriptor)
+        ) {
+            for (int page : settings.pages) {
+                if (page < 1 || page > renderer.getPageCount()) {
+                    continue;
+                }
+                thumbnails.put(renderPage(renderer, page, settings, directory, baseName));
+            }
+        }
+        return thumbnails;
+    }
+
+    private static JSObject renderPage(PdfRenderer renderer, int page, Settings settings, File directory, String baseName)
+        throws IOException {
+        Bitmap bitmap;
+        try (PdfRenderer.Page pdfPage = renderer.openPage(page - 1)) {
+            int height = Math.max(1, Math.round(settings.width * pdfPage.getHeight() / (float) pdfPage.getWidth()));
+            bitmap = Bitmap.createBitmap(settings.width, height, Bitmap.Config.ARGB_8888);
+            // PdfRenderer leaves unpainted areas transparent.
+            bitmap.eraseColor(Color.WHITE);
+            pdfPage.render(bitmap, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+        }
+
+        JSObject thumbnail = new JSObject();
+        thumbnail.put("page", page);
+        thumbnail.put("width", bitmap.getWidth());
+        thumbnail.put("height", bitmap.getHeight());
+        thumbnail.put("format", settings.format.extension);
+        try {
+            if (settings.asFile) {
+                File file = new File(directory, String.format(Locale.ROOT, "%s_page%d.%s", baseName, page, settings.format.extension));
+                try (OutputStream out = new FileOutputStream(file)) {
+                    compress(bitmap, settings, out);
+                }
+                thumbnail.put("path", file.getAbsolutePath());
+            } else {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                compress(bitmap, settings, out);
+                thumbnail.put("base64", Base64.encodeToString(out.toByteArray(), Base64.NO_WRAP));
+            }
+        } finally {
+            bitmap.recycle();
+        }
+        return thumbnail;
+    }
+
+    private static void compress(Bitmap bitmap, Settings settings, OutputStream out) throws IOException {
+        if (!bitmap.compress(settings.format.compressFormat(), settings.quality, out)) {
+            throw new IOException("Failed to encode thumbnail.");
+        }
+    }
+}
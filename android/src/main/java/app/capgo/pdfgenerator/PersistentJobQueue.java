@@ -0,0 +1,201 @@
+package app.capgo.pdfgenerator;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Background jobs and their outcomes, kept in a JSON file so jobs interrupted by the process
+ * being killed are resumed on the next launch, and results of jobs that finished while nobody
+ * was listening can still be collected.
+ *
+ * <p>The file is rewritten atomically on every change; the queue is expected to hold tens of
+ * jobs, not thousands.
+ */
+final class PersistentJobQueue {
+
+    static final String PENDING = "pending";
+    static final String SUCCEEDED = "succeeded";
+    static final String FAILED = "failed";
+
+    private final File file;
+    private final Map<String, JSObject> jobs = new LinkedHashMap<>();
+
+    PersistentJobQueue(File file) {
+        this.file = file;
+        load();
+    }
+
+    synchronized void add(String jobId, JSObject request) {
+        JSObject job = new JSObject();
+        job.put("jobId", jobId);
+        job.put("state", PENDING);
+        job.put("createdAt", System.currentTimeMillis());
+        job.put("request", request);
+        jobs.put(jobId, job);
+        save();
+    }
+
+    synchronized boolean contains(String jobId) {
+        return jobs.containsKey(jobId);
+    }
+
+    /**
+     * Counts a start of the job before it runs, so a job that takes the process down with it is
+     * not resumed forever. Returns the number of starts so far.
+     */
+    synchronized int recordAttempt(String jobId) {
+        JSObject job = jobs.get(jobId);
+        if (job == null) {
+            return 0;
+        }
+        int attempts = job.getInteger("attempts", 0) + 1;
+        job.put("attempts", attempts);
+        save();
+        return attempts;
+    }
+
+    /**
+     * Fails the pending jobs that were already started {@code maxAttempts} times without
+     * finishing, and returns them.
+     */
+    synchronized List<JSObject> failExhausted(int maxAttempts) {
+        List<JSObject> failed = new ArrayList<>();
+        for (JSObject job : jobs.values()) {
+            int attempts = job.getInteger("attempts", 0);
+            if (PENDING.equals(job.getString("state")) && attempts >= maxAttempts) {
+                job.put("state", FAILED);
+                job.put("finishedAt", System.currentTimeMillis());
+                job.put("error", "The job was interrupted " + attempts + " times and is not resumed again.");
+                failed.add(job);
+            }
+        }
+        if (!failed.isEmpty()) {
+            save();
+        }
+        return failed;
+    }
+
+    /**
+     * Records the outcome of a job. Exactly one of {@code result} and {@code error} is set.
+     */
+    synchronized JSObject finish(String jobId, JSObject result, String error) {
+        JSObject job = jobs.get(jobId);
+        if (job == null) {
+            return null;
+        }
+        job.put("state", error == null ? SUCCEEDED : FAILED);
+        job.put("finishedAt", System.currentTimeMillis());
+        if (error == null) {
+            job.put("result", result);
+        } else {
+            job.put("error", error);
+        }
+        save();
+        return job;
+    }
+
+    /**
+     * Returns the requests of jobs that have not finished, oldest first.
+     */
+    synchronized List<JSObject> pendingRequests() {
+        List<JSObject> pending = new ArrayList<>();
+        for (JSObject job : jobs.values()) {
+            if (PENDING.equals(job.getString("state"))) {
+                JSObject request = job.getJSObject("request");
+                if (request != null) {
+                    pending.add(request);
+                }
+            }
+        }
+        return pending;
+    }
+
+    synchronized JSArray list() {
+        JSArray list = new JSArray();
+        for (JSObject job : jobs.values()) {
+            list.put(job);
+        }
+        return list;
+    }
+
+    /**
+     * Removes finished jobs, only those in {@code jobIds} when it is not {@code null}. Pending jobs
+     * are never removed. Returns the number of removed jobs.
+     */
+    synchronized int removeFinished(Collection<String> jobIds) {
+        int removed = 0;
+        for (String jobId : new ArrayList<>(jobs.keySet())) {
+            JSObject job = jobs.get(jobId);
+            if ((jobIds == null || jobIds.contains(jobId)) && !PENDING.equals(job.getString("state"))) {
+                jobs.remove(jobId);
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            save();
+        }
+        return removed;
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                int count = in.read(bytes, read, bytes.length - read);
+                if (count == -1) {
+                    break;
+                }
+                read += count;
+            }
+            JSONArray stored = new JSONObject(new String(bytes, 0, read, StandardCharsets.UTF_8)).optJSONArray("jobs");
+            if (stored == null) {
+                return;
+            }
+            for (int i = 0; i < stored.length(); i++) {
+                JSONObject job = stored.optJSONObject(i);
+                if (job != null && job.has("jobId")) {
+                    jobs.put(job.getString("jobId"), JSObject.fromJSONObject(job));
+                }
+            }
+        } catch (IOException | JSONException ex) {
+            // A corrupt queue is dropped rather than blocking the plugin from loading.
+            jobs.clear();
+        }
+    }
+
+    private void save() {
+        JSObject root = new JSObject();
+        root.put("jobs", list());
+        File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            out.write(root.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+}
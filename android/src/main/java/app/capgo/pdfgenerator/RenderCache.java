@@ -0,0 +1,217 @@
+package app.capgo.pdfgenerator;
+
+import app.capgo.pdfgenerator.core.PdfFiles;
+import com.getcapacitor.JSObject;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Content-addressed on-disk cache of rendered PDFs. Entries are keyed on a SHA-256 of the source
+ * and every option that changes the rendered bytes, expire after a TTL and are evicted in
+ * least-recently-used order once the cache exceeds its byte budget.
+ */
+final class RenderCache {
+
+    private static final String EXTENSION = ".pdf";
+
+    private final File directory;
+    private final long maxBytes;
+    private final long ttlMs;
+
+    /** Access-ordered index of the cached files, rebuilt from disk on first use. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean indexed;
+    private long totalBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    RenderCache(File directory, long maxBytes, long ttlMs) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.ttlMs = ttlMs;
+    }
+
+    static String keyFor(PdfSource source, PdfGeneratorOptions options) {
+        return Hashes.sha256Hex(source.cacheIdentity(), options.renderIdentity());
+    }
+
+    /**
+     * Copies the cached PDF for {@code key} to {@code target} and returns {@code true}, or returns
+     * {@code false} on a miss. The file is opened under the lock, so an eviction racing with the
+     * copy only unlinks it; the copy itself runs outside the lock.
+     */
+    boolean copyTo(String key, File target) throws IOException {
+        InputStream cached;
+        synchronized (this) {
+            File file = get(key);
+            if (file == null) {
+                return false;
+            }
+            cached = new FileInputStream(file);
+        }
+        try (InputStream inputStream = cached) {
+            PdfFiles.copy(inputStream, target);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the cached PDF for {@code key}, or {@code null} on a miss. Called with the lock
+     * held; the file may be evicted as soon as it is released.
+     */
+    private File get(String key) {
+        ensureIndexed();
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (isExpired(entry, System.currentTimeMillis()) || !entry.file.exists()) {
+            remove(key);
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.file;
+    }
+
+    /**
+     * Stores a copy of {@code pdf} under {@code key}. Like {@link #copyTo}, the copy runs outside
+     * the lock: it is written to a file of its own, which is moved into place with the lock held.
+     */
+    void put(String key, File pdf) throws IOException {
+        synchronized (this) {
+            // Indexing deletes leftovers of interrupted copies, so it must not run during ours.
+            ensureIndexed();
+        }
+        File staged = new File(directory, key + "." + UUID.randomUUID() + ".tmp");
+        PdfFiles.copy(pdf, staged);
+        synchronized (this) {
+            File target = fileFor(key);
+            if (!staged.renameTo(target)) {
+                //noinspection ResultOfMethodCallIgnored
+                staged.delete();
+                throw new IOException("Failed to move PDF to " + target);
+            }
+            Entry previous = entries.remove(key);
+            if (previous != null) {
+                totalBytes -= previous.size;
+            }
+            Entry entry = new Entry(target, target.length(), System.currentTimeMillis());
+            entries.put(key, entry);
+            totalBytes += entry.size;
+            trimTo(maxBytes);
+        }
+    }
+
+    synchronized boolean invalidate(String key) {
+        ensureIndexed();
+        return remove(key);
+    }
+
+    synchronized void clear() {
+        ensureIndexed();
+        trimTo(0);
+    }
+
+    /**
+     * Evicts least-recently-used entries until the cache holds at most {@code bytes}.
+     */
+    synchronized void trimTo(long bytes) {
+        ensureIndexed();
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (totalBytes > bytes && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            iterator.remove();
+            totalBytes -= entry.size;
+            evictions++;
+            //noinspection ResultOfMethodCallIgnored
+            entry.file.delete();
+        }
+    }
+
+    synchronized JSObject stats() {
+        ensureIndexed();
+        JSObject stats = new JSObject();
+        stats.put("entries", entries.size());
+        stats.put("bytes", totalBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("ttlMs", ttlMs);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+
+    private boolean remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        totalBytes -= entry.size;
+        //noinspection ResultOfMethodCallIgnored
+        entry.file.delete();
+        return true;
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return ttlMs > 0 && now - entry.createdAt > ttlMs;
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, key + EXTENSION);
+    }
+
+    private void ensureIndexed() {
+        if (indexed) {
+            return;
+        }
+        indexed = true;
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Oldest first, so the access-ordered map starts out in LRU order.
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(EXTENSION)) {
+                // Leftover of an interrupted copy.
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                continue;
+            }
+            Entry entry = new Entry(file, file.length(), file.lastModified());
+            if (isExpired(entry, now)) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                continue;
+            }
+            entries.put(name.substring(0, name.length() - EXTENSION.length()), entry);
+            totalBytes += entry.size;
+        }
+        trimTo(maxBytes);
+    }
+
+    private static final class Entry {
+
+        final File file;
+        final long size;
+        final long createdAt;
+
+        Entry(File file, long size, long createdAt) {
+            this.file = file;
+            this.size = size;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package app.capgo.pdfgenerator;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.webkit.WebView;
+import org.json.JSONObject;
+
+/**
+ * Decides when a loaded page is ready to be printed. {@code onPageFinished} fires before web
+ * fonts, lazy images and script-rendered content have settled, so a strategy polls the page with a
+ * small script until it reports ready or the timeout elapses, whichever comes first.
+ */
+final class RenderReadiness {
+
+    interface Callback {
+        void onReady(boolean timedOut);
+    }
+
+    static final int DEFAULT_TIMEOUT_MS = 10_000;
+    private static final long POLL_INTERVAL_MS = 50;
+    private static final String DEFAULT_FLAG = "capgoPdfReady";
+    private static final int DEFAULT_NETWORK_IDLE_MS = 500;
+
+    /**
+     * Ready once {@code document.fonts.ready} has resolved and every image has been decoded.
+     * Images that fail to decode count as settled.
+     */
+    private static final String FONTS_AND_IMAGES_SCRIPT =
+        "(function(){if(!window.__capgoPdfFonts){window.__capgoPdfFonts='pending';" +
+        "var w=[document.fonts?document.fonts.ready:null];" +
+        "Array.prototype.forEach.call(document.images,function(i){" +
+        "i.loading='eager';w.push(i.decode?i.decode().catch(function(){}):null);});" +
+        "Promise.all(w).then(function(){window.__capgoPdfFonts='ready';});}" +
+        "return window.__capgoPdfFonts==='ready';})()";
+
+    private final String script;
+    private final long timeoutMs;
+
+    private RenderReadiness(String script, long timeoutMs) {
+        this.script = script;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Parses the {@code waitFor} option. Returns {@code null} when the page should be printed as
+     * soon as it has loaded.
+     *
+     * @throws IllegalArgumentException when the condition is unknown or incomplete. Printing right
+     *     away instead would hide the mistake behind the race the option exists to avoid.
+     */
+    static RenderReadiness from(JSONObject waitFor, int timeoutMs) {
+        if (waitFor == null) {
+            return null;
+        }
+        String type = waitFor.optString("type", "");
+        switch (type) {
+            case "flag":
+                return new RenderReadiness(flagScript(waitFor.optString("name", DEFAULT_FLAG)), timeoutMs);
+            case "selector":
+                String selector = waitFor.optString("selector", "");
+                if (selector.trim().isEmpty()) {
+                    throw new IllegalArgumentException("'selector' is required for waitFor type 'selector'.");
+                }
+                return new RenderReadiness(selectorScript(selector), timeoutMs);
+            case "fonts":
+                return new RenderReadiness(FONTS_AND_IMAGES_SCRIPT, timeoutMs);
+            case "networkIdle":
+                return new RenderReadiness(networkIdleScript(waitFor.optInt("idleMs", DEFAULT_NETWORK_IDLE_MS)), timeoutMs);
+            default:
+                throw new IllegalArgumentException("Unsupported waitFor type '" + type + "'.");
+        }
+    }
+
+    /**
+     * Describes the condition and its timeout for render cache keys: a page printed before it was
+     * ready differs from one printed after.
+     */
+    String identity() {
+        return timeoutMs + "|" + script;
+    }
+
+    /**
+     * Polls {@code webView} on {@code handler}'s thread until the page is ready. The returned
+     * runnable cancels the wait without invoking the callback.
+     */
+    Runnable await(WebView webView, Handler handler, Callback callback) {
+        long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+        Poller poller = new Poller(webView, handler, callback, deadline);
+        handler.post(poller);
+        return poller::cancel;
+    }
+
+    private final class Poller implements Runnable {
+
+        private final WebView webView;
+        private final Handler handler;
+        private final Callback callback;
+        private final long deadline;
+        private boolean done;
+
+        Poller(WebView webView, Handler handler, Callback callback, long deadline) {
+            this.webView = webView;
+            this.handler = handler;
+            this.callback = callback;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            if (done) {
+                return;
+            }
+            webView.evaluateJavascript(script, (value) -> {
+                if (done) {
+                    return;
+                }
+                if ("true".equals(value)) {
+                    finish(false);
+                } else if (SystemClock.elapsedRealtime() >= deadline) {
+                    finish(true);
+                } else {
+                    handler.postDelayed(this, POLL_INTERVAL_MS);
+                }
+            });
+        }
+
+        private void finish(boolean timedOut) {
+            done = true;
+            callback.onReady(timedOut);
+        }
+
+        void cancel() {
+            done = true;
+            handler.removeCallbacks(this);
+        }
+    }
+
+    /**
+     * Ready once {@code window[name]} is {@code true}, or once it is a promise that has settled.
+     */
+    private static String flagScript(String name) {
+        return (
+            "(function(n){var v=window[n];" +
+            "if(v&&typeof v.then==='function'){" +
+            "if(!window.__capgoPdfFlag){window.__capgoPdfFlag='pending';" +
+            "v.then(function(){window.__capgoPdfFlag='ready';},function(){window.__capgoPdfFlag='ready';});}" +
+            "return window.__capgoPdfFlag==='ready';}" +
+            "return v===true;})(" +
+            JSONObject.quote(name) +
+            ")"
+        );
+    }
+
+    private static String selectorScript(String selector) {
+        return "(function(s){try{return document.querySelector(s)!==null;}catch(e){return true;}})(" + JSONObject.quote(selector) + ")";
+    }
+
+    /**
+     * Ready once the document is complete and no resource has finished loading for
+     * {@code idleMs}, based on the Resource Timing entries.
+     */
+    private static String networkIdleScript(int idleMs) {
+        return (
+            "(function(d){var n=performance.getEntriesByType('resource').length,t=Date.now(),s=window.__capgoPdfNet;" +
+            "if(!s||s.n!==n){window.__capgoPdfNet={n:n,t:t};return false;}" +
+            "return document.readyState==='complete'&&t-s.t>=d;})(" +
+            idleMs +
+            ")"
+        );
+    }
+}
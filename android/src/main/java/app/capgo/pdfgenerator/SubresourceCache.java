@@ -0,0 +1,824 @@
+package app.capgo.pdfgenerator;
+
+import android.net.Uri;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import com.getcapacitor.JSObject;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Cache of static subresources (fonts, stylesheets and images) shared by every PDF job. Requests
+ * are answered from memory, then disk, and only go to the network on a miss, in which case the
+ * response is fetched here, with the page's request headers and cookies, so it can be stored.
+ * Scripts, documents and API calls are never intercepted.
+ *
+ * <p>Responses follow their {@code Cache-Control} headers: {@code no-store} and {@code private}
+ * responses are served but not kept, and an entry is only served without asking the server
+ * until it expires, at most {@code maxAgeMs} after it was fetched. Expired entries are
+ * revalidated with their {@code ETag} or {@code Last-Modified} validator. An entry whose response
+ * had a {@code Vary} header is only served to requests with the same values for the listed
+ * headers; {@code Vary: *} responses are not kept.
+ *
+ * <p>Responses that cannot be kept as a whole, such as errors or bodies over the entry limit, are
+ * streamed to the page from the same connection, so the request is never made twice.
+ *
+ * <p>{@link #intercept} runs on the WebView's network threads and may block. Disk and network I/O
+ * happen outside the cache lock.
+ */
+final class SubresourceCache {
+
+    /** Per-job counters, updated from the WebView's network threads. */
+    static final class Stats {
+
+        int hits;
+        int misses;
+
+        synchronized void record(boolean hit) {
+            if (hit) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+
+        synchronized void writeTo(JSObject result) {
+            result.put("subresourceHits", hits);
+            result.put("subresourceMisses", misses);
+        }
+    }
+
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+    private static final int READ_TIMEOUT_MS = 20_000;
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    /** Response headers replayed with cached entries, so the page sees the server's own CORS policy. */
+    private static final String[] REPLAYED_HEADERS = { "Access-Control-Allow-Origin", "Access-Control-Allow-Credentials", "Timing-Allow-Origin" };
+
+    /**
+     * Request headers that are not forwarded: the connection negotiates encodings itself, and
+     * validators and cookies are set by the cache.
+     */
+    private static final String[] DROPPED_REQUEST_HEADERS = { "Accept-Encoding", "If-None-Match", "If-Modified-Since", "Cookie" };
+
+    private static final Map<String, String> MIME_TYPES = new HashMap<>();
+
+    static {
+        MIME_TYPES.put("css", "text/css");
+        MIME_TYPES.put("woff", "font/woff");
+        MIME_TYPES.put("woff2", "font/woff2");
+        MIME_TYPES.put("ttf", "font/ttf");
+        MIME_TYPES.put("otf", "font/otf");
+        MIME_TYPES.put("png", "image/png");
+        MIME_TYPES.put("jpg", "image/jpeg");
+        MIME_TYPES.put("jpeg", "image/jpeg");
+        MIME_TYPES.put("gif", "image/gif");
+        MIME_TYPES.put("webp", "image/webp");
+        MIME_TYPES.put("svg", "image/svg+xml");
+    }
+
+    private final File directory;
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+    private final long maxEntryBytes;
+    private final long maxAgeMs;
+
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxAgeMs longest time an entry is served without revalidation, also used for
+     *     responses that do not state their own freshness.
+     */
+    SubresourceCache(File directory, long maxMemoryBytes, long maxDiskBytes, long maxAgeMs) {
+        this.directory = directory;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        this.maxEntryBytes = Math.max(maxMemoryBytes, maxDiskBytes) / 4;
+        this.maxAgeMs = Math.max(0, maxAgeMs);
+    }
+
+    /**
+     * Returns a cached or freshly fetched response, or {@code null} to let the WebView load the
+     * request itself.
+     */
+    WebResourceResponse intercept(WebResourceRequest request, Stats stats) {
+        if (request.isForMainFrame() || !"GET".equalsIgnoreCase(request.getMethod())) {
+            return null;
+        }
+        Uri uri = request.getUrl();
+        String scheme = uri.getScheme();
+        if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+            return null;
+        }
+        Map<String, String> requestHeaders = request.getRequestHeaders();
+        if (header(requestHeaders, "Range") != null) {
+            return null;
+        }
+        String mimeType = mimeTypeFor(uri);
+        if (mimeType == null) {
+            return null;
+        }
+        Fetched fetched = resolve(uri.toString(), mimeType, requestHeaders, stats, true);
+        if (fetched == null) {
+            return null;
+        }
+        return fetched.streamed != null ? fetched.streamed : toResponse(fetched.entry);
+    }
+
+    /**
+     * Fetches {@code url} into the cache unless a fresh copy is already present.
+     */
+    boolean preload(String url) {
+        String mimeType = mimeTypeFor(Uri.parse(url));
+        Fetched fetched = resolve(url, mimeType != null ? mimeType : "application/octet-stream", null, null, false);
+        return fetched != null && fetched.entry != null;
+    }
+
+    void clear() {
+        synchronized (this) {
+            memory.clear();
+            memoryBytes = 0;
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Drops in-memory entries until at most {@code bytes} remain. Disk entries are kept.
+     */
+    synchronized void trimMemory(long bytes) {
+        Iterator<Entry> iterator = memory.values().iterator();
+        while (memoryBytes > bytes && iterator.hasNext()) {
+            memoryBytes -= iterator.next().body.length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Keeps at most {@code fraction} of the in-memory budget, e.g. under memory pressure.
+     */
+    void retainMemory(double fraction) {
+        trimMemory((long) (maxMemoryBytes * fraction));
+    }
+
+    JSObject stats() {
+        long diskBytes = diskBytes();
+        JSObject stats = new JSObject();
+        synchronized (this) {
+            stats.put("memoryEntries", memory.size());
+            stats.put("memoryBytes", memoryBytes);
+            stats.put("hits", hits);
+            stats.put("misses", misses);
+        }
+        stats.put("maxMemoryBytes", maxMemoryBytes);
+        stats.put("diskBytes", diskBytes);
+        stats.put("maxDiskBytes", maxDiskBytes);
+        stats.put("maxAgeMs", maxAgeMs);
+        return stats;
+    }
+
+    /**
+     * Returns a fresh entry for {@code url}: the cached one while it has not expired, the cached
+     * one again when the server confirms it is unchanged, otherwise whatever the server returns.
+     * With {@code stream}, a response that is not kept is returned as a live response. Returns
+     * {@code null} when the request cannot be answered here.
+     */
+    private Fetched resolve(String url, String fallbackType, Map<String, String> requestHeaders, Stats stats, boolean stream) {
+        Entry cached = lookup(url);
+        if (cached != null && !cached.matches(requestHeaders, url)) {
+            // Stored for another variant, so its validators do not apply to this request either.
+            cached = null;
+        }
+        Fetched fetched = cached != null ? new Fetched(cached, null) : null;
+        boolean hit = cached != null && cached.isFresh(System.currentTimeMillis());
+        if (!hit) {
+            try {
+                fetched = fetch(url, fallbackType, requestHeaders, cached, stream);
+            } catch (IOException ex) {
+                fetched = null;
+            }
+            // A revalidated entry keeps the cached body.
+            hit = fetched != null && fetched.entry != null && cached != null && fetched.entry.body == cached.body;
+        }
+        synchronized (this) {
+            if (hit) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        if (stats != null) {
+            stats.record(hit);
+        }
+        return fetched;
+    }
+
+    private Entry lookup(String url) {
+        synchronized (this) {
+            Entry entry = memory.get(url);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        Entry entry = readFromDisk(url);
+        if (entry != null) {
+            synchronized (this) {
+                remember(url, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Requests {@code url} with the page's headers and cookies, conditionally when a stale
+     * {@code cached} entry has validators. Stores the response when its headers allow it. A
+     * response that does not make an entry is streamed from the open connection with
+     * {@code stream}, and dropped otherwise.
+     */
+    private Fetched fetch(String url, String fallbackType, Map<String, String> requestHeaders, Entry cached, boolean stream)
+        throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        // Freshness is decided here; a platform HTTP cache would answer revalidations itself.
+        connection.setUseCaches(false);
+        if (requestHeaders != null) {
+            for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                if (!isDropped(header.getKey())) {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+        }
+        String cookies = cookiesFor(url);
+        if (cookies != null && !cookies.isEmpty()) {
+            connection.setRequestProperty("Cookie", cookies);
+        }
+        if (cached != null && cached.etag != null) {
+            connection.setRequestProperty("If-None-Match", cached.etag);
+        }
+        if (cached != null && cached.lastModified != null) {
+            connection.setRequestProperty("If-Modified-Since", cached.lastModified);
+        }
+        boolean streaming = false;
+        try {
+            int status = connection.getResponseCode();
+            storeCookies(url, connection);
+            long now = System.currentTimeMillis();
+            String cacheControl = lower(connection.getHeaderField("Cache-Control"));
+            Map<String, String> vary = varyValues(connection.getHeaderField("Vary"), requestHeaders, url);
+            boolean storable = vary != null && isStorable(cacheControl);
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                Entry refreshed = cached.revalidated(
+                    expiresAt(cacheControl, connection, now),
+                    connection.getHeaderField("ETag"),
+                    connection.getHeaderField("Last-Modified")
+                );
+                if (storable) {
+                    store(url, refreshed);
+                } else {
+                    remove(url);
+                }
+                return new Fetched(refreshed, null);
+            }
+            String contentType = connection.getContentType();
+            if (contentType == null) {
+                contentType = fallbackType;
+            }
+            Map<String, String> replayed = new HashMap<>();
+            for (String name : REPLAYED_HEADERS) {
+                String value = connection.getHeaderField(name);
+                if (value != null) {
+                    replayed.put(name, value);
+                }
+            }
+            if (status != HttpURLConnection.HTTP_OK || connection.getContentLengthLong() > maxEntryBytes) {
+                if (!stream || !isStreamable(status)) {
+                    return null;
+                }
+                InputStream body = status >= HttpURLConnection.HTTP_BAD_REQUEST ? connection.getErrorStream() : connection.getInputStream();
+                Fetched streamed = streamed(connection, contentType, status, replayed, body);
+                streaming = true;
+                return streamed;
+            }
+            InputStream in = connection.getInputStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!copyAtMost(in, out, maxEntryBytes)) {
+                // Longer than announced: hand the page what was read and the rest of the stream.
+                if (!stream) {
+                    return null;
+                }
+                InputStream rest = new SequenceInputStream(new ByteArrayInputStream(out.toByteArray()), in);
+                Fetched streamed = streamed(connection, contentType, status, replayed, rest);
+                streaming = true;
+                return streamed;
+            }
+            Entry entry = new Entry(
+                contentType,
+                out.toByteArray(),
+                expiresAt(cacheControl, connection, now),
+                connection.getHeaderField("ETag"),
+                connection.getHeaderField("Last-Modified"),
+                replayed,
+                storable ? vary : new HashMap<>()
+            );
+            if (storable && (entry.expiresAt > now || entry.hasValidator())) {
+                store(url, entry);
+            } else {
+                remove(url);
+            }
+            return new Fetched(entry, null);
+        } finally {
+            if (!streaming) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static boolean isStorable(String cacheControl) {
+        return cacheControl == null || (!hasDirective(cacheControl, "no-store") && !hasDirective(cacheControl, "private"));
+    }
+
+    /**
+     * Whether a response with {@code status} can be handed to the WebView. It rejects redirect
+     * codes, which the connection follows itself anyway.
+     */
+    private static boolean isStreamable(int status) {
+        return status >= 100 && status <= 599 && (status < 300 || status > 399);
+    }
+
+    /**
+     * Wraps the rest of a live response. The connection is released once the WebView closes the
+     * body.
+     */
+    private static Fetched streamed(HttpURLConnection connection, String contentType, int status, Map<String, String> headers, InputStream body)
+        throws IOException {
+        String reason = connection.getResponseMessage();
+        InputStream source = body != null ? body : new ByteArrayInputStream(new byte[0]);
+        InputStream releasing = new FilterInputStream(source) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    connection.disconnect();
+                }
+            }
+        };
+        return new Fetched(null, toResponse(contentType, status, reason != null && !reason.isEmpty() ? reason : "HTTP " + status, headers, releasing));
+    }
+
+    /**
+     * Returns the request values of the headers named by {@code vary}, which become part of the
+     * entry's key, or {@code null} for {@code Vary: *}. {@code Accept-Encoding} is left out because
+     * the connection negotiates and decodes the encoding itself.
+     */
+    private static Map<String, String> varyValues(String vary, Map<String, String> requestHeaders, String url) {
+        Map<String, String> values = new TreeMap<>();
+        if (vary == null) {
+            return values;
+        }
+        for (String field : vary.split(",")) {
+            String name = field.trim().toLowerCase(Locale.ROOT);
+            if (name.equals("*")) {
+                return null;
+            }
+            if (!name.isEmpty() && !name.equals("accept-encoding")) {
+                values.put(name, requestValue(name, requestHeaders, url));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the value of request header {@code name} as sent by {@link #fetch}, or an empty
+     * string when it is not sent.
+     */
+    private static String requestValue(String name, Map<String, String> requestHeaders, String url) {
+        String value = "cookie".equals(name) ? cookiesFor(url) : isDropped(name) ? null : header(requestHeaders, name);
+        return value != null ? value.trim() : "";
+    }
+
+    /**
+     * Returns when a response fetched at {@code now} stops being fresh: per {@code no-cache},
+     * {@code max-age} or {@code Expires}, and never later than {@link #maxAgeMs}.
+     */
+    private long expiresAt(String cacheControl, HttpURLConnection connection, long now) {
+        long freshMs = -1;
+        if (cacheControl != null) {
+            if (hasDirective(cacheControl, "no-cache")) {
+                freshMs = 0;
+            } else {
+                for (String directive : cacheControl.split(",")) {
+                    String value = directive.trim();
+                    if (value.startsWith("max-age=")) {
+                        try {
+                            freshMs = Math.max(0, Long.parseLong(value.substring("max-age=".length()).trim())) * 1000;
+                        } catch (NumberFormatException ex) {
+                            freshMs = 0;
+                        }
+                    }
+                }
+            }
+        }
+        if (freshMs < 0 && connection.getHeaderField("Expires") != null) {
+            long date = connection.getDate() > 0 ? connection.getDate() : now;
+            freshMs = Math.max(0, connection.getExpiration() - date);
+        }
+        if (freshMs < 0) {
+            freshMs = maxAgeMs;
+        }
+        return now + Math.min(freshMs, maxAgeMs);
+    }
+
+    private static boolean hasDirective(String cacheControl, String name) {
+        for (String directive : cacheControl.split(",")) {
+            String value = directive.trim();
+            if (value.equals(name) || value.startsWith(name + "=")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDropped(String name) {
+        if (name == null) {
+            return true;
+        }
+        for (String dropped : DROPPED_REQUEST_HEADERS) {
+            if (dropped.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String header(Map<String, String> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static String lower(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the WebView's cookies for {@code url}, or {@code null} when there are none or the
+     * WebView is not available.
+     */
+    private static String cookiesFor(String url) {
+        try {
+            return CookieManager.getInstance().getCookie(url);
+        } catch (RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Hands cookies set by the response to the WebView, as if it had loaded the request itself.
+     */
+    private static void storeCookies(String url, HttpURLConnection connection) {
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            if (!"Set-Cookie".equalsIgnoreCase(header.getKey())) {
+                continue;
+            }
+            try {
+                CookieManager cookieManager = CookieManager.getInstance();
+                for (String cookie : header.getValue()) {
+                    cookieManager.setCookie(url, cookie);
+                }
+            } catch (RuntimeException ex) {
+                return;
+            }
+        }
+    }
+
+    private void store(String url, Entry entry) {
+        synchronized (this) {
+            remember(url, entry);
+        }
+        writeToDisk(url, entry);
+    }
+
+    private void remove(String url) {
+        synchronized (this) {
+            Entry previous = memory.remove(url);
+            if (previous != null) {
+                memoryBytes -= previous.body.length;
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        fileFor(url).delete();
+    }
+
+    private void remember(String url, Entry entry) {
+        if (entry.body.length > maxMemoryBytes) {
+            return;
+        }
+        Entry previous = memory.put(url, entry);
+        if (previous != null) {
+            memoryBytes -= previous.body.length;
+        }
+        memoryBytes += entry.body.length;
+        trimMemory(maxMemoryBytes);
+    }
+
+    private File fileFor(String url) {
+        return new File(directory, Hashes.sha256Hex(url));
+    }
+
+    /**
+     * Reads an entry written by {@link #writeToDisk}: its metadata as a JSON string, then the
+     * body.
+     */
+    private Entry readFromDisk(String url) {
+        File file = fileFor(url);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            JSONObject meta = new JSONObject(in.readUTF());
+            byte[] body = readLimited(in, Long.MAX_VALUE);
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return Entry.fromJson(meta, body);
+        } catch (IOException | JSONException ex) {
+            // Unreadable, e.g. written by an older version.
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Writes through a temporary sibling, so concurrent readers see the previous entry or the new
+     * one, never a mix.
+     */
+    private void writeToDisk(String url, Entry entry) {
+        if (maxDiskBytes <= 0 || (!directory.exists() && !directory.mkdirs())) {
+            return;
+        }
+        File target = fileFor(url);
+        File partial = null;
+        try {
+            partial = File.createTempFile(target.getName(), PARTIAL_SUFFIX, directory);
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(partial))) {
+                out.writeUTF(entry.toJson().toString());
+                out.write(entry.body);
+            }
+            if (!partial.renameTo(target)) {
+                throw new IOException("Failed to move " + partial);
+            }
+        } catch (IOException | JSONException ex) {
+            if (partial != null) {
+                //noinspection ResultOfMethodCallIgnored
+                partial.delete();
+            }
+            return;
+        }
+        trimDisk();
+    }
+
+    /**
+     * Deletes the least recently used files until the disk budget is met. Disk hits refresh the
+     * modification time, which makes it a usable LRU order.
+     */
+    private void trimDisk() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxDiskBytes) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= maxDiskBytes) {
+                break;
+            }
+            total -= file.length();
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private long diskBytes() {
+        File[] files = directory.listFiles();
+        long total = 0;
+        if (files != null) {
+            for (File file : files) {
+                total += file.length();
+            }
+        }
+        return total;
+    }
+
+    private static WebResourceResponse toResponse(Entry entry) {
+        return toResponse(entry.contentType, 200, "OK", new HashMap<>(entry.headers), new ByteArrayInputStream(entry.body));
+    }
+
+    private static WebResourceResponse toResponse(String contentType, int status, String reason, Map<String, String> headers, InputStream body) {
+        String mimeType = contentType;
+        String encoding = null;
+        int separator = mimeType.indexOf(';');
+        if (separator >= 0) {
+            String parameters = mimeType.substring(separator + 1).trim();
+            mimeType = mimeType.substring(0, separator).trim();
+            if (parameters.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                encoding = parameters.substring("charset=".length());
+            }
+        }
+        return new WebResourceResponse(mimeType, encoding, status, reason, headers, body);
+    }
+
+    private static String mimeTypeFor(Uri uri) {
+        String path = uri.getPath();
+        if (path == null) {
+            return null;
+        }
+        int dot = path.lastIndexOf('.');
+        if (dot < 0 || dot < path.lastIndexOf('/')) {
+            return null;
+        }
+        return MIME_TYPES.get(path.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static byte[] readLimited(InputStream inputStream, long limit) throws IOException {
+        try (InputStream in = inputStream; ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            return copyAtMost(in, out, limit) ? out.toByteArray() : null;
+        }
+    }
+
+    /**
+     * Copies {@code in} to {@code out} until the end of the stream and returns {@code true}, or
+     * stops once more than {@code limit} bytes were copied and returns {@code false}. The stream
+     * is not closed.
+     */
+    private static boolean copyAtMost(InputStream in, ByteArrayOutputStream out, long limit) throws IOException {
+        byte[] buffer = new byte[16 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            if (out.size() > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** A cache entry, or a response that is streamed to the page without being kept. */
+    private static final class Fetched {
+
+        final Entry entry;
+        final WebResourceResponse streamed;
+
+        Fetched(Entry entry, WebResourceResponse streamed) {
+            this.entry = entry;
+            this.streamed = streamed;
+        }
+    }
+
+    private static final class Entry {
+
+        final String contentType;
+        final byte[] body;
+        /** Wall-clock time after which the entry has to be revalidated. */
+        final long expiresAt;
+        final String etag;
+        final String lastModified;
+        /** Response headers from {@link #REPLAYED_HEADERS}. */
+        final Map<String, String> headers;
+        /** Request values of the headers named by the response's {@code Vary} header. */
+        final Map<String, String> vary;
+
+        Entry(
+            String contentType,
+            byte[] body,
+            long expiresAt,
+            String etag,
+            String lastModified,
+            Map<String, String> headers,
+            Map<String, String> vary
+        ) {
+            this.contentType = contentType;
+            this.body = body;
+            this.expiresAt = expiresAt;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.headers = headers;
+            this.vary = vary;
+        }
+
+        boolean isFresh(long now) {
+            return now < expiresAt;
+        }
+
+        /**
+         * Whether a request for {@code url} with {@code requestHeaders} is the variant this entry
+         * was stored for.
+         */
+        boolean matches(Map<String, String> requestHeaders, String url) {
+            for (Map.Entry<String, String> varied : vary.entrySet()) {
+                if (!varied.getValue().equals(requestValue(varied.getKey(), requestHeaders, url))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean hasValidator() {
+            return etag != null || lastModified != null;
+        }
+
+        /**
+         * The same body with the freshness and validators of a {@code 304 Not Modified} response,
+         * which may omit the validators.
+         */
+        Entry revalidated(long expiresAt, String etag, String lastModified) {
+            return new Entry(
+                contentType,
+                body,
+                expiresAt,
+                etag != null ? etag : this.etag,
+                lastModified != null ? lastModified : this.lastModified,
+                headers,
+                vary
+            );
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("contentType", contentType);
+            json.put("expiresAt", expiresAt);
+            json.putOpt("etag", etag);
+            json.putOpt("lastModified", lastModified);
+            json.put("headers", new JSONObject(headers));
+            json.put("vary", new JSONObject(vary));
+            return json;
+        }
+
+        static Entry fromJson(JSONObject json, byte[] body) throws JSONException {
+            return new Entry(
+                json.getString("contentType"),
+                body,
+                json.getLong("expiresAt"),
+                json.optString("etag", null),
+                json.optString("lastModified", null),
+                stringMap(json.optJSONObject("headers")),
+                stringMap(json.optJSONObject("vary"))
+            );
+        }
+
+        private static Map<String, String> stringMap(JSONObject json) throws JSONException {
+            Map<String, String> map = new HashMap<>();
+            if (json != null) {
+                Iterator<String> names = json.keys();
+                while (names.hasNext()) {
+                    String name = names.next();
+                    map.put(name, json.getString(name));
+                }
+            }
+            return map;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package app.capgo.pdfgenerator;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+import com.getcapacitor.JSObject;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Bounded pool of off-screen WebViews reused across PDF jobs. Creating a WebView (and its
+ * Chromium renderer) is the most expensive part of a small job, so released WebViews are reset
+ * and parked here instead of being destroyed.
+ *
+ * <p>All methods must be called on the main thread.
+ */
+final class WebViewPool {
+
+    interface WebViewFactory {
+        WebView create(Context context);
+    }
+
+    private static final String BLANK_URL = "about:blank";
+
+    private final Context context;
+    private final WebViewFactory factory;
+    private final Handler handler;
+    private int maxIdle;
+    private final long idleTimeoutMs;
+
+    private final ArrayDeque<Entry> idle = new ArrayDeque<>();
+    private final Runnable evictionRunnable = this::evictIdle;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long created;
+    private boolean evictionScheduled;
+    private Boolean defaultAllowFileAccess;
+
+    WebViewPool(Context context, WebViewFactory factory, Handler handler, int maxIdle, long idleTimeoutMs) {
+        this.context = context;
+        this.factory = factory;
+        this.handler = handler;
+        this.maxIdle = Math.max(0, maxIdle);
+        this.idleTimeoutMs = Math.max(0, idleTimeoutMs);
+    }
+
+    /**
+     * Returns a ready-to-use WebView, reusing an idle one when available. {@code counted} leaves
+     * plugin-internal leases out of the hit and miss counters.
+     */
+    WebView acquire(boolean counted) {
+        Iterator<Entry> iterator = idle.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.ready) {
+                iterator.remove();
+                if (counted) {
+                    hits++;
+                }
+                return entry.webView;
+            }
+        }
+        if (counted) {
+            misses++;
+        }
+        return create();
+    }
+
+    /**
+     * Resets the WebView and keeps it for the next job, or destroys it when the pool is full.
+     */
+    void release(WebView webView) {
+        if (webView == null) {
+            return;
+        }
+        webView.stopLoading();
+        if (idle.size() >= maxIdle) {
+            destroy(webView);
+            return;
+        }
+        // File sources enable file access for their own job only.
+        webView.getSettings().setAllowFileAccess(defaultAllowFileAccess);
+
+        Entry entry = new Entry(webView);
+        idle.addLast(entry);
+        // Navigating to about:blank drops the previous document together with its JS state.
+        // The entry only becomes leasable once that navigation has completed so a stale
+        // onPageFinished can never reach the next job's WebViewClient.
+        webView.setWebViewClient(new ResetClient(entry));
+        webView.loadUrl(BLANK_URL);
+        scheduleEviction();
+    }
+
+    /**
+     * Destroys a WebView instead of returning it to the pool, for jobs that were cancelled or
+     * timed out while it may still be loading or printing.
+     */
+    void discard(WebView webView) {
+        if (webView != null) {
+            destroy(webView);
+        }
+    }
+
+    /**
+     * Creates WebViews until {@code count} are idle, bounded by the pool size, so the next jobs
+     * skip creating one. The first WebView of the process also loads the WebView provider, so
+     * one is created and destroyed right away even when nothing can be pooled. Returns the number
+     * of WebViews created.
+     */
+    int prewarm(int count) {
+        int target = Math.min(count, maxIdle);
+        int createdNow = 0;
+        while (idle.size() < target) {
+            release(create());
+            createdNow++;
+        }
+        if (created == 0) {
+            destroy(create());
+            createdNow++;
+        }
+        return createdNow;
+    }
+
+    /**
+     * Changes how many idle WebViews are kept, destroying the excess right away.
+     */
+    void setMaxIdle(int maxIdle) {
+        this.maxIdle = Math.max(0, maxIdle);
+        trim(this.maxIdle);
+    }
+
+    /**
+     * Destroys idle WebViews until at most {@code keep} remain.
+     */
+    void trim(int keep) {
+        while (idle.size() > Math.max(0, keep)) {
+            Entry entry = idle.pollFirst();
+            evictions++;
+            destroy(entry.webView);
+        }
+    }
+
+    void clear() {
+        trim(0);
+        handler.removeCallbacks(evictionRunnable);
+        evictionScheduled = false;
+    }
+
+    JSObject stats() {
+        JSObject stats = new JSObject();
+        stats.put("maxIdle", maxIdle);
+        stats.put("idle", idle.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("created", created);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+
+    private WebView create() {
+        WebView webView = factory.create(context);
+        WebSettings settings = webView.getSettings();
+        settings.setJavaScriptEnabled(true);
+        settings.setDatabaseEnabled(true);
+        if (defaultAllowFileAccess == null) {
+            defaultAllowFileAccess = settings.getAllowFileAccess();
+        }
+        created++;
+        return webView;
+    }
+
+    private void destroy(WebView webView) {
+        webView.stopLoading();
+        webView.setWebViewClient(null);
+        webView.destroy();
+    }
+
+    private void scheduleEviction() {
+        if (evictionScheduled || idleTimeoutMs == 0) {
+            return;
+        }
+        evictionScheduled = true;
+        handler.postDelayed(evictionRunnable, idleTimeoutMs);
+    }
+
+    private void evictIdle() {
+        evictionScheduled = false;
+        long now = SystemClock.elapsedRealtime();
+        Iterator<Entry> iterator = idle.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (now - entry.releasedAt >= idleTimeoutMs) {
+                iterator.remove();
+                evictions++;
+                destroy(entry.webView);
+            }
+        }
+        if (!idle.isEmpty()) {
+            scheduleEviction();
+        }
+    }
+
+    private static final class Entry {
+
+        final WebView webView;
+        final long releasedAt = SystemClock.elapsedRealtime();
+        boolean ready;
+
+        Entry(WebView webView) {
+            this.webView = webView;
+        }
+    }
+
+    private static final class ResetClient extends WebViewClient {
+
+        private final Entry entry;
+
+        ResetClient(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public void onPageFinished(WebView view, String url) {
+            if (entry.ready) {
+                return;
+            }
+            view.clearHistory();
+            view.clearFormData();
+            view.setWebViewClient(null);
+            entry.ready = true;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package app.capgo.pdfgenerator.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Base64 encoding of files with bounded, predictable allocation. Plain Java so it can be
+ * benchmarked off-device; see the {@code benchmark} Gradle project.
+ */
+public final class Base64Files {
+
+    private Base64Files() {}
+
+    public interface ChunkSink {
+        /**
+         * Delivers one base64 encoded slice of the file. Chunks are emitted in order on the thread
+         * that called {@link #stream}; {@code offset} is the position of the slice in the file.
+         * Throwing stops the stream before the next slice is read.
+         */
+        void onChunk(String base64, int index, long offset, long totalSize, int chunkCount) throws IOException;
+        void onComplete(long totalSize, int chunkCount);
+    }
+
+    /** Read buffer size. A multiple of 3 so that every full chunk encodes without padding. */
+    public static final int BUFFER_SIZE = 3 * 16 * 1024;
+
+    private static final byte[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(
+        StandardCharsets.US_ASCII
+    );
+
+    public static long encodedLength(long inputLength) {
+        return ((inputLength + 2) / 3) * 4;
+    }
+
+    /**
+     * Upper bound of the heap needed to encode a file of {@code fileBytes} bytes with
+     * {@link #read}: the encoded byte array, the resulting String (one byte per char for base64's
+     * ASCII alphabet) and the fixed read buffer.
+     */
+    public static long estimatePeakBytes(long fileBytes) {
+        return 2 * encodedLength(fileBytes) + BUFFER_SIZE;
+    }
+
+    /** Smallest chunk {@link #streamChunkSize} reduces a larger request to. */
+    public static final int MIN_STREAM_CHUNK_SIZE = 3 * 1024;
+
+    /**
+     * Largest chunk size up to {@code requested} that keeps streaming within {@code budgetBytes}:
+     * one encoded chunk waiting to be delivered while the next is encoded into a byte array and
+     * a String.
+     */
+    public static int streamChunkSize(int requested, long budgetBytes) {
+        int size = requested;
+        while (size > MIN_STREAM_CHUNK_SIZE && 3 * encodedLength(size) > budgetBytes) {
+            size = Math.max(MIN_STREAM_CHUNK_SIZE, size / 2);
+        }
+        return size;
+    }
+
+    /**
+     * Heap that is currently free, used when no explicit memory budget is configured.
+     */
+    public static long defaultMemoryBudget() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return runtime.maxMemory() - used;
+    }
+
+    /**
+     * Streams the file through a fixed-size buffer straight into a preallocated array of the
+     * exact encoded length, so the only full-size allocations are that array and the String.
+     */
+    public static String read(File file) throws IOException {
+        long encodedLength = encodedLength(file.length());
+        if (encodedLength > Integer.MAX_VALUE) {
+            throw new IOException("PDF is too large to encode as base64.");
+        }
+        byte[] encoded = new byte[(int) encodedLength];
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int offset = 0;
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            int read;
+            while ((read = readFully(inputStream, buffer)) > 0) {
+                if (offset + encodedLength(read) > encoded.length) {
+                    throw new IOException("PDF file grew while encoding.");
+                }
+                offset = encode(buffer, read, encoded, offset);
+            }
+        }
+        return new String(encoded, 0, offset, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Hands the file back as a sequence of base64 chunks on the calling thread.
+     * {@code chunkSize} is rounded down to a multiple of 3 bytes so the chunks can be decoded
+     * independently and concatenated.
+     */
+    public static void stream(File file, int chunkSize, ChunkSink sink) throws IOException {
+        int size = Math.max(3, chunkSize - chunkSize % 3);
+        long totalSize = file.length();
+        int chunkCount = (int) ((totalSize + size - 1) / size);
+        byte[] buffer = new byte[size];
+        byte[] encoded = new byte[(int) encodedLength(size)];
+        long offset = 0;
+        int index = 0;
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            int read;
+            while ((read = readFully(inputStream, buffer)) > 0) {
+                int length = encode(buffer, read, encoded, 0);
+                sink.onChunk(new String(encoded, 0, length, StandardCharsets.US_ASCII), index, offset, totalSize, chunkCount);
+                offset += read;
+                index++;
+            }
+        }
+        sink.onComplete(offset, index);
+    }
+
+    /**
+     * Fills {@code buffer} completely unless the end of the stream is reached, so only the
+     * last chunk can end with a partial 3-byte group.
+     */
+    static int readFully(InputStream inputStream, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int read = inputStream.read(buffer, total, buffer.length - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Encodes {@code length} bytes of {@code input} into {@code output} at {@code offset} and
+     * returns the offset after the last written byte.
+     */
+    public static int encode(byte[] input, int length, byte[] output, int offset) {
+        int i = 0;
+        int fullGroups = length - length % 3;
+        while (i < fullGroups) {
+            int bits = ((input[i++] & 0xff) << 16) | ((input[i++] & 0xff) << 8) | (input[i++] & 0xff);
+            output[offset++] = ALPHABET[(bits >>> 18) & 0x3f];
+            output[offset++] = ALPHABET[(bits >>> 12) & 0x3f];
+            output[offset++] = ALPHABET[(bits >>> 6) & 0x3f];
+            output[offset++] = ALPHABET[bits & 0x3f];
+        }
+        int remaining = length - fullGroups;
+        if (remaining > 0) {
+            int bits = (input[i] & 0xff) << 16;
+            if (remaining == 2) {
+                bits |= (input[i + 1] & 0xff) << 8;
+            }
+            output[offset++] = ALPHABET[(bits >>> 18) & 0x3f];
+            output[offset++] = ALPHABET[(bits >>> 12) & 0x3f];
+            output[offset++] = remaining == 2 ? ALPHABET[(bits >>> 6) & 0x3f] : (byte) '=';
+            output[offset++] = '=';
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,94 @@
+package app.capgo.pdfgenerator.core;
+
+import java.util.Locale;
+
+/**
+ * Normalization of the raw option values passed from JavaScript. Kept free of Capacitor and JSON
+ * types so it can be benchmarked off-device.
+ */
+public final class OptionValues {
+
+    public static final String DEFAULT_FILE_NAME = "default.pdf";
+
+    private static final String BUNDLE_BASE_URL = "file:///android_asset/";
+
+    private OptionValues() {}
+
+    /**
+     * Returns a file name without path separators that ends in {@code .pdf}.
+     */
+    public static String fileName(String value) {
+        String trimmed = value == null ? "" : value.trim();
+        if (trimmed.isEmpty()) {
+            trimmed = DEFAULT_FILE_NAME;
+        }
+        String sanitized = sanitize(trimmed);
+        if (!sanitized.toLowerCase(Locale.ROOT).endsWith(".pdf")) {
+            sanitized = sanitized + ".pdf";
+        }
+        return sanitized;
+    }
+
+    /**
+     * Returns {@link #fileName} of {@code value} with {@code -index} inserted before the extension,
+     * e.g. {@code report-2.pdf}.
+     */
+    public static String indexedFileName(String value, int index) {
+        String name = fileName(value);
+        return name.substring(0, name.length() - ".pdf".length()) + "-" + index + ".pdf";
+    }
+
+    /**
+     * Returns {@code null} for a missing or blank base URL and maps {@code BUNDLE} to the app's
+     * bundled assets.
+     */
+    public static String baseUrl(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        if ("BUNDLE".equalsIgnoreCase(trimmed)) {
+            return BUNDLE_BASE_URL;
+        }
+        return trimmed;
+    }
+
+    public static String jobId(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        return value.trim();
+    }
+
+    /**
+     * Resolves the orientation from the {@code landscape} option, which may be a boolean or the
+     * string {@code "landscape"}, falling back to the {@code orientation} option.
+     */
+    public static boolean isLandscape(Object landscape, String orientation) {
+        if (landscape instanceof Boolean) {
+            return (Boolean) landscape;
+        }
+        if (landscape instanceof String) {
+            return ((String) landscape).equalsIgnoreCase("landscape");
+        }
+        return orientation != null && orientation.equalsIgnoreCase("landscape");
+    }
+
+    /** Replaces {@code \}, {@code /} and {@code :} with {@code _} without a regex. */
+    private static String sanitize(String value) {
+        char[] chars = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '/' || c == ':') {
+                if (chars == null) {
+                    chars = value.toCharArray();
+                }
+                chars[i] = '_';
+            }
+        }
+        return chars == null ? value : new String(chars);
+    }
+}
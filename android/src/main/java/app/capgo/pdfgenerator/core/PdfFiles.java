@@ -0,0 +1,106 @@
+package app.capgo.pdfgenerator.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * File handling around rendered PDFs: temporary outputs, target preparation and copies that never
+ * expose a partially written file.
+ */
+public final class PdfFiles {
+
+    private static final String TEMP_PREFIX = "capgo_pdf_generator";
+    private static final String EXTENSION = ".pdf";
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private PdfFiles() {}
+
+    /**
+     * Creates a new, empty temporary PDF file in {@code directory}. The caller owns it and must
+     * delete it once done.
+     */
+    public static File createTemp(File directory) throws IOException {
+        return File.createTempFile(TEMP_PREFIX, EXTENSION, directory);
+    }
+
+    /**
+     * Returns the name of a temporary PDF that is written by name rather than created with
+     * {@link #createTemp}, e.g. by a file job. {@link #deleteStaleTemps} sweeps it like the others.
+     */
+    public static String tempFileName(String tag) {
+        return TEMP_PREFIX + "_" + tag + EXTENSION;
+    }
+
+    /**
+     * Deletes temporary PDFs in {@code directory} last written before {@code before}, left behind
+     * when the process died while a job was running. Returns the number of deleted files.
+     */
+    public static int deleteStaleTemps(File directory, long before) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(TEMP_PREFIX) && name.endsWith(EXTENSION));
+        if (files == null) {
+            return 0;
+        }
+        int deleted = 0;
+        for (File file : files) {
+            if (file.lastModified() < before && file.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Makes {@code target} writable from scratch: removes a previous file and creates missing
+     * parent directories.
+     */
+    public static void prepareTarget(File target) throws IOException {
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Failed to override existing PDF file.");
+        }
+        File parent = target.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed to prepare output directory for PDF.");
+        }
+    }
+
+    /**
+     * Copies {@code source} to {@code target} through a temporary sibling file so readers never
+     * observe a partially written target.
+     */
+    public static void copy(File source, File target) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(source)) {
+            copy(inputStream, target);
+        }
+    }
+
+    /**
+     * Writes the rest of {@code source} to {@code target} through a temporary sibling file. The
+     * stream is not closed.
+     */
+    public static void copy(InputStream source, File target) throws IOException {
+        File parent = target.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed to create " + parent);
+        }
+        File partial = new File(target.getPath() + PARTIAL_SUFFIX);
+        byte[] buffer = new byte[Base64Files.BUFFER_SIZE];
+        try (FileOutputStream outputStream = new FileOutputStream(partial)) {
+            int read;
+            while ((read = source.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+        } catch (IOException ex) {
+            //noinspection ResultOfMethodCallIgnored
+            partial.delete();
+            throw ex;
+        }
+        if (!partial.renameTo(target)) {
+            //noinspection ResultOfMethodCallIgnored
+            partial.delete();
+            throw new IOException("Failed to move PDF to " + target);
+        }
+    }
+}
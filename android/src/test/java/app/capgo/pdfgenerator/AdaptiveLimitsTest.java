@@ -0,0 +1,112 @@
+package app.capgo.pdfgenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.ActivityManager;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import com.getcapacitor.JSObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Checks the limits the plugin starts with, and how base64 results over the budget are handled
+ * with and without memory pressure. The governor only notifies pressure changes, so limits that
+ * already apply at normal pressure have to be set when the plugin loads.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class AdaptiveLimitsTest {
+
+    private ActivityManager activityManager;
+    private PipelineHarness harness;
+
+    @Before
+    public void setUp() {
+        activityManager = (ActivityManager) ApplicationProvider.getApplicationContext().getSystemService(Context.ACTIVITY_SERVICE);
+        ActivityManager.MemoryInfo info = new ActivityManager.MemoryInfo();
+        info.availMem = 4L * 1024 * 1024 * 1024;
+        info.threshold = 256L * 1024 * 1024;
+        info.lowMemory = false;
+        shadowOf(activityManager).setMemoryInfo(info);
+    }
+
+    @After
+    public void tearDown() {
+        if (harness != null) {
+            harness.destroy();
+        }
+    }
+
+    @Test
+    public void load_appliesLowRamLimitsAtNormalPressure() {
+        shadowOf(activityManager).setIsLowRamDevice(true);
+
+        harness = new PipelineHarness(PipelineHarness.config("maxConcurrentJobs", 3, "webViewPoolSize", 2));
+
+        assumeNormalPressure();
+        assertEquals(1, harness.plugin.maxConcurrentJobs());
+        assertEquals(1, (int) harness.resolve(harness.plugin::getWebViewPoolStats).getInteger("maxIdle"));
+    }
+
+    @Test
+    public void load_keepsConfiguredLimitsOnRegularDevices() {
+        shadowOf(activityManager).setIsLowRamDevice(false);
+
+        harness = new PipelineHarness(PipelineHarness.config("maxConcurrentJobs", 3, "webViewPoolSize", 2));
+
+        assumeNormalPressure();
+        assertEquals(3, harness.plugin.maxConcurrentJobs());
+        assertEquals(2, (int) harness.resolve(harness.plugin::getWebViewPoolStats).getInteger("maxIdle"));
+    }
+
+    @Test
+    public void base64_rejectsResultsOverTheBudgetAtNormalPressure() throws Exception {
+        harness = new PipelineHarness(PipelineHarness.config("base64MemoryBudgetBytes", 1));
+        assumeNormalPressure();
+
+        PipelineHarness.RecordedCall call = generateBase64();
+
+        assertNull(call.result);
+        assertTrue(call.error, call.error.startsWith("PDF is too large to return as base64"));
+    }
+
+    @Test
+    public void base64_deliversResultsOverTheBudgetAsFilesUnderMemoryPressure() throws Exception {
+        harness = new PipelineHarness(PipelineHarness.config("base64MemoryBudgetBytes", 1));
+        ((Application) ApplicationProvider.getApplicationContext()).onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals("moderate", harness.resolve(harness.plugin::getAdaptiveLimits).getString("pressure"));
+
+        PipelineHarness.RecordedCall call = generateBase64();
+
+        assertNull(call.error);
+        assertEquals("base64", call.result.getString("requestedType"));
+        assertTrue(call.result.has("uri"));
+    }
+
+    private PipelineHarness.RecordedCall generateBase64() throws InterruptedException {
+        JSObject data = new JSObject();
+        data.put("data", "<p>A</p>");
+        data.put("type", "base64");
+        PipelineHarness.RecordedCall call = PipelineHarness.call(data);
+        harness.plugin.fromData(call.call);
+        assertTrue(harness.runUntil(call::isAnswered, 30_000));
+        return call;
+    }
+
+    /** The test JVM's own heap usage could raise the pressure, which would hide the baseline. */
+    private void assumeNormalPressure() {
+        JSObject limits = harness.resolve(harness.plugin::getAdaptiveLimits);
+        assumeTrue("pressure is " + limits.getString("pressure"), "normal".equals(limits.getString("pressure")));
+    }
+}
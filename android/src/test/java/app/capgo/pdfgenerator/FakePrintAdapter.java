@@ -0,0 +1,84 @@
+package app.capgo.pdfgenerator;
+
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.print.PageRange;
+import android.print.PrintAttributes;
+import android.print.PrintDocumentAdapter;
+import android.print.PrintDocumentInfo;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Print adapter that lays out a single page and writes a minimal PDF. Like the WebView adapter it
+ * answers asynchronously on the main looper, honours cancellation and can be told to fail.
+ */
+final class FakePrintAdapter extends PrintDocumentAdapter {
+
+    /** One page, matching the page count reported by {@link #onLayout}. */
+    static final byte[] PDF = PdfFixtures.pages("Fake").toByteArray();
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final boolean failWrite;
+    private final List<ParcelFileDescriptor> descriptors;
+
+    /**
+     * @param descriptors collects every descriptor handed to {@link #onWrite}, so tests can check
+     *     that the pipeline closed them.
+     */
+    FakePrintAdapter(boolean failWrite, List<ParcelFileDescriptor> descriptors) {
+        this.failWrite = failWrite;
+        this.descriptors = descriptors;
+    }
+
+    @Override
+    public void onLayout(
+        PrintAttributes oldAttributes,
+        PrintAttributes newAttributes,
+        CancellationSignal cancellationSignal,
+        LayoutResultCallback callback,
+        Bundle extras
+    ) {
+        handler.post(() -> {
+            if (cancellationSignal.isCanceled()) {
+                callback.onLayoutCancelled();
+                return;
+            }
+            callback.onLayoutFinished(new PrintDocumentInfo.Builder("fake").setPageCount(1).build(), true);
+        });
+    }
+
+    @Override
+    public void onWrite(
+        PageRange[] pages,
+        ParcelFileDescriptor destination,
+        CancellationSignal cancellationSignal,
+        WriteResultCallback callback
+    ) {
+        descriptors.add(destination);
+        handler.post(() -> {
+            if (cancellationSignal.isCanceled()) {
+                callback.onWriteCancelled();
+                return;
+            }
+            if (failWrite) {
+                callback.onWriteFailed("Injected failure.");
+                return;
+            }
+            try {
+                // Not closed: the descriptor belongs to the caller, like with the real adapter.
+                FileOutputStream out = new FileOutputStream(destination.getFileDescriptor());
+                out.write(PDF);
+                out.flush();
+            } catch (IOException ex) {
+                callback.onWriteFailed(ex.getMessage());
+                return;
+            }
+            callback.onWriteFinished(new PageRange[] { PageRange.ALL_PAGES });
+        });
+    }
+}
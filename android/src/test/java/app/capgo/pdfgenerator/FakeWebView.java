@@ -0,0 +1,56 @@
+package app.capgo.pdfgenerator;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+/**
+ * WebView that "loads" any page instantly: {@code onPageFinished} is posted to the main looper
+ * for whichever client is set when it runs, like the real WebView would report it.
+ */
+final class FakeWebView extends WebView {
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private WebViewClient client;
+    private boolean destroyed;
+
+    FakeWebView(Context context) {
+        super(context);
+    }
+
+    @Override
+    public void setWebViewClient(WebViewClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public void loadUrl(String url) {
+        finishLoading(url);
+    }
+
+    @Override
+    public void loadDataWithBaseURL(String baseUrl, String data, String mimeType, String encoding, String historyUrl) {
+        finishLoading(baseUrl != null ? baseUrl : "about:blank");
+    }
+
+    @Override
+    public void destroy() {
+        destroyed = true;
+        client = null;
+        super.destroy();
+    }
+
+    boolean isDestroyed() {
+        return destroyed;
+    }
+
+    private void finishLoading(String url) {
+        handler.post(() -> {
+            if (!destroyed && client != null) {
+                client.onPageFinished(this, url);
+            }
+        });
+    }
+}
@@ -0,0 +1,114 @@
+package app.capgo.pdfgenerator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Checks how the shared options of a batch are split over its items: every item must run as a
+ * job with its own id and, for the {@code file} output type, its own file.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class PdfBatchTest {
+
+    private static final long TIMEOUT_MS = 30_000;
+
+    private PipelineHarness harness;
+
+    @After
+    public void tearDown() {
+        if (harness != null) {
+            harness.destroy();
+        }
+    }
+
+    @Test
+    public void fileBatch_givesEveryItemItsOwnJobIdAndFile() throws Exception {
+        harness = new PipelineHarness(PipelineHarness.config("adaptiveLimits", false));
+        JSObject data = batch(item("<p>A</p>"), item("<p>B</p>"), item("<p>C</p>"));
+        data.put("type", "file");
+        data.put("fileName", "report.pdf");
+        data.put("jobId", "batch");
+        PipelineHarness.RecordedCall call = PipelineHarness.call(data);
+
+        harness.plugin.fromDataBatch(call.call);
+
+        assertTrue(harness.runUntil(call::isAnswered, TIMEOUT_MS));
+        assertNull(call.error);
+        assertEquals(Integer.valueOf(3), call.result.getInteger("succeeded"));
+        List<String> jobIds = new ArrayList<>();
+        for (JSObject event : harness.plugin.eventData("batchItem")) {
+            jobIds.add(event.getJSObject("result").getString("jobId"));
+        }
+        Collections.sort(jobIds);
+        assertEquals(Arrays.asList("batch-0", "batch-1", "batch-2"), jobIds);
+        for (int i = 0; i < 3; i++) {
+            File file = new File(harness.context.getCacheDir(), "report-" + i + ".pdf");
+            assertArrayEquals(FakePrintAdapter.PDF, Files.readAllBytes(file.toPath()));
+        }
+        assertTrue(harness.awaitQuiescence(10_000));
+    }
+
+    @Test
+    public void fileBatch_rejectsItemsWritingToTheSameFile() throws Exception {
+        harness = new PipelineHarness(PipelineHarness.config("adaptiveLimits", false));
+        JSObject first = item("<p>A</p>");
+        first.put("fileName", "same.pdf");
+        JSObject second = item("<p>B</p>");
+        second.put("fileName", "same.pdf");
+        JSObject data = batch(first, second);
+        data.put("type", "file");
+        PipelineHarness.RecordedCall call = PipelineHarness.call(data);
+
+        harness.plugin.fromDataBatch(call.call);
+
+        assertEquals("Batch items 0 and 1 write to the same file 'same.pdf'.", call.error);
+        assertEquals(0, harness.plugin.activeTaskCount());
+    }
+
+    @Test
+    public void batch_rejectsItemsWithTheSameJobId() throws Exception {
+        harness = new PipelineHarness(PipelineHarness.config("adaptiveLimits", false));
+        JSObject first = item("<p>A</p>");
+        first.put("jobId", "item");
+        JSObject second = item("<p>B</p>");
+        second.put("jobId", "item");
+        PipelineHarness.RecordedCall call = PipelineHarness.call(batch(first, second));
+
+        harness.plugin.fromDataBatch(call.call);
+
+        assertEquals("Batch items 0 and 1 use the same jobId 'item'.", call.error);
+    }
+
+    private static JSObject item(String html) {
+        JSObject item = new JSObject();
+        item.put("data", html);
+        return item;
+    }
+
+    private static JSObject batch(JSObject... items) {
+        JSArray array = new JSArray();
+        for (JSObject item : items) {
+            array.put(item);
+        }
+        JSObject data = new JSObject();
+        data.put("items", array);
+        return data;
+    }
+}
@@ -0,0 +1,506 @@
+package app.capgo.pdfgenerator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Builds small PDFs with exact cross-reference offsets, and parses PDFs independently of the
+ * production reader so round trips are checked against a second implementation.
+ */
+final class PdfFixtures {
+
+    private static final Pattern XREF_ENTRY = Pattern.compile("(\\d{10}) (\\d{5}) ([nf])");
+    private static final Pattern REFERENCE = Pattern.compile("(\\d+)\\s+0\\s+R");
+    private static final Pattern LEAF_TYPE = Pattern.compile("/Type\\s*/Page(?![A-Za-z])");
+
+    private PdfFixtures() {}
+
+    /** Content stream of a page that shows {@code label}. */
+    static String content(String label) {
+        return "BT /F1 12 Tf 72 720 Td (" + label + ") Tj ET";
+    }
+
+    /**
+     * A document with one page per label. Content streams use an indirect {@code /Length}, like
+     * the ones Skia writes.
+     */
+    static Writer pages(String... labels) {
+        Writer writer = new Writer("1.4");
+        int pageCount = labels.length;
+        StringBuilder kids = new StringBuilder();
+        for (int i = 0; i < pageCount; i++) {
+            kids.append(pageNumber(i)).append(" 0 R ");
+        }
+        writer.object(1, "<< /Type /Catalog /Pages 2 0 R >>");
+        writer.object(2, "<< /Type /Pages /Kids [ " + kids + "] /Count " + pageCount + " >>");
+        writer.object(3, "<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica >>");
+        writer.object(4, "<< /Producer (PdfFixtures) >>");
+        for (int i = 0; i < pageCount; i++) {
+            writer.page(pageNumber(i), 2, labels[i]);
+        }
+        writer.xref(1, 4);
+        return writer;
+    }
+
+    /**
+     * {@link #pages} with {@code added} appended by an incremental update: new page objects and a
+     * new revision of the page tree, in a second cross-reference section chained with
+     * {@code /Prev}.
+     */
+    static Writer incrementallyUpdated(String[] original, String... added) {
+        Writer writer = pages(original);
+        StringBuilder kids = new StringBuilder();
+        int total = original.length + added.length;
+        for (int i = 0; i < total; i++) {
+            kids.append(pageNumber(i)).append(" 0 R ");
+        }
+        for (int i = 0; i < added.length; i++) {
+            writer.page(pageNumber(original.length + i), 2, added[i]);
+        }
+        writer.object(2, "<< /Type /Pages /Kids [ " + kids + "] /Count " + total + " >>");
+        writer.xref(1, 4);
+        return writer;
+    }
+
+    private static int pageNumber(int index) {
+        return 5 + 3 * index;
+    }
+
+    /**
+     * Writes objects and classic cross-reference sections. Every {@link #xref} call closes a
+     * revision; later calls append an incremental update to the earlier ones.
+     */
+    static final class Writer {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final Map<Integer, Long> pending = new LinkedHashMap<>();
+        private int size = 1;
+        private long previousXref = -1;
+
+        Writer(String version) {
+            ascii("%PDF-" + version + "\n%\u00e2\u00e3\u00cf\u00d3\n");
+        }
+
+        Writer object(int number, String value) {
+            pending.put(number, (long) out.size());
+            size = Math.max(size, number + 1);
+            ascii(number + " 0 obj\n" + value + "\nendobj\n");
+            return this;
+        }
+
+        Writer stream(int number, String dictionary, byte[] data) {
+            pending.put(number, (long) out.size());
+            size = Math.max(size, number + 1);
+            ascii(number + " 0 obj\n<< " + dictionary + " >>\nstream\n");
+            out.write(data, 0, data.length);
+            ascii("\nendstream\nendobj\n");
+            return this;
+        }
+
+        /** Writes a page, its content stream and the stream's length as objects n to n + 2. */
+        Writer page(int number, int parent, String label) {
+            byte[] data = content(label).getBytes(StandardCharsets.ISO_8859_1);
+            object(
+                number,
+                "<< /Type /Page /Parent " +
+                parent +
+                " 0 R /MediaBox [ 0 0 612 792 ] /Resources << /Font << /F1 3 0 R >> >> /Contents " +
+                (number + 1) +
+                " 0 R >>"
+            );
+            stream(number + 1, "/Length " + (number + 2) + " 0 R", data);
+            object(number + 2, String.valueOf(data.length));
+            return this;
+        }
+
+        /**
+         * Closes the revision with a cross-reference section for the objects written since the
+         * previous one, and a trailer pointing at {@code root} and {@code info}.
+         */
+        Writer xref(int root, int info) {
+            return xref("/Root " + root + " 0 R /Info " + info + " 0 R");
+        }
+
+        Writer xref(String trailerEntries) {
+            long offset = out.size();
+            StringBuilder xref = new StringBuilder("xref\n0 1\n0000000000 65535 f \n");
+            for (Map.Entry<Integer, Long> entry : pending.entrySet()) {
+                xref.append(entry.getKey()).append(" 1\n");
+                xref.append(String.format(Locale.ROOT, "%010d 00000 n \n", entry.getValue()));
+            }
+            xref.append("trailer\n<< /Size ").append(size).append(' ').append(trailerEntries);
+            if (previousXref >= 0) {
+                xref.append(" /Prev ").append(previousXref);
+            }
+            xref.append(" >>\nstartxref\n").append(offset).append("\n%%EOF\n");
+            ascii(xref.toString());
+            pending.clear();
+            previousXref = offset;
+            return this;
+        }
+
+        File writeTo(File file) throws IOException {
+            Files.write(file.toPath(), toByteArray());
+            return file;
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+
+        private void ascii(String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * A parsed document, with classic cross-reference tables or cross-reference and object
+     * streams. Parsing fails when a cross-reference entry does not point at its object: the
+     * {@code N 0 obj} header in the file, or the slot of an object stream holding number N.
+     */
+    static final class Parsed {
+
+        private final byte[] data;
+        private final String text;
+        private final Map<Integer, Long> offsets = new HashMap<>();
+        /** Object stream number and index of every compressed object. */
+        private final Map<Integer, int[]> compressed = new HashMap<>();
+        private final int root;
+        private boolean crossReferenceStream;
+
+        private Parsed(byte[] data) throws IOException {
+            this.data = data;
+            this.text = new String(data, StandardCharsets.ISO_8859_1);
+            int startxref = text.lastIndexOf("startxref");
+            if (startxref < 0) {
+                throw new IOException("No startxref.");
+            }
+            long offset = Long.parseLong(text.substring(startxref + "startxref".length()).trim().split("\\s+")[0]);
+            Integer rootNumber = null;
+            while (offset >= 0) {
+                String trailer = readSection((int) offset);
+                if (rootNumber == null) {
+                    rootNumber = reference(trailer, "/Root");
+                }
+                Long prev = number(trailer, "/Prev");
+                offset = prev != null ? prev : -1;
+            }
+            if (rootNumber == null) {
+                throw new IOException("No /Root.");
+            }
+            root = rootNumber;
+            for (Map.Entry<Integer, Long> entry : offsets.entrySet()) {
+                String header = entry.getKey() + " 0 obj";
+                if (!text.startsWith(header, entry.getValue().intValue())) {
+                    throw new IOException("Object " + entry.getKey() + " is not at offset " + entry.getValue() + ".");
+                }
+            }
+            for (int number : compressed.keySet()) {
+                object(number);
+            }
+        }
+
+        static Parsed read(File file) throws IOException {
+            return new Parsed(Files.readAllBytes(file.toPath()));
+        }
+
+        /**
+         * Reads the cross-reference section at {@code offset} and returns its trailer dictionary.
+         * Entries of newer sections, read first, take precedence.
+         */
+        private String readSection(int offset) throws IOException {
+            if (!text.startsWith("xref", offset)) {
+                return readCrossReferenceStream(offset);
+            }
+            int trailer = text.indexOf("trailer", offset);
+            String[] lines = text.substring(offset + "xref".length(), trailer).trim().split("\\r?\\n");
+            int number = 0;
+            for (String line : lines) {
+                Matcher entry = XREF_ENTRY.matcher(line.trim());
+                if (entry.matches()) {
+                    if (entry.group(3).equals("n") && !offsets.containsKey(number)) {
+                        offsets.put(number, Long.parseLong(entry.group(1)));
+                    }
+                    number++;
+                } else {
+                    number = Integer.parseInt(line.trim().split("\\s+")[0]);
+                }
+            }
+            return text.substring(trailer, text.indexOf("startxref", trailer));
+        }
+
+        /**
+         * Reads the cross-reference stream object at {@code offset} and returns its dictionary,
+         * which doubles as the trailer.
+         */
+        private String readCrossReferenceStream(int offset) throws IOException {
+            Matcher header = Pattern.compile("(\\d+) 0 obj").matcher(text);
+            if (!header.find(offset) || header.start() != offset) {
+                throw new IOException("No cross-reference section at offset " + offset + ".");
+            }
+            int number = Integer.parseInt(header.group(1));
+            offsets.put(number, (long) offset);
+            String dictionary = object(number);
+            if (!dictionary.contains("/Type /XRef")) {
+                throw new IOException("Object " + number + " is not a cross-reference stream.");
+            }
+            crossReferenceStream = true;
+            Matcher widths = Pattern.compile("/W\\s*\\[\\s*(\\d+)\\s+(\\d+)\\s+(\\d+)\\s*\\]").matcher(dictionary);
+            if (!widths.find()) {
+                throw new IOException("Cross-reference stream without /W.");
+            }
+            int[] w = { Integer.parseInt(widths.group(1)), Integer.parseInt(widths.group(2)), Integer.parseInt(widths.group(3)) };
+            List<Long> index = new ArrayList<>();
+            Matcher indexArray = Pattern.compile("/Index\\s*\\[([^\\]]*)\\]").matcher(dictionary);
+            if (indexArray.find()) {
+                for (String value : indexArray.group(1).trim().split("\\s+")) {
+                    index.add(Long.parseLong(value));
+                }
+            } else {
+                index.add(0L);
+                index.add(number(dictionary, "/Size"));
+            }
+            byte[] table = stream(number);
+            int position = 0;
+            for (int section = 0; section < index.size(); section += 2) {
+                int first = index.get(section).intValue();
+                int count = index.get(section + 1).intValue();
+                for (int i = 0; i < count; i++) {
+                    long type = w[0] == 0 ? 1 : field(table, position, w[0]);
+                    long second = field(table, position + w[0], w[1]);
+                    long third = field(table, position + w[0] + w[1], w[2]);
+                    position += w[0] + w[1] + w[2];
+                    int object = first + i;
+                    if (object == number || offsets.containsKey(object) || compressed.containsKey(object)) {
+                        continue;
+                    }
+                    if (type == 1) {
+                        offsets.put(object, second);
+                    } else if (type == 2) {
+                        compressed.put(object, new int[] { (int) second, (int) third });
+                    }
+                }
+            }
+            if (position != table.length) {
+                throw new IOException("Cross-reference stream has " + table.length + " bytes, expected " + position + ".");
+            }
+            return dictionary;
+        }
+
+        private static long field(byte[] table, int position, int width) throws IOException {
+            if (position + width > table.length) {
+                throw new IOException("Truncated cross-reference stream.");
+            }
+            long value = 0;
+            for (int i = 0; i < width; i++) {
+                value = (value << 8) | (table[position + i] & 0xff);
+            }
+            return value;
+        }
+
+        boolean usesCrossReferenceStream() {
+            return crossReferenceStream;
+        }
+
+        /** The document catalog. */
+        String catalog() throws IOException {
+            return object(root);
+        }
+
+        /** Number of in-use objects, compressed or not. */
+        int objectCount() {
+            return offsets.size() + compressed.size();
+        }
+
+        int compressedObjectCount() {
+            return compressed.size();
+        }
+
+        /** Numbers of the in-use objects, in ascending order. */
+        List<Integer> objectNumbers() {
+            List<Integer> numbers = new ArrayList<>(offsets.keySet());
+            numbers.addAll(compressed.keySet());
+            Collections.sort(numbers);
+            return numbers;
+        }
+
+        /** The object's value, without its stream data. */
+        String object(int number) throws IOException {
+            int[] location = compressed.get(number);
+            if (location != null) {
+                return compressedObject(number, location[0], location[1]);
+            }
+            Long offset = offsets.get(number);
+            if (offset == null) {
+                throw new IOException("Missing object " + number + ".");
+            }
+            int start = text.indexOf("obj", offset.intValue()) + "obj".length();
+            int end = text.indexOf("endobj", start);
+            int stream = text.indexOf("stream", start);
+            if (stream >= 0 && stream < end) {
+                end = stream;
+            }
+            return text.substring(start, end).trim();
+        }
+
+        /**
+         * Reads object {@code number} from slot {@code index} of object stream {@code stream},
+         * checking that the stream's header lists it there.
+         */
+        private String compressedObject(int number, int stream, int index) throws IOException {
+            String dictionary = object(stream);
+            if (!dictionary.contains("/Type /ObjStm")) {
+                throw new IOException("Object " + stream + " is not an object stream.");
+            }
+            int count = number(dictionary, "/N").intValue();
+            int first = number(dictionary, "/First").intValue();
+            String content = new String(stream(stream), StandardCharsets.ISO_8859_1);
+            String[] header = content.substring(0, first).trim().split("\\s+");
+            if (index >= count || header.length != 2 * count) {
+                throw new IOException("Object stream " + stream + " has no slot " + index + ".");
+            }
+            if (Integer.parseInt(header[2 * index]) != number) {
+                throw new IOException("Slot " + index + " of object stream " + stream + " holds object " + header[2 * index] + ", not " + number + ".");
+            }
+            int start = first + Integer.parseInt(header[2 * index + 1]);
+            int end = index + 1 < count ? first + Integer.parseInt(header[2 * index + 3]) : content.length();
+            return content.substring(start, end).trim();
+        }
+
+        /** The stream data of an object, decompressed when it uses {@code /FlateDecode}. */
+        byte[] stream(int number) throws IOException {
+            String dictionary = object(number);
+            int start = text.indexOf("stream", offsets.get(number).intValue()) + "stream".length();
+            if (data[start] == '\r') {
+                start++;
+            }
+            start++;
+            Integer lengthRef = reference(dictionary, "/Length");
+            long length = lengthRef != null ? Long.parseLong(object(lengthRef)) : number(dictionary, "/Length");
+            byte[] raw = new byte[(int) length];
+            System.arraycopy(data, start, raw, 0, raw.length);
+            if (!text.startsWith("endstream", skipWhitespace(start + raw.length))) {
+                throw new IOException("Wrong /Length for object " + number + ".");
+            }
+            return dictionary.contains("/FlateDecode") ? inflate(raw) : raw;
+        }
+
+        /**
+         * Counts the leaves of the page tree, checking every node's {@code /Count} and every
+         * kid's {@code /Parent} on the way.
+         */
+        int pageCount() throws IOException {
+            return countPages(reference(object(root), "/Pages"));
+        }
+
+        /** The dictionary of every page, in document order. */
+        List<String> pages() throws IOException {
+            List<String> pages = new ArrayList<>();
+            collectPages(reference(object(root), "/Pages"), pages);
+            return pages;
+        }
+
+        /** The decoded content stream of every page, in document order. */
+        List<String> pageContents() throws IOException {
+            List<String> contents = new ArrayList<>();
+            for (String page : pages()) {
+                contents.add(new String(stream(reference(page, "/Contents")), StandardCharsets.ISO_8859_1));
+            }
+            return contents;
+        }
+
+        private int countPages(int node) throws IOException {
+            String value = object(node);
+            if (LEAF_TYPE.matcher(value).find()) {
+                return 1;
+            }
+            int leaves = 0;
+            for (int kid : kids(value)) {
+                assertEquals("/Parent of " + kid, Integer.valueOf(node), reference(object(kid), "/Parent"));
+                leaves += countPages(kid);
+            }
+            assertEquals("/Count of " + node, Long.valueOf(leaves), number(value, "/Count"));
+            return leaves;
+        }
+
+        private void collectPages(int node, List<String> pages) throws IOException {
+            String value = object(node);
+            if (LEAF_TYPE.matcher(value).find()) {
+                pages.add(value);
+                return;
+            }
+            for (int kid : kids(value)) {
+                collectPages(kid, pages);
+            }
+        }
+
+        private int skipWhitespace(int index) {
+            while (index < data.length && Character.isWhitespace(data[index])) {
+                index++;
+            }
+            return index;
+        }
+    }
+
+    static List<Integer> kids(String dictionary) {
+        List<Integer> kids = new ArrayList<>();
+        Matcher array = Pattern.compile("/Kids\\s*\\[([^\\]]*)\\]").matcher(dictionary);
+        if (array.find()) {
+            Matcher reference = REFERENCE.matcher(array.group(1));
+            while (reference.find()) {
+                kids.add(Integer.parseInt(reference.group(1)));
+            }
+        }
+        return kids;
+    }
+
+    /** The object number referenced by {@code key}, or {@code null}. */
+    static Integer reference(String dictionary, String key) {
+        Matcher matcher = Pattern.compile(Pattern.quote(key) + "\\s+(\\d+)\\s+0\\s+R").matcher(dictionary);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : null;
+    }
+
+    /** The direct number value of {@code key}, or {@code null}. */
+    static Long number(String dictionary, String key) {
+        Matcher matcher = Pattern.compile(Pattern.quote(key) + "\\s+(\\d+)\\b(?!\\s+\\d+\\s+R)").matcher(dictionary);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : null;
+    }
+
+    static byte[] inflate(byte[] data) throws IOException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+        byte[] buffer = new byte[4096];
+        try {
+            while (!inflater.finished()) {
+                int read = inflater.inflate(buffer);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated Flate stream.");
+                }
+                out.write(buffer, 0, read);
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException(ex);
+        } finally {
+            inflater.end();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,127 @@
+package app.capgo.pdfgenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import android.print.PageRange;
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Checks how options are parsed, and that invalid ones reject the call up front instead of
+ * silently changing how the PDF is rendered.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class PdfGeneratorOptionsTest {
+
+    private PipelineHarness harness;
+
+    @After
+    public void tearDown() {
+        if (harness != null) {
+            harness.destroy();
+        }
+    }
+
+    @Test
+    public void waitFor_parsesKnownConditions() throws Exception {
+        assertNull(PdfGeneratorOptions.from(new JSObject()).readiness);
+        assertNotNull(PdfGeneratorOptions.from(waitFor(new JSObject().put("type", "fonts"))).readiness);
+        assertNotNull(PdfGeneratorOptions.from(waitFor(new JSObject().put("type", "selector").put("selector", "#ready"))).readiness);
+    }
+
+    @Test
+    public void waitFor_rejectsUnknownTypes() throws Exception {
+        assertInvalid(waitFor(new JSObject().put("type", "idle")), "Unsupported waitFor type 'idle'.");
+    }
+
+    @Test
+    public void waitFor_rejectsSelectorConditionsWithoutSelector() throws Exception {
+        assertInvalid(waitFor(new JSObject().put("type", "selector")), "'selector' is required for waitFor type 'selector'.");
+        assertInvalid(waitFor(new JSObject().put("type", "selector").put("selector", " ")), "'selector' is required for waitFor type 'selector'.");
+    }
+
+    @Test
+    public void pageRanges_areSortedAndMerged() throws Exception {
+        PageRange[] ranges = PdfGeneratorOptions.from(pageRanges(range(5, 6), range(1, null), range(2, 3), range(7, null), range(9, 9)))
+            .pageRanges;
+
+        assertEquals(3, ranges.length);
+        assertRange(0, 2, ranges[0]);
+        assertRange(4, 6, ranges[1]);
+        assertRange(8, 8, ranges[2]);
+    }
+
+    @Test
+    public void pageRanges_rejectsMalformedRanges() throws Exception {
+        JSArray notAnObject = new JSArray();
+        notAnObject.put(3);
+        JSObject data = new JSObject();
+        data.put("pageRanges", notAnObject);
+        assertInvalid(data, "pageRanges[0] must be an object with a 'start' page.");
+        assertInvalid(pageRanges(range(1, null), range(5, 2)), "pageRanges[1] ends at page 2 before its start page 5.");
+        assertInvalid(pageRanges(range(0, null)), "pageRanges[0].start must be a whole page number of at least 1.");
+        assertInvalid(pageRanges(new JSObject().put("end", 2)), "pageRanges[0].start must be a whole page number of at least 1.");
+        assertInvalid(pageRanges(new JSObject().put("start", 1.5)), "pageRanges[0].start must be a whole page number of at least 1.");
+    }
+
+    @Test
+    public void fromData_rejectsTheCallWithTheOptionError() throws Exception {
+        harness = new PipelineHarness(PipelineHarness.config("adaptiveLimits", false));
+        JSObject data = waitFor(new JSObject().put("type", "idle"));
+        data.put("data", "<p>A</p>");
+        PipelineHarness.RecordedCall call = PipelineHarness.call(data);
+
+        harness.plugin.fromData(call.call);
+
+        assertEquals("Unsupported waitFor type 'idle'.", call.error);
+        assertEquals(0, harness.plugin.activeTaskCount());
+    }
+
+    private static JSObject range(int start, Integer end) {
+        JSObject range = new JSObject();
+        range.put("start", start);
+        if (end != null) {
+            range.put("end", end);
+        }
+        return range;
+    }
+
+    private static JSObject pageRanges(JSObject... ranges) {
+        JSArray array = new JSArray();
+        for (JSObject range : ranges) {
+            array.put(range);
+        }
+        JSObject data = new JSObject();
+        data.put("pageRanges", array);
+        return data;
+    }
+
+    private static void assertRange(int start, int end, PageRange range) {
+        assertEquals(start, range.getStart());
+        assertEquals(end, range.getEnd());
+    }
+
+    private static JSObject waitFor(JSObject condition) {
+        JSObject data = new JSObject();
+        data.put("waitFor", condition);
+        return data;
+    }
+
+    private static void assertInvalid(JSObject data, String message) {
+        try {
+            PdfGeneratorOptions.from(data);
+            fail("Expected options to be rejected: " + data);
+        } catch (IllegalArgumentException ex) {
+            assertEquals(message, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package app.capgo.pdfgenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.getcapacitor.JSObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Drives concurrent synthetic jobs through the real scheduling and callback code and checks that
+ * every call is answered exactly once and nothing leaks. The default load keeps {@code test}
+ * short; run the full soak with {@code ./gradlew test -PsoakJobs=2000}, which sets
+ * {@code -Dpdfgenerator.soak.jobs}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class PdfJobPipelineSoakTest {
+
+    private static final int JOBS = Integer.getInteger("pdfgenerator.soak.jobs", 200);
+    private static final int POOL_SIZE = 2;
+    private static final long TIMEOUT_MS = 120_000;
+
+    private PipelineHarness harness;
+
+    @After
+    public void tearDown() {
+        if (harness != null) {
+            harness.destroy();
+        }
+    }
+
+    @Test
+    public void soak_answersEveryJobOnceWithoutLeaks() throws Exception {
+        harness = new PipelineHarness(
+            PipelineHarness.config(
+                "maxConcurrentJobs",
+                4,
+                "maxQueuedJobs",
+                JOBS,
+                "webViewPoolSize",
+                POOL_SIZE,
+                "backgroundThreads",
+                2,
+                "adaptiveLimits",
+                false
+            )
+        );
+        int tempFilesBefore = harness.tempFiles();
+        Recorder recorder = new Recorder(JOBS);
+
+        List<PdfGenerationTask> toCancel = new ArrayList<>();
+        int expectedFailures = 0;
+        int expectedCancellations = 0;
+        for (int i = 0; i < JOBS; i++) {
+            boolean fail = i % 10 == 3;
+            String fileName = (fail ? PipelineHarness.FAIL_PREFIX : "job-") + i + ".pdf";
+            PdfGenerationTask task = harness.submit("<p>Job " + i + "</p>", fileName, recorder.listener(i));
+            if (i % 25 == 7) {
+                toCancel.add(task);
+                expectedCancellations++;
+            } else if (fail) {
+                expectedFailures++;
+            }
+        }
+        // Nothing has been answered yet since the main looper has not run: some of these are still
+        // computing their key in the background, others are queued or about to start.
+        for (PdfGenerationTask task : toCancel) {
+            task.cancel("Cancelled by test.");
+        }
+
+        assertTrue("Jobs did not finish in time: " + recorder.answered() + "/" + JOBS, harness.runUntil(recorder::isDone, TIMEOUT_MS));
+        assertTrue("Pipeline did not settle", harness.awaitQuiescence(10_000));
+
+        assertEquals("Calls answered more than once", 0, recorder.duplicates.get());
+        assertEquals(expectedCancellations + expectedFailures, recorder.failures.get());
+        assertEquals(JOBS - expectedCancellations - expectedFailures, recorder.successes.get());
+        assertNoLeaks(tempFilesBefore);
+    }
+
+    @Test
+    public void identicalConcurrentCalls_shareOneRender() throws Exception {
+        harness = new PipelineHarness(PipelineHarness.config("maxConcurrentJobs", 1, "adaptiveLimits", false));
+        int calls = 50;
+        Recorder recorder = new Recorder(calls);
+        for (int i = 0; i < calls; i++) {
+            harness.submit("<p>Statement</p>", "statement.pdf", recorder.listener(i));
+        }
+        // The first job cannot finish before the main looper runs, so every other call joins it.
+        assertTrue(harness.await(() -> harness.metrics().getInteger("deduplicated") == calls - 1, TIMEOUT_MS));
+
+        assertTrue(harness.runUntil(recorder::isDone, TIMEOUT_MS));
+        assertTrue(harness.awaitQuiescence(10_000));
+        assertEquals(calls, recorder.successes.get());
+        assertEquals(1, harness.adapters.get());
+        assertNoLeaks(0);
+    }
+
+    @Test
+    public void cancellingEveryJob_freesAllSlots() throws Exception {
+        harness = new PipelineHarness(PipelineHarness.config("maxConcurrentJobs", 2, "maxQueuedJobs", 500, "adaptiveLimits", false));
+        int calls = 500;
+        Recorder recorder = new Recorder(calls);
+        List<PdfGenerationTask> tasks = new ArrayList<>();
+        for (int i = 0; i < calls; i++) {
+            tasks.add(harness.submit("<p>Job " + i + "</p>", "job-" + i + ".pdf", recorder.listener(i)));
+        }
+        for (PdfGenerationTask task : tasks) {
+            task.cancel("Cancelled by test.");
+        }
+
+        assertTrue(harness.runUntil(recorder::isDone, TIMEOUT_MS));
+        assertTrue(harness.awaitQuiescence(10_000));
+        assertEquals(calls, recorder.failures.get());
+
+        // The slots are free again: a new job renders.
+        Recorder next = new Recorder(1);
+        harness.submit("<p>After</p>", "after.pdf", next.listener(0));
+        assertTrue(harness.runUntil(next::isDone, TIMEOUT_MS));
+        assertEquals(1, next.successes.get());
+        assertTrue(harness.awaitQuiescence(10_000));
+        assertNoLeaks(0);
+    }
+
+    private void assertNoLeaks(int tempFilesBefore) {
+        assertEquals("Leaked tasks", 0, harness.plugin.activeTaskCount());
+        assertEquals("Leaked render slots", 0, harness.plugin.runningJobCount());
+        assertEquals("Leaked descriptors", 0, harness.openDescriptors());
+        assertEquals("Leaked temporary files", tempFilesBefore, harness.tempFiles());
+        assertTrue("Leaked WebViews: " + harness.liveWebViews(), harness.liveWebViews() <= POOL_SIZE);
+    }
+
+    /**
+     * Collects the outcome of each call.
+     */
+    private static final class Recorder {
+
+        final AtomicInteger successes = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger duplicates = new AtomicInteger();
+        private final boolean[] answered;
+        private final AtomicLong answeredCount = new AtomicLong();
+
+        Recorder(int jobs) {
+            answered = new boolean[jobs];
+        }
+
+        PdfJobListener listener(int index) {
+            return new PdfJobListener() {
+                @Override
+                public void onResult(JSObject result) {
+                    if (record(index)) {
+                        successes.incrementAndGet();
+                    }
+                }
+
+                @Override
+                public void onError(String message) {
+                    if (record(index)) {
+                        failures.incrementAndGet();
+                    }
+                }
+            };
+        }
+
+        private synchronized boolean record(int index) {
+            if (answered[index]) {
+                duplicates.incrementAndGet();
+                return false;
+            }
+            answered[index] = true;
+            answeredCount.incrementAndGet();
+            return true;
+        }
+
+        long answered() {
+            return answeredCount.get();
+        }
+
+        boolean isDone() {
+            return answeredCount.get() == answered.length;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package app.capgo.pdfgenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import android.os.Handler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Drives {@link PdfJobScheduler} with jobs that only record what happened to them. No handler is
+ * needed unless a wait timeout is configured.
+ */
+public class PdfJobSchedulerTest {
+
+    private final List<String> started = new ArrayList<>();
+
+    @Test
+    public void submit_startsJobsUpToTheLimitThenQueues() {
+        PdfJobScheduler scheduler = scheduler(2, 4, PdfJobScheduler.OverflowPolicy.REJECT);
+        TestJob a = submit(scheduler, "a");
+        submit(scheduler, "b");
+        TestJob c = submit(scheduler, "c");
+
+        assertEquals(Arrays.asList("a", "b"), started);
+        assertEquals(1, c.queuedAt);
+        assertEquals(2, scheduler.runningCount());
+        assertEquals(1, scheduler.queuedCount());
+
+        scheduler.onJobFinished();
+
+        assertEquals(Arrays.asList("a", "b", "c"), started);
+        assertEquals(0, a.queuedAt);
+    }
+
+    @Test
+    public void onJobFinished_startsInteractiveJobsBeforeBackgroundOnes() {
+        PdfJobScheduler scheduler = scheduler(1, 4, PdfJobScheduler.OverflowPolicy.REJECT);
+        submit(scheduler, "running");
+        submit(scheduler, "background", PdfJobScheduler.Priority.BACKGROUND, false);
+        TestJob interactive = submit(scheduler, "interactive");
+
+        assertEquals(1, interactive.queuedAt);
+        scheduler.onJobFinished();
+        scheduler.onJobFinished();
+
+        assertEquals(Arrays.asList("running", "interactive", "background"), started);
+    }
+
+    @Test
+    public void submit_rejectsWhenTheQueueIsFull() {
+        PdfJobScheduler scheduler = scheduler(1, 1, PdfJobScheduler.OverflowPolicy.REJECT);
+        submit(scheduler, "a");
+        submit(scheduler, "b");
+        TestJob c = submit(scheduler, "c");
+
+        assertEquals("PDF generation queue is full (1 pending jobs).", c.rejection);
+        assertEquals(0, scheduler.waitingCount());
+    }
+
+    @Test
+    public void submit_keepsJobsThatWaitForQueueSpaceWhateverThePolicy() {
+        PdfJobScheduler scheduler = scheduler(1, 0, PdfJobScheduler.OverflowPolicy.REJECT);
+        submit(scheduler, "a");
+        TestJob stored = submit(scheduler, "stored", PdfJobScheduler.Priority.BACKGROUND, true);
+
+        assertNull(stored.rejection);
+        assertEquals(1, stored.queuedAt);
+        assertEquals(1, scheduler.waitingCount());
+
+        scheduler.onJobFinished();
+
+        assertEquals(Arrays.asList("a", "stored"), started);
+    }
+
+    @Test
+    public void onJobFinished_startsWaitingJobsWhenNoQueueSpaceIsConfigured() {
+        PdfJobScheduler scheduler = scheduler(1, 0, PdfJobScheduler.OverflowPolicy.WAIT);
+        submit(scheduler, "a");
+        submit(scheduler, "b");
+        submit(scheduler, "c");
+
+        scheduler.onJobFinished();
+        assertEquals(Arrays.asList("a", "b"), started);
+        scheduler.onJobFinished();
+        assertEquals(Arrays.asList("a", "b", "c"), started);
+        assertEquals(0, scheduler.waitingCount());
+    }
+
+    @Test
+    public void onJobFinished_startsWaitingJobsAfterTheQueueWasEmptiedByACancel() {
+        PdfJobScheduler scheduler = scheduler(1, 1, PdfJobScheduler.OverflowPolicy.WAIT);
+        submit(scheduler, "a");
+        TestJob b = submit(scheduler, "b");
+        submit(scheduler, "c");
+        assertEquals(1, scheduler.waitingCount());
+
+        assertTrue(scheduler.remove(b));
+        assertEquals(1, scheduler.queuedCount());
+        assertEquals(0, scheduler.waitingCount());
+
+        scheduler.onJobFinished();
+
+        assertEquals(Arrays.asList("a", "c"), started);
+        assertEquals(0, scheduler.queuedCount());
+    }
+
+    @Test
+    public void setMaxConcurrent_startsWaitingJobsInTheNewSlots() {
+        PdfJobScheduler scheduler = scheduler(1, 1, PdfJobScheduler.OverflowPolicy.WAIT);
+        submit(scheduler, "a");
+        submit(scheduler, "b");
+        submit(scheduler, "c");
+        submit(scheduler, "d");
+
+        scheduler.setMaxConcurrent(3);
+
+        assertEquals(Arrays.asList("a", "b", "c"), started);
+        assertEquals(1, scheduler.queuedCount());
+        assertEquals(0, scheduler.waitingCount());
+    }
+
+    @Test
+    public void submit_doesNotOvertakeWaitingJobs() {
+        PdfJobScheduler scheduler = scheduler(1, 0, PdfJobScheduler.OverflowPolicy.WAIT);
+        submit(scheduler, "a");
+        submit(scheduler, "waiting");
+        scheduler.setMaxConcurrent(2);
+        submit(scheduler, "late");
+
+        assertEquals(Arrays.asList("a", "waiting"), started);
+        scheduler.onJobFinished();
+        assertEquals(Arrays.asList("a", "waiting", "late"), started);
+    }
+
+    @Test
+    public void remove_onlyRemovesJobsThatHaveNotStarted() {
+        PdfJobScheduler scheduler = scheduler(1, 1, PdfJobScheduler.OverflowPolicy.REJECT);
+        TestJob a = submit(scheduler, "a");
+        TestJob b = submit(scheduler, "b");
+
+        assertFalse(scheduler.remove(a));
+        assertTrue(scheduler.remove(b));
+        scheduler.onJobFinished();
+
+        assertEquals(Arrays.asList("a"), started);
+        assertEquals(0, scheduler.runningCount());
+    }
+
+    @Test
+    public void waitTimeout_rejectsJobsStillWaitingForQueueSpace() {
+        Handler handler = mock(Handler.class);
+        PdfJobScheduler scheduler = new PdfJobScheduler(handler, 1, 0, PdfJobScheduler.OverflowPolicy.WAIT, 5000);
+        submit(scheduler, "a");
+        TestJob waiting = submit(scheduler, "waiting");
+        ArgumentCaptor<Runnable> expiry = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler).postDelayed(expiry.capture(), eq(5000L));
+
+        expiry.getValue().run();
+
+        assertEquals("Timed out waiting for space in the PDF generation queue.", waiting.rejection);
+        scheduler.onJobFinished();
+        assertEquals(Arrays.asList("a"), started);
+    }
+
+    private PdfJobScheduler scheduler(int maxConcurrent, int maxQueued, PdfJobScheduler.OverflowPolicy policy) {
+        return new PdfJobScheduler(null, maxConcurrent, maxQueued, policy, 0);
+    }
+
+    private TestJob submit(PdfJobScheduler scheduler, String name) {
+        return submit(scheduler, name, PdfJobScheduler.Priority.INTERACTIVE, false);
+    }
+
+    private TestJob submit(PdfJobScheduler scheduler, String name, PdfJobScheduler.Priority priority, boolean waitsForQueueSpace) {
+        TestJob job = new TestJob(name, priority, waitsForQueueSpace);
+        scheduler.submit(job);
+        return job;
+    }
+
+    private final class TestJob implements PdfJobScheduler.Job {
+
+        final String name;
+        final PdfJobScheduler.Priority priority;
+        final boolean waitsForQueueSpace;
+        int queuedAt;
+        String rejection;
+
+        TestJob(String name, PdfJobScheduler.Priority priority, boolean waitsForQueueSpace) {
+            this.name = name;
+            this.priority = priority;
+            this.waitsForQueueSpace = waitsForQueueSpace;
+        }
+
+        @Override
+        public PdfJobScheduler.Priority priority() {
+            return priority;
+        }
+
+        @Override
+        public void start() {
+            started.add(name);
+        }
+
+        @Override
+        public void reject(String message) {
+            rejection = message;
+        }
+
+        @Override
+        public boolean waitsForQueueSpace() {
+            return waitsForQueueSpace;
+        }
+
+        @Override
+        public void onQueued(int position) {
+            queuedAt = position;
+        }
+    }
+}
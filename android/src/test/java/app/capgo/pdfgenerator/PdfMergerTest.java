@@ -0,0 +1,193 @@
+package app.capgo.pdfgenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Merges fixture documents and parses the result again, with {@link PdfFixtures.Parsed} and with
+ * the merger's own reader.
+ */
+public class PdfMergerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void merge_concatenatesPagesInInputOrder() throws IOException {
+        File first = PdfFixtures.pages("A1", "A2").writeTo(folder.newFile("first.pdf"));
+        File second = PdfFixtures.pages("B1").writeTo(folder.newFile("second.pdf"));
+        File output = folder.newFile("merged.pdf");
+
+        assertEquals(3, PdfMerger.merge(Arrays.asList(first, second), output));
+
+        PdfFixtures.Parsed merged = PdfFixtures.Parsed.read(output);
+        assertEquals(3, merged.pageCount());
+        assertEquals(
+            Arrays.asList(PdfFixtures.content("A1"), PdfFixtures.content("A2"), PdfFixtures.content("B1")),
+            merged.pageContents()
+        );
+    }
+
+    @Test
+    public void merge_usesTheLatestRevisionOfIncrementallyUpdatedInputs() throws IOException {
+        File updated = PdfFixtures.incrementallyUpdated(new String[] { "A1" }, "A2").writeTo(folder.newFile("updated.pdf"));
+        File second = PdfFixtures.pages("B1").writeTo(folder.newFile("second.pdf"));
+        File output = folder.newFile("merged.pdf");
+
+        assertEquals(3, PdfMerger.merge(Arrays.asList(updated, second), output));
+
+        PdfFixtures.Parsed merged = PdfFixtures.Parsed.read(output);
+        assertEquals(3, merged.pageCount());
+        assertEquals(
+            Arrays.asList(PdfFixtures.content("A1"), PdfFixtures.content("A2"), PdfFixtures.content("B1")),
+            merged.pageContents()
+        );
+    }
+
+    @Test
+    public void merge_outputCanBeMergedAgain() throws IOException {
+        File first = PdfFixtures.pages("A1").writeTo(folder.newFile("first.pdf"));
+        File second = PdfFixtures.incrementallyUpdated(new String[] { "B1" }, "B2").writeTo(folder.newFile("second.pdf"));
+        File merged = folder.newFile("merged.pdf");
+        PdfMerger.merge(Arrays.asList(first, second), merged);
+
+        try (PdfMerger.Source source = new PdfMerger.Source(merged)) {
+            assertEquals(3, source.pageCount);
+        }
+        File third = PdfFixtures.pages("C1").writeTo(folder.newFile("third.pdf"));
+        File output = folder.newFile("output.pdf");
+
+        assertEquals(4, PdfMerger.merge(Arrays.asList(merged, third), output));
+        PdfFixtures.Parsed parsed = PdfFixtures.Parsed.read(output);
+        assertEquals(4, parsed.pageCount());
+        assertEquals(PdfFixtures.content("C1"), parsed.pageContents().get(3));
+    }
+
+    @Test
+    public void merge_singleInputKeepsEveryObject() throws IOException {
+        File input = PdfFixtures.pages("A1", "A2").writeTo(folder.newFile("input.pdf"));
+        File output = folder.newFile("merged.pdf");
+
+        assertEquals(2, PdfMerger.merge(Collections.singletonList(input), output));
+
+        // The input's catalog is replaced; the merged page tree and catalog are added.
+        PdfFixtures.Parsed merged = PdfFixtures.Parsed.read(output);
+        assertEquals(PdfFixtures.Parsed.read(input).objectCount() + 1, merged.objectCount());
+        assertEquals(2, merged.pageCount());
+    }
+
+    @Test
+    public void merge_keepsTheInternalLinksOfEveryInput() throws IOException {
+        File first = linked("A").writeTo(folder.newFile("first.pdf"));
+        File second = linked("B").writeTo(folder.newFile("second.pdf"));
+        File output = folder.newFile("merged.pdf");
+
+        assertEquals(4, PdfMerger.merge(Arrays.asList(first, second), output));
+
+        PdfFixtures.Parsed merged = PdfFixtures.Parsed.read(output);
+        String catalog = merged.catalog();
+        assertTrue(catalog, catalog.contains("/Lang (en)"));
+        List<String> pages = merged.pages();
+        String[] labels = { "A", "B" };
+        for (int i = 0; i < labels.length; i++) {
+            String prefix = "doc" + i + "-";
+            List<Integer> links = references(pages.get(2 * i), "/Annots");
+            assertTrue(merged.object(links.get(0)).contains("/Dest /" + prefix + "target"));
+            assertTrue(merged.object(links.get(1)).contains("/D (" + prefix + "intro)"));
+            assertEquals(PdfFixtures.content(labels[i] + "2"), pageContent(merged, destination(catalog, "/" + prefix + "target")));
+            assertEquals(PdfFixtures.content(labels[i] + "1"), pageContent(merged, destination(catalog, "(" + prefix + "intro)")));
+        }
+    }
+
+    @Test
+    public void merge_rejectsCrossReferenceStreams() throws IOException {
+        File input = PdfFixtures.pages("A1").writeTo(folder.newFile("input.pdf"));
+        File compressed = folder.newFile("compressed.pdf");
+        new PdfOptimizer(0, PdfOptimizer.Settings.DEFAULT_JPEG_QUALITY, null).optimize(input, compressed);
+
+        try {
+            PdfMerger.merge(Arrays.asList(input, compressed), folder.newFile("merged.pdf"));
+            fail("Expected an IOException");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("Cross-reference streams"));
+        }
+    }
+
+    @Test
+    public void merge_rejectsEncryptedInputs() throws IOException {
+        PdfFixtures.Writer writer = new PdfFixtures.Writer("1.4")
+            .object(1, "<< /Type /Catalog /Pages 2 0 R >>")
+            .object(2, "<< /Type /Pages /Kids [ ] /Count 0 >>")
+            .object(3, "<< /Filter /Standard /V 1 /R 2 >>")
+            .xref("/Root 1 0 R /Encrypt 3 0 R");
+        File encrypted = writer.writeTo(folder.newFile("encrypted.pdf"));
+
+        try {
+            PdfMerger.merge(Collections.singletonList(encrypted), folder.newFile("merged.pdf"));
+            fail("Expected an IOException");
+        } catch (IOException ex) {
+            assertEquals("Encrypted PDFs cannot be merged.", ex.getMessage());
+        }
+    }
+
+    /**
+     * Two pages; the first links to the second through the {@code /Dests} name {@code target}
+     * and to itself through the name tree string {@code intro}, as Skia writes anchors.
+     */
+    private static PdfFixtures.Writer linked(String label) {
+        byte[] content = PdfFixtures.content(label + "1").getBytes(StandardCharsets.ISO_8859_1);
+        return new PdfFixtures.Writer("1.4")
+            .object(1, "<< /Type /Catalog /Pages 2 0 R /Dests << /target [ 7 0 R /XYZ 0 792 null ] >> /Names << /Dests 4 0 R >> /Lang (en) >>")
+            .object(2, "<< /Type /Pages /Kids [ 5 0 R 7 0 R ] /Count 2 >>")
+            .object(3, "<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica >>")
+            .object(4, "<< /Kids [ 12 0 R ] >>")
+            .object(
+                5,
+                "<< /Type /Page /Parent 2 0 R /MediaBox [ 0 0 612 792 ] /Resources << /Font << /F1 3 0 R >> >> /Contents 6 0 R /Annots [ 10 0 R 11 0 R ] >>"
+            )
+            .stream(6, "/Length " + content.length, content)
+            .page(7, 2, label + "2")
+            .object(10, "<< /Type /Annot /Subtype /Link /Rect [ 0 0 10 10 ] /Dest /target >>")
+            .object(11, "<< /Type /Annot /Subtype /Link /Rect [ 0 20 10 30 ] /A << /S /GoTo /D (intro) >> >>")
+            .object(12, "<< /Limits [ (intro) (intro) ] /Names [ <696e74726f> [ 5 0 R /Fit ] ] >>")
+            .xref("/Root 1 0 R");
+    }
+
+    /** The page a destination of the catalog's {@code /Dests} or name tree points at. */
+    private static int destination(String catalog, String key) {
+        Matcher matcher = Pattern.compile(Pattern.quote(key) + "\\s*\\[\\s*(\\d+)\\s+0\\s+R").matcher(catalog);
+        assertTrue(key + " in " + catalog, matcher.find());
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    private static String pageContent(PdfFixtures.Parsed parsed, int page) throws IOException {
+        int contents = PdfFixtures.reference(parsed.object(page), "/Contents");
+        return new String(parsed.stream(contents), StandardCharsets.ISO_8859_1);
+    }
+
+    private static List<Integer> references(String dictionary, String key) {
+        List<Integer> references = new ArrayList<>();
+        Matcher array = Pattern.compile(Pattern.quote(key) + "\\s*\\[([^\\]]*)\\]").matcher(dictionary);
+        if (array.find()) {
+            Matcher reference = Pattern.compile("(\\d+)\\s+0\\s+R").matcher(array.group(1));
+            while (reference.find()) {
+                references.add(Integer.parseInt(reference.group(1)));
+            }
+        }
+        return references;
+    }
+}
@@ -0,0 +1,171 @@
+package app.capgo.pdfgenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Optimizes fixture documents and parses the result with {@link PdfFixtures.Parsed}, which checks
+ * every cross-reference stream entry against the object it points at.
+ */
+public class PdfOptimizerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void optimize_writesCrossReferenceStreamWithCorrectOffsets() throws IOException {
+        File input = PdfFixtures.pages("A1", "A2", "A3").writeTo(folder.newFile("input.pdf"));
+        File output = folder.newFile("optimized.pdf");
+
+        PdfOptimizer.Result result = optimizer().optimize(input, output);
+
+        PdfFixtures.Parsed optimized = PdfFixtures.Parsed.read(output);
+        assertTrue(optimized.usesCrossReferenceStream());
+        assertTrue(optimized.compressedObjectCount() > 0);
+        assertEquals(3, optimized.pageCount());
+        assertEquals(
+            Arrays.asList(PdfFixtures.content("A1"), PdfFixtures.content("A2"), PdfFixtures.content("A3")),
+            optimized.pageContents()
+        );
+        assertEquals(input.length(), result.originalBytes);
+        assertEquals(output.length(), result.optimizedBytes);
+    }
+
+    @Test
+    public void optimize_spreadsObjectsOverSeveralObjectStreams() throws IOException {
+        // Every page adds two objects that are packed: the page and the length of its content.
+        String[] labels = new String[120];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = "P" + i;
+        }
+        File input = PdfFixtures.pages(labels).writeTo(folder.newFile("input.pdf"));
+        File output = folder.newFile("optimized.pdf");
+
+        optimizer().optimize(input, output);
+
+        PdfFixtures.Parsed optimized = PdfFixtures.Parsed.read(output);
+        assertTrue(optimized.compressedObjectCount() > 200);
+        assertEquals(labels.length, optimized.pageCount());
+        List<String> expected = new ArrayList<>();
+        for (String label : labels) {
+            expected.add(PdfFixtures.content(label));
+        }
+        assertEquals(expected, optimized.pageContents());
+    }
+
+    @Test
+    public void optimize_keepsTheLatestRevisionOfIncrementallyUpdatedInputs() throws IOException {
+        File input = PdfFixtures.incrementallyUpdated(new String[] { "A1" }, "A2").writeTo(folder.newFile("input.pdf"));
+        File output = folder.newFile("optimized.pdf");
+
+        optimizer().optimize(input, output);
+
+        PdfFixtures.Parsed optimized = PdfFixtures.Parsed.read(output);
+        assertEquals(2, optimized.pageCount());
+        assertEquals(Arrays.asList(PdfFixtures.content("A1"), PdfFixtures.content("A2")), optimized.pageContents());
+    }
+
+    @Test
+    public void optimize_storesIdenticalStreamsOnce() throws IOException {
+        File input = PdfFixtures.pages("Same", "Same", "Other").writeTo(folder.newFile("input.pdf"));
+        File output = folder.newFile("optimized.pdf");
+
+        PdfOptimizer.Result result = optimizer().optimize(input, output);
+
+        assertEquals(1, result.duplicateStreams);
+        PdfFixtures.Parsed optimized = PdfFixtures.Parsed.read(output);
+        assertEquals(PdfFixtures.Parsed.read(input).objectCount() - 1, countPlainObjects(optimized));
+        assertEquals(
+            Arrays.asList(PdfFixtures.content("Same"), PdfFixtures.content("Same"), PdfFixtures.content("Other")),
+            optimized.pageContents()
+        );
+    }
+
+    @Test
+    public void optimize_compressesUncompressedStreams() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            content.append("0 0 m 612 792 l S\n");
+        }
+        byte[] data = content.toString().getBytes(StandardCharsets.ISO_8859_1);
+        File input = new PdfFixtures.Writer("1.4")
+            .object(1, "<< /Type /Catalog /Pages 2 0 R >>")
+            .object(2, "<< /Type /Pages /Kids [ 3 0 R ] /Count 1 >>")
+            .object(3, "<< /Type /Page /Parent 2 0 R /MediaBox [ 0 0 612 792 ] /Contents 4 0 R >>")
+            .stream(4, "/Length " + data.length, data)
+            .xref("/Root 1 0 R")
+            .writeTo(folder.newFile("input.pdf"));
+        File output = folder.newFile("optimized.pdf");
+
+        PdfOptimizer.Result result = optimizer().optimize(input, output);
+
+        assertTrue(result.optimizedBytes < result.originalBytes);
+        PdfFixtures.Parsed optimized = PdfFixtures.Parsed.read(output);
+        assertEquals(1, optimized.pageCount());
+        assertEquals(content.toString(), optimized.pageContents().get(0));
+    }
+
+    @Test
+    public void optimize_downsamplesOversizedImages() throws IOException {
+        byte[] jpeg = new byte[4096];
+        File input = new PdfFixtures.Writer("1.4")
+            .object(1, "<< /Type /Catalog /Pages 2 0 R >>")
+            .object(2, "<< /Type /Pages /Kids [ 3 0 R ] /Count 1 >>")
+            .object(3, "<< /Type /Page /Parent 2 0 R /MediaBox [ 0 0 612 792 ] /Resources << /XObject << /Im1 4 0 R >> >> >>")
+            .stream(
+                4,
+                "/Type /XObject /Subtype /Image /Width 4000 /Height 2000 /ColorSpace /DeviceRGB /BitsPerComponent 8 /Filter /DCTDecode /Length " +
+                jpeg.length,
+                jpeg
+            )
+            .xref("/Root 1 0 R")
+            .writeTo(folder.newFile("input.pdf"));
+        File output = folder.newFile("optimized.pdf");
+        byte[] resampled = new byte[16];
+        int[] requested = new int[2];
+        PdfOptimizer optimizer = new PdfOptimizer(1000, 75, (data, width, height, quality) -> {
+            requested[0] = width;
+            requested[1] = height;
+            return resampled;
+        });
+
+        PdfOptimizer.Result result = optimizer.optimize(input, output);
+
+        assertEquals(1, result.resampledImages);
+        assertEquals(1000, requested[0]);
+        assertEquals(500, requested[1]);
+        PdfFixtures.Parsed optimized = PdfFixtures.Parsed.read(output);
+        assertEquals(1, optimized.pageCount());
+        int image = PdfFixtures.reference(optimized.pages().get(0), "/Im1");
+        String dictionary = optimized.object(image);
+        assertEquals(Long.valueOf(1000), PdfFixtures.number(dictionary, "/Width"));
+        assertEquals(Long.valueOf(500), PdfFixtures.number(dictionary, "/Height"));
+        assertEquals(resampled.length, optimized.stream(image).length);
+    }
+
+    private static PdfOptimizer optimizer() {
+        return new PdfOptimizer(0, PdfOptimizer.Settings.DEFAULT_JPEG_QUALITY, null);
+    }
+
+    /** Objects other than the object streams and the cross-reference stream. */
+    private static int countPlainObjects(PdfFixtures.Parsed parsed) throws IOException {
+        int count = 0;
+        for (int number : parsed.objectNumbers()) {
+            String value = parsed.object(number);
+            if (!value.contains("/Type /ObjStm") && !value.contains("/Type /XRef")) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
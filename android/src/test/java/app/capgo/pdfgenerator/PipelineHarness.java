@@ -0,0 +1,294 @@
+package app.capgo.pdfgenerator;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import androidx.test.core.app.ApplicationProvider;
+import com.getcapacitor.Bridge;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginConfig;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Runs the real job pipeline of {@link PdfGeneratorPlugin} (scheduler, WebView pool, print
+ * callbacks, background delivery) against {@link FakeWebView} and {@link FakePrintAdapter}.
+ * Robolectric's main looper is paused, so {@link #runUntil} drives it while the background
+ * executor works on its own threads.
+ */
+final class PipelineHarness {
+
+    /** Jobs whose file name starts with this prefix fail while writing. */
+    static final String FAIL_PREFIX = "fail-";
+
+    final Context context = ApplicationProvider.getApplicationContext();
+    final TestPlugin plugin;
+    final List<FakeWebView> webViews = Collections.synchronizedList(new ArrayList<>());
+    final List<ParcelFileDescriptor> descriptors = Collections.synchronizedList(new ArrayList<>());
+    final AtomicInteger adapters = new AtomicInteger();
+
+    PipelineHarness(Map<String, Object> config) {
+        plugin = new TestPlugin(context, config);
+        plugin.setWebViewFactory((appContext) -> {
+            FakeWebView webView = new FakeWebView(appContext);
+            webViews.add(webView);
+            return webView;
+        });
+        plugin.setPrintAdapterFactory((webView, jobName) -> {
+            adapters.incrementAndGet();
+            return new FakePrintAdapter(jobName.startsWith(FAIL_PREFIX), descriptors);
+        });
+        plugin.setActivityProvider(() -> null);
+        plugin.load();
+        idle();
+    }
+
+    /**
+     * Enqueues a base64 job rendering {@code html}, the way {@code fromData} does.
+     */
+    PdfGenerationTask submit(String html, String fileName, PdfJobListener listener) {
+        JSObject data = new JSObject();
+        data.put("type", "base64");
+        data.put("fileName", fileName);
+        PdfGenerationTask task = new PdfGenerationTask(plugin, listener, new HtmlSource(html, null), PdfGeneratorOptions.from(data));
+        plugin.enqueueTask(task);
+        return task;
+    }
+
+    void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    /**
+     * Runs the main looper until {@code condition} holds. Returns {@code false} on timeout.
+     */
+    boolean runUntil(BooleanSupplier condition, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        while (true) {
+            idle();
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Waits for {@code condition} without running the main looper, for state reached by the
+     * background threads alone. Returns {@code false} on timeout.
+     */
+    boolean await(BooleanSupplier condition, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Returns what a plugin method resolves its call with, running the main looper first for
+     * methods that answer from it.
+     */
+    JSObject resolve(Consumer<PluginCall> method) {
+        PluginCall call = mock(PluginCall.class);
+        method.accept(call);
+        idle();
+        ArgumentCaptor<JSObject> result = ArgumentCaptor.forClass(JSObject.class);
+        verify(call).resolve(result.capture());
+        return result.getValue();
+    }
+
+    /**
+     * Returns a call whose getters read {@code data} and which records how it was answered.
+     */
+    static RecordedCall call(JSObject data) {
+        RecordedCall recorded = new RecordedCall();
+        recorded.call = mock(PluginCall.class, (invocation) -> {
+            Object[] arguments = invocation.getArguments();
+            switch (invocation.getMethod().getName()) {
+                case "getData":
+                    return data;
+                case "resolve":
+                    recorded.result = arguments.length > 0 ? (JSObject) arguments[0] : new JSObject();
+                    return null;
+                case "reject":
+                    recorded.error = (String) arguments[0];
+                    return null;
+                default:
+                    if (arguments.length > 0 && arguments[0] instanceof String && data.has((String) arguments[0])) {
+                        return data.opt((String) arguments[0]);
+                    }
+                    return arguments.length > 1 ? arguments[1] : null;
+            }
+        });
+        return recorded;
+    }
+
+    /**
+     * Returns what {@code getMetrics()} resolves with.
+     */
+    JSObject metrics() {
+        PluginCall call = mock(PluginCall.class);
+        plugin.getMetrics(call);
+        ArgumentCaptor<JSObject> result = ArgumentCaptor.forClass(JSObject.class);
+        verify(call).resolve(result.capture());
+        return result.getValue();
+    }
+
+    /**
+     * Lets the pipeline settle after the last callback: WebViews are released and tasks removed
+     * in runnables posted after the result.
+     */
+    boolean awaitQuiescence(long timeoutMs) throws InterruptedException {
+        return runUntil(() -> plugin.activeTaskCount() == 0 && plugin.runningJobCount() == 0, timeoutMs);
+    }
+
+    int liveWebViews() {
+        int live = 0;
+        synchronized (webViews) {
+            for (FakeWebView webView : webViews) {
+                if (!webView.isDestroyed()) {
+                    live++;
+                }
+            }
+        }
+        return live;
+    }
+
+    int openDescriptors() {
+        int open = 0;
+        synchronized (descriptors) {
+            for (ParcelFileDescriptor descriptor : descriptors) {
+                if (descriptor.getFileDescriptor().valid()) {
+                    open++;
+                }
+            }
+        }
+        return open;
+    }
+
+    /** Temporary PDFs written by {@code CapgoPdfPrintUtils.writeToTempFile}. */
+    int tempFiles() {
+        File[] files = context.getCacheDir().listFiles((dir, name) -> name.startsWith("capgo_pdf_generator"));
+        return files == null ? 0 : files.length;
+    }
+
+    void destroy() {
+        plugin.handleOnDestroy();
+        idle();
+    }
+
+    static Map<String, Object> config(Object... entries) {
+        Map<String, Object> config = new HashMap<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            config.put((String) entries[i], entries[i + 1]);
+        }
+        return config;
+    }
+
+    /** A mocked plugin call and its answer. */
+    static final class RecordedCall {
+
+        PluginCall call;
+        volatile JSObject result;
+        volatile String error;
+
+        boolean isAnswered() {
+            return result != null || error != null;
+        }
+    }
+
+    /**
+     * The plugin outside of a Capacitor bridge: configuration comes from a map, falling back to
+     * the default each getter is called with, and events are counted and kept.
+     */
+    static final class TestPlugin extends PdfGeneratorPlugin {
+
+        final Map<String, AtomicInteger> events = new HashMap<>();
+        final Map<String, List<JSObject>> eventData = new HashMap<>();
+        private final Context context;
+        private final PluginConfig config;
+        private final Bridge bridge = mock(Bridge.class, (invocation) -> "getLocalUrl".equals(invocation.getMethod().getName()) ? "https://localhost" : null);
+
+        TestPlugin(Context context, Map<String, Object> values) {
+            this.context = context;
+            this.config = mock(PluginConfig.class, (invocation) -> {
+                Object[] arguments = invocation.getArguments();
+                if (arguments.length > 0 && values.containsKey(arguments[0])) {
+                    return values.get(arguments[0]);
+                }
+                return arguments.length > 1 ? arguments[1] : null;
+            });
+        }
+
+        @Override
+        public Context getContext() {
+            return context;
+        }
+
+        @Override
+        public PluginConfig getConfig() {
+            return config;
+        }
+
+        @Override
+        public Bridge getBridge() {
+            return bridge;
+        }
+
+        @Override
+        protected boolean hasListeners(String eventName) {
+            return false;
+        }
+
+        @Override
+        protected void notifyListeners(String eventName, JSObject data) {
+            record(eventName, data);
+        }
+
+        @Override
+        protected void notifyListeners(String eventName, JSObject data, boolean retainUntilConsumed) {
+            record(eventName, data);
+        }
+
+        int eventCount(String eventName) {
+            synchronized (events) {
+                AtomicInteger count = events.get(eventName);
+                return count == null ? 0 : count.get();
+            }
+        }
+
+        List<JSObject> eventData(String eventName) {
+            synchronized (events) {
+                List<JSObject> data = eventData.get(eventName);
+                return data == null ? Collections.emptyList() : new ArrayList<>(data);
+            }
+        }
+
+        private void record(String eventName, JSObject data) {
+            synchronized (events) {
+                events.computeIfAbsent(eventName, (key) -> new AtomicInteger()).incrementAndGet();
+                eventData.computeIfAbsent(eventName, (key) -> new ArrayList<>()).add(data);
+            }
+        }
+    }
+}
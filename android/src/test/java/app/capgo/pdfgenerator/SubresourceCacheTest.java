@@ -0,0 +1,190 @@
+package app.capgo.pdfgenerator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import android.net.Uri;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Serves subresources from a local HTTP server and counts how often each path is requested.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class SubresourceCacheTest {
+
+    private static final int MAX_ENTRY_BYTES = 1024;
+
+    private final Map<String, AtomicInteger> requests = new HashMap<>();
+    private HttpServer server;
+    private SubresourceCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        File directory = Files.createTempDirectory("subresources").toFile();
+        cache = new SubresourceCache(directory, MAX_ENTRY_BYTES * 4, 0, 60_000);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void intercept_servesVariedEntriesOnlyToMatchingRequests() throws Exception {
+        String url = url("/vary.css");
+
+        assertEquals("a{}", body(cache.intercept(request(url, "https://a.example"), null)));
+        assertEquals("a{}", body(cache.intercept(request(url, "https://a.example"), null)));
+        assertEquals(1, requestCount("/vary.css"));
+
+        assertEquals("a{}", body(cache.intercept(request(url, "https://b.example"), null)));
+        assertEquals(2, requestCount("/vary.css"));
+    }
+
+    @Test
+    public void intercept_streamsErrorsInsteadOfRequestingThemAgain() throws Exception {
+        WebResourceResponse response = cache.intercept(request(url("/missing.png"), null), null);
+
+        assertNotNull(response);
+        assertEquals(404, response.getStatusCode());
+        assertEquals("missing", body(response));
+        assertEquals(1, requestCount("/missing.png"));
+    }
+
+    @Test
+    public void intercept_streamsBodiesOverTheEntryLimit() throws Exception {
+        WebResourceResponse response = cache.intercept(request(url("/large.png"), null), null);
+
+        assertNotNull(response);
+        assertEquals(200, response.getStatusCode());
+        assertArrayEquals(largeBody(), bytes(response.getData()));
+        cache.intercept(request(url("/large.png"), null), null).getData().close();
+        assertEquals(2, requestCount("/large.png"));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        synchronized (requests) {
+            requests.computeIfAbsent(path, (key) -> new AtomicInteger()).incrementAndGet();
+        }
+        byte[] body;
+        int status = 200;
+        switch (path) {
+            case "/vary.css":
+                exchange.getResponseHeaders().set("Content-Type", "text/css");
+                exchange.getResponseHeaders().set("Cache-Control", "max-age=60");
+                exchange.getResponseHeaders().set("Vary", "Origin");
+                body = "a{}".getBytes(StandardCharsets.UTF_8);
+                break;
+            case "/large.png":
+                exchange.getResponseHeaders().set("Content-Type", "image/png");
+                exchange.getResponseHeaders().set("Cache-Control", "max-age=60");
+                body = largeBody();
+                break;
+            default:
+                status = 404;
+                body = "missing".getBytes(StandardCharsets.UTF_8);
+                break;
+        }
+        // Chunked, so the size is only known once the body has been read.
+        exchange.sendResponseHeaders(status, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private int requestCount(String path) {
+        synchronized (requests) {
+            AtomicInteger count = requests.get(path);
+            return count == null ? 0 : count.get();
+        }
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private static byte[] largeBody() {
+        byte[] body = new byte[MAX_ENTRY_BYTES * 40];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        return body;
+    }
+
+    private static String body(WebResourceResponse response) throws IOException {
+        return new String(bytes(response.getData()), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(InputStream stream) throws IOException {
+        try (InputStream in = stream; ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static WebResourceRequest request(String url, String origin) {
+        Map<String, String> headers = origin != null ? Collections.singletonMap("Origin", origin) : Collections.emptyMap();
+        return new WebResourceRequest() {
+            @Override
+            public Uri getUrl() {
+                return Uri.parse(url);
+            }
+
+            @Override
+            public boolean isForMainFrame() {
+                return false;
+            }
+
+            @Override
+            public boolean isRedirect() {
+                return false;
+            }
+
+            @Override
+            public boolean hasGesture() {
+                return false;
+            }
+
+            @Override
+            public String getMethod() {
+                return "GET";
+            }
+
+            @Override
+            public Map<String, String> getRequestHeaders() {
+                return headers;
+            }
+        };
+    }
+}
@@ -0,0 +1,170 @@
+package app.capgo.pdfgenerator.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks the hand-written encoder against {@link java.util.Base64} for every padding case and
+ * across the read buffer and chunk boundaries.
+ */
+public class Base64FilesTest {
+
+    private static final int[] SIZES = {
+        0,
+        1,
+        2,
+        3,
+        4,
+        5,
+        6,
+        1000,
+        Base64Files.BUFFER_SIZE - 2,
+        Base64Files.BUFFER_SIZE - 1,
+        Base64Files.BUFFER_SIZE,
+        Base64Files.BUFFER_SIZE + 1,
+        Base64Files.BUFFER_SIZE + 2,
+        Base64Files.BUFFER_SIZE + 3,
+        2 * Base64Files.BUFFER_SIZE + 1
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void encode_matchesPlatformEncoder() {
+        Random random = new Random(1);
+        for (int length = 0; length <= 64; length++) {
+            byte[] input = new byte[length];
+            random.nextBytes(input);
+            byte[] output = new byte[(int) Base64Files.encodedLength(length) + 2];
+            int end = Base64Files.encode(input, length, output, 2);
+
+            byte[] expected = Base64.getEncoder().encode(input);
+            assertEquals("length " + length, 2 + expected.length, end);
+            byte[] actual = new byte[expected.length];
+            System.arraycopy(output, 2, actual, 0, actual.length);
+            assertArrayEquals("length " + length, expected, actual);
+        }
+    }
+
+    @Test
+    public void encodedLength_matchesPlatformEncoder() {
+        for (int length = 0; length <= 64; length++) {
+            assertEquals(Base64.getEncoder().encode(new byte[length]).length, Base64Files.encodedLength(length));
+        }
+    }
+
+    @Test
+    public void read_matchesPlatformEncoder() throws IOException {
+        for (int size : SIZES) {
+            byte[] content = content(size);
+            assertEquals("size " + size, Base64.getEncoder().encodeToString(content), Base64Files.read(write(content)));
+        }
+    }
+
+    @Test
+    public void stream_concatenatesToOneShotEncoding() throws IOException {
+        int[] chunkSizes = { 1, 3, 4, 5, 1024, Base64Files.BUFFER_SIZE, Base64Files.BUFFER_SIZE + 1 };
+        for (int size : SIZES) {
+            byte[] content = content(size);
+            File file = write(content);
+            String oneShot = Base64Files.read(file);
+            for (int chunkSize : chunkSizes) {
+                String label = "size " + size + ", chunk " + chunkSize;
+                Collector collector = new Collector();
+                Base64Files.stream(file, chunkSize, collector);
+
+                assertEquals(label, oneShot, collector.joined.toString());
+                assertEquals(label, size, collector.completedSize);
+                assertEquals(label, collector.chunks.size(), collector.completedCount);
+                int rounded = Math.max(3, chunkSize - chunkSize % 3);
+                assertEquals(label, (size + rounded - 1) / rounded, collector.chunks.size());
+
+                // Every chunk decodes on its own to the slice at its reported offset.
+                for (int i = 0; i < collector.chunks.size(); i++) {
+                    byte[] slice = Base64.getDecoder().decode(collector.chunks.get(i));
+                    long offset = collector.offsets.get(i);
+                    assertEquals(label, i * (long) rounded, offset);
+                    byte[] expected = new byte[slice.length];
+                    System.arraycopy(content, (int) offset, expected, 0, slice.length);
+                    assertArrayEquals(label, expected, slice);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void streamChunkSize_onlyShrinksToFitTheBudget() {
+        assertEquals(1000, Base64Files.streamChunkSize(1000, 0));
+        assertEquals(512 * 1024, Base64Files.streamChunkSize(512 * 1024, Long.MAX_VALUE));
+        int reduced = Base64Files.streamChunkSize(512 * 1024, 600 * 1024);
+        assertEquals(128 * 1024, reduced);
+        assertEquals(Base64Files.MIN_STREAM_CHUNK_SIZE, Base64Files.streamChunkSize(512 * 1024, 1));
+    }
+
+    @Test(expected = IOException.class)
+    public void stream_stopsWhenTheSinkThrows() throws IOException {
+        File file = write(content(10));
+        Base64Files.stream(
+            file,
+            3,
+            new Collector() {
+                @Override
+                public void onChunk(String base64, int index, long offset, long totalSize, int chunkCount) throws IOException {
+                    if (index == 1) {
+                        throw new IOException("Stop.");
+                    }
+                    super.onChunk(base64, index, offset, totalSize, chunkCount);
+                }
+            }
+        );
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+    private File write(byte[] content) throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        return file;
+    }
+
+    private static class Collector implements Base64Files.ChunkSink {
+
+        final StringBuilder joined = new StringBuilder();
+        final List<String> chunks = new ArrayList<>();
+        final List<Long> offsets = new ArrayList<>();
+        long completedSize = -1;
+        int completedCount = -1;
+
+        @Override
+        public void onChunk(String base64, int index, long offset, long totalSize, int chunkCount) throws IOException {
+            assertEquals(chunks.size(), index);
+            chunks.add(base64);
+            offsets.add(offset);
+            joined.append(base64);
+        }
+
+        @Override
+        public void onComplete(long totalSize, int chunkCount) {
+            completedSize = totalSize;
+            completedCount = chunkCount;
+        }
+    }
+}
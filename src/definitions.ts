@@ -1,6 +1,209 @@
+/// <reference types="@capacitor/cli" />
+
+import type { PluginListenerHandle } from '@capacitor/core';
+
+declare module '@capacitor/cli' {
+  export interface PluginsConfig {
+    PdfGenerator?: {
+      /**
+       * Maximum number of idle off-screen WebViews kept for reuse between jobs.
+       * Set to `0` to disable pooling. Android only.
+       *
+       * @default 2
+       */
+      webViewPoolSize?: number;
+      /**
+       * Idle WebViews older than this many milliseconds are destroyed. Android only.
+       *
+       * @default 60000
+       */
+      webViewPoolIdleTimeoutMs?: number;
+      /**
+       * Maximum number of PDFs rendered at the same time. Android only.
+       *
+       * @default 2
+       */
+      maxConcurrentJobs?: number;
+      /**
+       * Maximum number of jobs waiting for a render slot. Android only.
+       *
+       * @default 32
+       */
+      maxQueuedJobs?: number;
+      /**
+       * What happens when the queue is full: `reject` fails the call immediately,
+       * `wait` keeps it pending until queue space frees up or `queueWaitTimeoutMs` elapses.
+       * Android only.
+       *
+       * @default 'reject'
+       */
+      queueOverflowPolicy?: 'reject' | 'wait';
+      /**
+       * How long a call may wait for queue space with the `wait` overflow policy.
+       * `0` waits indefinitely. Android only.
+       *
+       * @default 30000
+       */
+      queueWaitTimeoutMs?: number;
+      /**
+       * Default `timeoutMs` for every job: jobs still running this many milliseconds after they
+       * started rendering are cancelled. `0` disables the timeout. Android only.
+       *
+       * @default 120000
+       */
+      jobTimeoutMs?: number;
+      /**
+       * Number of background threads used to encode, copy and clean up written PDFs.
+       * `0` picks a value from the number of CPU cores, between 2 and 4. Android only.
+       *
+       * @default 0
+       */
+      backgroundThreads?: number;
+      /**
+       * Maximum heap, in bytes, a single job may use to build its base64 result.
+       * Jobs whose estimated peak exceeds it are rejected instead of risking an out-of-memory crash.
+       * `0` uses the heap that is free when encoding starts. Android only.
+       *
+       * @default 0
+       */
+      base64MemoryBudgetBytes?: number;
+      /**
+       * Follow memory pressure reported by the system: when memory runs low, fewer jobs render at
+       * once, the WebView pool and subresource cache shrink, and base64 jobs too large for the
+       * reduced budget are delivered as files (with `requestedType: 'base64'`) instead of being
+       * rejected. At normal pressure, base64 results over `base64MemoryBudgetBytes` are still
+       * rejected. Limits recover once memory frees up. Android only.
+       *
+       * @default true
+       */
+      adaptiveLimits?: boolean;
+      /**
+       * Let calls with the same source and options that arrive while an identical job is still
+       * running share that job's render instead of starting their own. Calls with a `jobId` and
+       * `stream` jobs always render on their own. A call that joined another job settles with it,
+       * except when that job is cancelled or times out: the calls that joined it then render on
+       * their own, sharing one new job. Android only.
+       *
+       * @default true
+       */
+      deduplicateJobs?: boolean;
+      /**
+       * Run `warmUp({ render: true })` once the main thread is idle after the plugin loads, so the
+       * first export of the session does not pay for loading WebView and the print pipeline.
+       * Android only.
+       *
+       * @default false
+       */
+      warmUpOnLoad?: boolean;
+      /**
+       * Quota in bytes for the output store, which holds the PDFs written for `share`, base64 jobs
+       * delivered as files and thumbnails written outside a `file` job. Each job gets its own
+       * directory in it. The least recently written outputs are removed first. `0` disables the
+       * quota. Android only.
+       *
+       * @default 104857600
+       */
+      outputStoreMaxBytes?: number;
+      /**
+       * Age in milliseconds after which outputs are removed from the output store. `0` keeps them
+       * until the quota evicts them or `purgeOutputs` is called. Android only.
+       *
+       * @default 86400000
+       */
+      outputStoreMaxAgeMs?: number;
+      /**
+       * Serve repeated renders of identical content from an on-disk cache. Can be overridden per
+       * call with the `cache` option. Android only.
+       *
+       * @default false
+       */
+      renderCache?: boolean;
+      /**
+       * Maximum size of the render cache in bytes; least recently used entries are evicted first.
+       * Android only.
+       *
+       * @default 52428800
+       */
+      renderCacheMaxBytes?: number;
+      /**
+       * Age in milliseconds after which a cached render is discarded. `0` disables expiry.
+       * Android only.
+       *
+       * @default 86400000
+       */
+      renderCacheTtlMs?: number;
+      /**
+       * Serve fonts, stylesheets and images requested by rendered pages from a cache shared by all
+       * jobs, so repeated assets are only downloaded once. Android only.
+       *
+       * @default false
+       */
+      subresourceCache?: boolean;
+      /**
+       * In-memory budget of the subresource cache in bytes. Android only.
+       *
+       * @default 8388608
+       */
+      subresourceCacheMemoryBytes?: number;
+      /**
+       * On-disk budget of the subresource cache in bytes. Android only.
+       *
+       * @default 33554432
+       */
+      subresourceCacheDiskBytes?: number;
+      /**
+       * Longest time in milliseconds a cached asset is used without asking the server again, and
+       * the freshness of responses that set neither `Cache-Control: max-age` nor `Expires`. Expired
+       * assets are revalidated with their `ETag` or `Last-Modified` header. Responses marked
+       * `no-store` or `private` are never cached. Android only.
+       *
+       * @default 3600000
+       */
+      subresourceCacheMaxAgeMs?: number;
+      /**
+       * Asset URLs downloaded into the subresource cache when the plugin loads. Android only.
+       */
+      subresourceManifest?: string[];
+    };
+  }
+}
+
 export type PdfGeneratorDocumentSize = 'A3' | 'A4';
 
-export type PdfGeneratorOutputType = 'base64' | 'share';
+/**
+ * - `base64`: resolves with the whole PDF as a base64 string.
+ * - `stream`: emits the PDF as ordered base64 chunks through `pdfChunk` events and resolves with metadata only (Android only).
+ *   Requires a `pdfChunk` listener, otherwise the call is rejected. The next chunk is only read once the previous one has been dispatched.
+ * - `file`: writes the PDF to `directory` and resolves with its path, without moving the bytes across the bridge (Android only).
+ * - `share`: opens the native share sheet.
+ */
+export type PdfGeneratorOutputType = 'base64' | 'stream' | 'file' | 'share';
+
+/**
+ * App-private directory used by the `file` output type.
+ * - `cache`: the app cache directory, which the system may clear.
+ * - `data`: the app files directory.
+ * - `documents`: the app-specific external documents directory, falling back to `data`.
+ */
+export type PdfGeneratorDirectory = 'cache' | 'data' | 'documents';
+
+/**
+ * Scheduling class of a job. Interactive jobs always start before background ones.
+ */
+export type PdfGeneratorPriority = 'interactive' | 'background';
+
+/**
+ * Condition the loaded page must meet before it is printed.
+ * - `flag`: `window[name]` is `true`, or is a promise that has settled. `name` defaults to `capgoPdfReady`.
+ * - `selector`: an element matching `selector` exists.
+ * - `fonts`: `document.fonts.ready` has resolved and every image has been decoded.
+ * - `networkIdle`: the document is complete and no resource finished loading for `idleMs` (default 500).
+ */
+export type PdfGeneratorReadiness =
+  | { type: 'flag'; name?: string }
+  | { type: 'selector'; selector: string }
+  | { type: 'fonts' }
+  | { type: 'networkIdle'; idleMs?: number };
 
 export interface PdfGeneratorCommonOptions {
   /**
@@ -21,9 +224,71 @@ export interface PdfGeneratorCommonOptions {
    */
   type?: PdfGeneratorOutputType;
   /**
-   * File name used when the PDF is exported to disk (share mode).
+   * File name used when the PDF is exported to disk (`file` and `share` modes).
    */
   fileName?: string;
+  /**
+   * Directory the PDF is written to with the `file` output type. Defaults to `cache`. Android only.
+   */
+  directory?: PdfGeneratorDirectory;
+  /**
+   * Number of PDF bytes per `pdfChunk` event in `stream` mode. Rounded down to a multiple of 3 so
+   * every chunk decodes on its own. Defaults to 524288 (512 KiB). Reduced, down to 3072 bytes, when
+   * the chunk being dispatched and the one being encoded would not fit in `base64MemoryBudgetBytes`.
+   * Android only.
+   */
+  chunkSize?: number;
+  /**
+   * Wait for this condition after the page has loaded instead of printing right away. Calls with an
+   * unknown `type`, or a `selector` condition without `selector`, are rejected. Android only.
+   */
+  waitFor?: PdfGeneratorReadiness;
+  /**
+   * Maximum time to wait for `waitFor`, in milliseconds. The PDF is printed anyway once it elapses
+   * and the result reports `readyTimedOut`. Defaults to `10000`. Android only.
+   */
+  readyTimeoutMs?: number;
+  /**
+   * Only write these pages, e.g. `[{ start: 1 }]` for a first-page preview. Ranges are one-based
+   * and inclusive; a range without `end` covers a single page. Overlapping ranges are merged and
+   * pages are written in document order. Pages past the end of the document are ignored, and the
+   * call fails when none of the requested pages exist. Calls with a range that is not an object,
+   * starts below `1` or ends before it starts are rejected. Defaults to every page. Android only.
+   */
+  pageRanges?: PdfGeneratorPageRange[];
+  /**
+   * Serve this call from the render cache when an identical document (same source, `baseUrl`,
+   * document size, orientation, page ranges, `waitFor`, `readyTimeoutMs` and `optimize`) was rendered
+   * before, and store the result otherwise. Renders whose `waitFor` condition timed out are not
+   * stored. Defaults to the `renderCache` plugin configuration. Android only.
+   */
+  cache?: boolean;
+  /**
+   * Identifier reported back in results and events. A random id is generated when omitted.
+   */
+  jobId?: string;
+  /**
+   * Scheduling priority when the render slots are busy. Defaults to `interactive`. Android only.
+   */
+  priority?: PdfGeneratorPriority;
+  /**
+   * Shrink the PDF after it is written: identical streams are stored once, uncompressed streams
+   * are compressed, objects are packed into compressed object streams and oversized JPEG images are
+   * downsampled. `true` uses the default settings. The result reports `originalSize` and
+   * `optimizedSize`. Android only.
+   */
+  optimize?: boolean | PdfGeneratorOptimizeOptions;
+  /**
+   * Render preview images of pages of the generated PDF and return them in `thumbnails`.
+   * `true` renders the first page as a 256 pixel wide base64 PNG. Android only.
+   */
+  thumbnail?: boolean | PdfGeneratorThumbnailOptions;
+  /**
+   * Cancel the job when it is still running this many milliseconds after it started rendering,
+   * or after it joined an identical job, see `deduplicateJobs`. `0` disables the timeout.
+   * Defaults to the `jobTimeoutMs` plugin configuration. Android only.
+   */
+  timeoutMs?: number;
 }
 
 export interface PdfGeneratorFromUrlOptions extends PdfGeneratorCommonOptions {
@@ -42,15 +307,672 @@ export interface PdfGeneratorFromDataOptions extends PdfGeneratorCommonOptions {
   baseUrl?: string;
 }
 
+export interface PdfGeneratorFromFileOptions extends PdfGeneratorCommonOptions {
+  /**
+   * HTML file to render: an absolute path, a `file://` URI or a `content://` URI. The WebView reads
+   * it directly, so the document never crosses the bridge. Relative resources of a file are
+   * resolved against its directory. Files should use an `.html` extension.
+   */
+  path: string;
+}
+
+export interface PdfGeneratorBackgroundJobOptions extends Omit<PdfGeneratorCommonOptions, 'type'> {
+  /**
+   * Background jobs always write a file; the result reports its path.
+   */
+  type?: 'file';
+  /**
+   * URL to render. Exactly one of `url`, `data` and `path` is required.
+   */
+  url?: string;
+  /**
+   * HTML document to render. It is stored with the job, so prefer `path` for large documents.
+   */
+  data?: string;
+  /**
+   * Local HTML file to render, as accepted by `fromFile`.
+   */
+  path?: string;
+  /**
+   * Base URL used to resolve relative resources of `data`.
+   */
+  baseUrl?: string;
+}
+
+export interface PdfGeneratorOutput {
+  /**
+   * Job that wrote the file. Ids with characters other than letters, digits, `.`, `-` and `_`
+   * are reported as a hash.
+   */
+  jobId: string;
+  path: string;
+  size: number;
+  /**
+   * Epoch milliseconds of the last write.
+   */
+  modifiedAt: number;
+}
+
+export interface PdfGeneratorOutputList {
+  /**
+   * Files of finished jobs. Outputs of running jobs are not listed.
+   */
+  outputs: PdfGeneratorOutput[];
+  totalBytes: number;
+  maxBytes: number;
+  maxAgeMs: number;
+}
+
+export interface PdfGeneratorPurgeOutputsOptions {
+  /**
+   * Only remove the outputs of these jobs.
+   */
+  jobIds?: string[];
+  /**
+   * Only remove outputs last written at least this many milliseconds ago.
+   */
+  olderThanMs?: number;
+}
+
+export interface PdfGeneratorBackgroundJob {
+  jobId: string;
+  state: 'pending' | 'succeeded' | 'failed';
+  /**
+   * Epoch milliseconds when the job was enqueued.
+   */
+  createdAt: number;
+  /**
+   * Epoch milliseconds when the job finished.
+   */
+  finishedAt?: number;
+  /**
+   * How many times the job was started, including starts interrupted by the app being killed.
+   */
+  attempts?: number;
+  /**
+   * The options the job was enqueued with.
+   */
+  request: PdfGeneratorBackgroundJobOptions;
+  /**
+   * Set when `state` is `succeeded`.
+   */
+  result?: PdfGeneratorResult;
+  /**
+   * Set when `state` is `failed`.
+   */
+  error?: string;
+}
+
+export interface PdfGeneratorTemplateOptions {
+  /**
+   * Name the template is registered under. Registering the same id again replaces it.
+   */
+  id: string;
+  /**
+   * HTML document with `{{ path }}` placeholders, replaced by the HTML-escaped value of `path`
+   * in the call data. Use `{{{ path }}}` to insert a value without escaping. Paths are dot
+   * separated and may index arrays, e.g. `{{ lines.0.label }}`.
+   */
+  html: string;
+  /**
+   * Base URL used to resolve relative resources of the rendered documents.
+   * When omitted, `about:blank` is used.
+   */
+  baseUrl?: string;
+}
+
+export interface PdfGeneratorFromTemplateOptions extends PdfGeneratorCommonOptions {
+  /**
+   * Id of a template registered with `registerTemplate`.
+   */
+  id: string;
+  /**
+   * Values substituted into the template placeholders. Missing values render as empty strings.
+   */
+  data?: Record<string, unknown>;
+  /**
+   * Overrides the `baseUrl` registered with the template.
+   */
+  baseUrl?: string;
+}
+
+/**
+ * Per-item overrides of a batch. Any common option set here replaces the shared one for that item.
+ */
+export type PdfGeneratorBatchItemOptions = Omit<PdfGeneratorCommonOptions, 'type'>;
+
+export interface PdfGeneratorBatchOptions extends PdfGeneratorCommonOptions {
+  /**
+   * Maximum number of items of this batch handed to the render queue at the same time.
+   * The global `maxConcurrentJobs` limit still applies. Defaults to `2`.
+   */
+  parallelism?: number;
+  /**
+   * Renders the items in parallel and concatenates them, in item order, into a single PDF that
+   * is delivered according to `type` like a `fromURL` / `fromData` result. `share` is allowed in
+   * this mode. `batchItem` events still report progress but carry no `result`.
+   * Only PDFs produced by the WebView can be merged. Links to anchors keep working, and the
+   * language of the first item is kept; bookmarks and accessibility tags are dropped. Defaults to
+   * `false`. Android only.
+   */
+  merge?: boolean;
+}
+
+export interface PdfGeneratorFromUrlBatchOptions extends PdfGeneratorBatchOptions {
+  /**
+   * Each item runs as a job of its own with the shared options, overridden by the item's keys. A
+   * shared `jobId` becomes `<jobId>-<index>` and a shared `fileName` becomes `<name>-<index>.pdf`,
+   * so items never share an id or a file. Calls whose items still use the same `jobId` or write to
+   * the same file are rejected.
+   */
+  items: (PdfGeneratorBatchItemOptions & { url: string })[];
+}
+
+export interface PdfGeneratorFromDataBatchOptions extends PdfGeneratorBatchOptions {
+  /**
+   * Each item runs as a job of its own with the shared options, overridden by the item's keys. A
+   * shared `jobId` becomes `<jobId>-<index>` and a shared `fileName` becomes `<name>-<index>.pdf`,
+   * so items never share an id or a file. Calls whose items still use the same `jobId` or write to
+   * the same file are rejected.
+   */
+  items: (PdfGeneratorBatchItemOptions & { data: string; baseUrl?: string })[];
+}
+
+export interface PdfGeneratorBatchResult {
+  batchId: string;
+  total: number;
+  succeeded: number;
+  failed: number;
+}
+
+export interface PdfGeneratorBatchItemEvent {
+  batchId: string;
+  /**
+   * Index of the item in the `items` array.
+   */
+  index: number;
+  success: boolean;
+  /**
+   * Result of the item when `success` is `true`.
+   */
+  result?: PdfGeneratorResult;
+  /**
+   * Error message when `success` is `false`.
+   */
+  error?: string;
+}
+
+export interface PdfGeneratorThumbnailOptions {
+  /**
+   * One-based page numbers of the generated PDF to render. Pages that do not exist are skipped.
+   * Defaults to `[1]`.
+   */
+  pages?: number[];
+  /**
+   * Width of the images in pixels, up to `2048`; the height follows the page aspect ratio.
+   * Defaults to `256`.
+   */
+  width?: number;
+  /**
+   * Image format. Defaults to `png`.
+   */
+  format?: 'png' | 'webp';
+  /**
+   * WebP quality from `1` to `100`. Defaults to `80`.
+   */
+  quality?: number;
+  /**
+   * `base64` returns the encoded images; `file` writes them next to the PDF for the `file` output
+   * type, or to the job's directory in the output store otherwise, and returns their paths.
+   * Defaults to `base64`.
+   */
+  type?: 'base64' | 'file';
+}
+
+export interface PdfGeneratorThumbnail {
+  /**
+   * One-based page number.
+   */
+  page: number;
+  width: number;
+  height: number;
+  format: 'png' | 'webp';
+  /**
+   * Encoded image, for the `base64` thumbnail type.
+   */
+  base64?: string;
+  /**
+   * Absolute path of the image file, for the `file` thumbnail type.
+   */
+  path?: string;
+}
+
+export interface PdfGeneratorOptimizeOptions {
+  /**
+   * Images are downsampled so they have at most this many pixels per inch when they fill the page.
+   * `0` leaves images untouched. Defaults to `150`.
+   */
+  imageDpi?: number;
+  /**
+   * JPEG quality, from `1` to `100`, of downsampled images. Defaults to `80`.
+   */
+  jpegQuality?: number;
+}
+
+export interface PdfGeneratorPageRange {
+  /**
+   * First page of the range, starting at `1`.
+   */
+  start: number;
+  /**
+   * Last page of the range, inclusive. Defaults to `start`.
+   */
+  end?: number;
+}
+
+export interface PdfGeneratorResultInfo {
+  /**
+   * Identifier of the job that produced this result. Android only.
+   */
+  jobId?: string;
+  /**
+   * Time the job spent waiting for a render slot, in milliseconds. Android only.
+   */
+  queueWaitMs?: number;
+  /**
+   * Whether the result was served from the render cache. Android only.
+   */
+  cached?: boolean;
+  /**
+   * Id of the identical job this call joined instead of rendering, see `deduplicateJobs`.
+   * Android only.
+   */
+  deduplicatedFrom?: string;
+  /**
+   * Whether `readyTimeoutMs` elapsed before the `waitFor` condition was met. Android only.
+   */
+  readyTimedOut?: boolean;
+  /**
+   * Number of pages in the returned PDF, or `-1` when it could not be determined. Android only.
+   */
+  pageCount?: number;
+  /**
+   * Number of pages of the whole document. Differs from `pageCount` when `pageRanges` is used,
+   * and is omitted when the length of the document is not known without rendering every page.
+   * Android only.
+   */
+  documentPageCount?: number;
+  /**
+   * Size in bytes of the PDF as printed, when `optimize` was used. Android only.
+   */
+  originalSize?: number;
+  /**
+   * Size in bytes of the delivered PDF, when `optimize` was used. Equals `originalSize` when the
+   * optimizer could not make it smaller. Android only.
+   */
+  optimizedSize?: number;
+  /**
+   * Preview images requested with the `thumbnail` option. Omitted when they could not be
+   * rendered. Android only.
+   */
+  thumbnails?: PdfGeneratorThumbnail[];
+  /**
+   * Phase timings and output size of this job. Android only.
+   */
+  metrics?: PdfGeneratorJobMetrics;
+  /**
+   * Subresources of this job served from the subresource cache. Android only.
+   */
+  subresourceHits?: number;
+  /**
+   * Subresources of this job that had to be downloaded. Android only.
+   */
+  subresourceMisses?: number;
+}
+
+export interface PdfGeneratorSubresourceCacheStats {
+  memoryEntries: number;
+  memoryBytes: number;
+  maxMemoryBytes: number;
+  diskBytes: number;
+  maxDiskBytes: number;
+  /**
+   * Longest time an asset is served without revalidation, from `subresourceCacheMaxAgeMs`.
+   */
+  maxAgeMs: number;
+  hits: number;
+  misses: number;
+}
+
+export interface PdfGeneratorRenderCacheStats {
+  entries: number;
+  /**
+   * Bytes currently used by cached PDFs.
+   */
+  bytes: number;
+  maxBytes: number;
+  ttlMs: number;
+  hits: number;
+  misses: number;
+  evictions: number;
+}
+
+/**
+ * Identifies a cached render: pass the same source and render options that were used to generate it.
+ */
+export type PdfGeneratorInvalidateCacheOptions = Pick<PdfGeneratorCommonOptions, 'documentSize' | 'orientation' | 'landscape'> &
+  ({ url: string; data?: never; baseUrl?: never } | { data: string; baseUrl?: string; url?: never });
+
 export type PdfGeneratorResult =
-  | {
+  | (PdfGeneratorResultInfo & {
       type: 'base64';
       base64: string;
-    }
-  | {
+    })
+  | (PdfGeneratorResultInfo & {
+      type: 'stream';
+      /**
+       * Size of the PDF in bytes.
+       */
+      totalSize: number;
+      /**
+       * Number of `pdfChunk` events emitted before the promise resolved.
+       */
+      chunkCount: number;
+    })
+  | (PdfGeneratorResultInfo & {
+      type: 'file';
+      /**
+       * Set to `'base64'` when a base64 job was delivered as a file because of memory pressure,
+       * see `adaptiveLimits`. The file is written to the output store, see `outputStoreMaxBytes`.
+       */
+      requestedType?: 'base64';
+      /**
+       * Absolute path of the written PDF.
+       */
+      path: string;
+      /**
+       * `file://` URI of the written PDF, suitable for native uploaders.
+       */
+      uri: string;
+      /**
+       * URL the app WebView can `fetch` the PDF from.
+       */
+      webPath: string;
+      /**
+       * Size of the PDF in bytes.
+       */
+      size: number;
+      /**
+       * Number of pages, or `-1` when it could not be determined.
+       */
+      pageCount: number;
+    })
+  | (PdfGeneratorResultInfo & {
       type: 'share';
       completed: boolean;
-    };
+    });
+
+export interface PdfGeneratorChunkEvent {
+  jobId: string;
+  /**
+   * 0-based index of the chunk. Chunks are emitted in order.
+   */
+  index: number;
+  /**
+   * Byte offset of this chunk inside the PDF.
+   */
+  offset: number;
+  /**
+   * Size of the whole PDF in bytes.
+   */
+  totalSize: number;
+  chunkCount: number;
+  /**
+   * Base64 encoded bytes of this chunk.
+   */
+  data: string;
+}
+
+/**
+ * Durations are in milliseconds, measured on the monotonic clock. Phases a job did not go
+ * through, such as loading for a render cache hit, are omitted.
+ */
+export interface PdfGeneratorJobMetrics {
+  /**
+   * Time spent waiting for a render slot.
+   */
+  queueWaitMs?: number;
+  /**
+   * Time from handing the source to the WebView until the page finished loading.
+   */
+  loadMs?: number;
+  /**
+   * Time spent waiting for the `waitFor` condition.
+   */
+  readyMs?: number;
+  /**
+   * Time spent laying out the print document.
+   */
+  layoutMs?: number;
+  /**
+   * Time spent writing the PDF.
+   */
+  writeMs?: number;
+  /**
+   * Time spent in the `optimize` stage.
+   */
+  optimizeMs?: number;
+  /**
+   * Time spent rendering thumbnails.
+   */
+  thumbnailMs?: number;
+  /**
+   * Time spent base64 encoding the PDF, for the `base64` and `stream` output types.
+   */
+  encodeMs?: number;
+  /**
+   * Time from the PDF being available until the result was handed to the bridge. Includes
+   * `encodeMs`.
+   */
+  deliverMs?: number;
+  /**
+   * Time from the call until the result was handed to the bridge.
+   */
+  totalMs?: number;
+  /**
+   * Size of the produced PDF in bytes.
+   */
+  outputBytes?: number;
+  /**
+   * Number of pages of the produced PDF.
+   */
+  pageCount?: number;
+}
+
+export interface PdfGeneratorMetricSummary {
+  /**
+   * Number of samples since the last reset.
+   */
+  count: number;
+  mean?: number;
+  max?: number;
+  /**
+   * Percentiles over the most recent 512 samples.
+   */
+  p50?: number;
+  p90?: number;
+  p95?: number;
+  p99?: number;
+}
+
+export interface PdfGeneratorMetrics {
+  /**
+   * Epoch milliseconds of the last reset.
+   */
+  since: number;
+  succeeded: number;
+  failed: number;
+  /**
+   * Jobs served from the render cache.
+   */
+  cached: number;
+  /**
+   * Calls answered by joining an identical job already in flight, see `deduplicateJobs`.
+   * They are not counted in `succeeded`, `failed` or the timing summaries, unless they rendered
+   * on their own because the job they joined was cancelled or timed out.
+   */
+  deduplicated: number;
+  /**
+   * One summary per field of `PdfGeneratorJobMetrics`.
+   */
+  metrics: Record<keyof PdfGeneratorJobMetrics, PdfGeneratorMetricSummary>;
+  /**
+   * Load of the thread pool that encodes, copies and cleans up written PDFs.
+   */
+  backgroundExecutor: PdfGeneratorExecutorStats;
+}
+
+export interface PdfGeneratorExecutorStats {
+  threads: number;
+  /**
+   * Tasks running right now.
+   */
+  active: number;
+  /**
+   * Tasks waiting for a thread right now.
+   */
+  queued: number;
+  /**
+   * Highest queue depth since the last reset.
+   */
+  maxQueued: number;
+  submitted: number;
+  completed: number;
+  /**
+   * Mean and maximum time tasks waited for a thread since the last reset.
+   */
+  meanWaitMs: number;
+  maxWaitMs: number;
+  /**
+   * Share of the available thread time spent running tasks since the last reset, from `0` to `1`.
+   */
+  utilization: number;
+}
+
+export interface PdfGeneratorWarmUpOptions {
+  /**
+   * Also render a tiny throwaway document to initialize the print pipeline. It runs as a
+   * `background` priority job.
+   *
+   * @default true
+   */
+  render?: boolean;
+  /**
+   * Number of WebViews to keep ready in the pool afterwards, bounded by `webViewPoolSize`.
+   *
+   * @default 1
+   */
+  webViews?: number;
+}
+
+export interface PdfGeneratorWarmUpResult {
+  /**
+   * Whether the throwaway document was rendered.
+   */
+  rendered: boolean;
+  /**
+   * Time from the call until the warm-up finished, in milliseconds, including waiting for the
+   * main thread to become idle.
+   */
+  durationMs: number;
+  webViewPool: PdfGeneratorWebViewPoolStats;
+}
+
+export interface PdfGeneratorAdaptiveLimits {
+  /**
+   * Whether `adaptiveLimits` is enabled. When it is not, the configured limits always apply.
+   */
+  enabled: boolean;
+  pressure: 'normal' | 'moderate' | 'low' | 'critical';
+  /**
+   * Render slots currently available.
+   */
+  maxConcurrentJobs: number;
+  /**
+   * Idle WebViews currently kept in the pool.
+   */
+  webViewPoolSize: number;
+  /**
+   * Largest estimated heap use allowed to build a base64 result right now.
+   */
+  base64MaxBytes: number;
+  lowRamDevice: boolean;
+  /**
+   * System and heap memory at the last evaluation. The byte counts are `-1` before the first one.
+   */
+  lowMemory: boolean;
+  availableMemoryBytes: number;
+  heapHeadroomBytes: number;
+  /**
+   * Last `onTrimMemory` level received, `-1` when none.
+   */
+  lastTrimLevel: number;
+}
+
+export interface PdfGeneratorJobMetricsEvent {
+  jobId: string;
+  success: boolean;
+  cached: boolean;
+  /**
+   * Error message when `success` is `false`.
+   */
+  error?: string;
+  metrics: PdfGeneratorJobMetrics;
+}
+
+export interface PdfGeneratorJobQueuedEvent {
+  jobId: string;
+  /**
+   * 1-based position of the job in the queue.
+   */
+  position: number;
+  priority: PdfGeneratorPriority;
+}
+
+export interface PdfGeneratorJobStartedEvent {
+  jobId: string;
+  /**
+   * Time the job spent waiting for a render slot.
+   */
+  queueWaitMs: number;
+}
+
+export interface PdfGeneratorWebViewPoolStats {
+  /**
+   * Configured maximum number of idle WebViews.
+   */
+  maxIdle: number;
+  /**
+   * WebViews currently parked in the pool.
+   */
+  idle: number;
+  /**
+   * Jobs that reused a pooled WebView.
+   */
+  hits: number;
+  /**
+   * Jobs that had to create a new WebView.
+   */
+  misses: number;
+  /**
+   * Total WebViews created by the pool.
+   */
+  created: number;
+  /**
+   * WebViews destroyed after being idle for too long or when the pool was trimmed.
+   */
+  evictions: number;
+}
 
 export interface PdfGeneratorPlugin {
   /**
@@ -61,6 +983,184 @@ export interface PdfGeneratorPlugin {
    * Generates a PDF from a raw HTML string.
    */
   fromData(options: PdfGeneratorFromDataOptions): Promise<PdfGeneratorResult>;
+  /**
+   * Generates a PDF from a local HTML file without sending its content over the bridge.
+   * Android only.
+   */
+  fromFile(options: PdfGeneratorFromFileOptions): Promise<PdfGeneratorResult>;
+
+  /**
+   * Queues a job that is stored on disk and keeps running while the app is in the background.
+   * A `jobId` is generated when none is given. Stored jobs are handed to the render queue only as
+   * render slots free up, so any number of them can be enqueued. Jobs interrupted by the app being
+   * killed are resumed on the next launch; a job started three times without finishing fails
+   * instead. Outcomes are kept until cleared and are also emitted as `backgroundJob` events, which
+   * are retained until a listener is added. Android only.
+   */
+  enqueueBackgroundJob(options: PdfGeneratorBackgroundJobOptions): Promise<{ jobId: string }>;
+  /**
+   * Lists stored background jobs, pending and finished. Android only.
+   */
+  getBackgroundJobs(): Promise<{ jobs: PdfGeneratorBackgroundJob[] }>;
+  /**
+   * Forgets finished background jobs, only those in `jobIds` when given. Pending jobs are kept.
+   * Android only.
+   */
+  clearBackgroundJobs(options?: { jobIds?: string[] }): Promise<{ removed: number }>;
+
+  /**
+   * Lists the files in the output store. Android only.
+   */
+  listOutputs(): Promise<PdfGeneratorOutputList>;
+  /**
+   * Deletes files from the output store, all of them when no option is given. Outputs of running
+   * jobs are kept. Resolves with the number of removed files and their size. Android only.
+   */
+  purgeOutputs(options?: PdfGeneratorPurgeOutputsOptions): Promise<{ removed: number; bytes: number }>;
+
+  /**
+   * Parses an HTML template once and keeps it on the native side, so `fromTemplate` only has to
+   * send the data of each document. Android only.
+   */
+  registerTemplate(options: PdfGeneratorTemplateOptions): Promise<{ placeholders: number }>;
+  /**
+   * Forgets a registered template. Android only.
+   */
+  unregisterTemplate(options: { id: string }): Promise<{ removed: boolean }>;
+  /**
+   * Generates a PDF from a registered template filled with `data`. Android only.
+   */
+  fromTemplate(options: PdfGeneratorFromTemplateOptions): Promise<PdfGeneratorResult>;
+
+  /**
+   * Generates one PDF per URL in a single native call. Each item is reported through a
+   * `batchItem` event as soon as it finishes; the promise resolves once all items are done.
+   * The `share` output type is only supported with `merge: true`. Android only.
+   */
+  fromURLBatch(options: PdfGeneratorFromUrlBatchOptions & { merge: true }): Promise<PdfGeneratorResult>;
+  fromURLBatch(options: PdfGeneratorFromUrlBatchOptions): Promise<PdfGeneratorBatchResult>;
+  /**
+   * Generates one PDF per HTML document in a single native call. Each item is reported through a
+   * `batchItem` event as soon as it finishes; the promise resolves once all items are done.
+   * The `share` output type is only supported with `merge: true`. Android only.
+   */
+  fromDataBatch(options: PdfGeneratorFromDataBatchOptions & { merge: true }): Promise<PdfGeneratorResult>;
+  fromDataBatch(options: PdfGeneratorFromDataBatchOptions): Promise<PdfGeneratorBatchResult>;
+
+  /**
+   * Returns size and hit/miss counters of the render cache. Android only.
+   */
+  getRenderCacheStats(): Promise<PdfGeneratorRenderCacheStats>;
+  /**
+   * Removes every entry from the render cache. Android only.
+   */
+  clearRenderCache(): Promise<void>;
+  /**
+   * Removes the cached render of a single document. Android only.
+   */
+  invalidateRenderCache(options: PdfGeneratorInvalidateCacheOptions): Promise<{ removed: boolean }>;
+
+  /**
+   * Downloads assets into the subresource cache ahead of time. Requires the `subresourceCache`
+   * plugin configuration. Android only.
+   */
+  preloadSubresources(options: { urls: string[] }): Promise<{ loaded: number; failed: number }>;
+  /**
+   * Removes every entry from the subresource cache. Android only.
+   */
+  clearSubresourceCache(): Promise<void>;
+  /**
+   * Returns size and hit/miss counters of the subresource cache. Android only.
+   */
+  getSubresourceCacheStats(): Promise<PdfGeneratorSubresourceCacheStats>;
+
+  /**
+   * Returns usage counters of the WebView pool, useful to size `webViewPoolSize`.
+   * Android only.
+   */
+  getWebViewPoolStats(): Promise<PdfGeneratorWebViewPoolStats>;
+
+  /**
+   * Returns per-phase timing and output size distributions of the jobs finished since the last
+   * reset. Android only.
+   */
+  getMetrics(): Promise<PdfGeneratorMetrics>;
+  /**
+   * Clears the aggregated metrics. Android only.
+   */
+  resetMetrics(): Promise<void>;
+  /**
+   * Returns the limits currently derived from memory pressure, see `adaptiveLimits`.
+   * Android only.
+   */
+  getAdaptiveLimits(): Promise<PdfGeneratorAdaptiveLimits>;
+
+  /**
+   * Loads WebView and initializes the print pipeline while the main thread is idle, so the
+   * first user-visible export runs at steady-state speed. The warm-up render is left out of
+   * `getMetrics`, the WebView pool hit and miss counters, and the `jobQueued`, `jobStarted` and
+   * `jobMetrics` events. See also `warmUpOnLoad`. Android only.
+   */
+  warmUp(options?: PdfGeneratorWarmUpOptions): Promise<PdfGeneratorWarmUpResult>;
+
+  /**
+   * Cancels a queued or running job. Its call rejects, partial output is deleted and its render
+   * slot is freed right away. `cancelled` is `false` when no job with this id is pending.
+   * Android only.
+   */
+  cancel(options: { jobId: string }): Promise<{ cancelled: boolean }>;
+
+  /**
+   * Emitted when a job cannot start right away and is queued. Android only.
+   */
+  addListener(
+    eventName: 'jobQueued',
+    listenerFunc: (event: PdfGeneratorJobQueuedEvent) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * Emitted when a job queued with `enqueueBackgroundJob` finishes. Events emitted while no
+   * listener was registered are delivered once one is added. Android only.
+   */
+  addListener(
+    eventName: 'backgroundJob',
+    listenerFunc: (event: PdfGeneratorBackgroundJob) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * Emitted when a job gets a render slot and starts loading its source. Android only.
+   */
+  addListener(
+    eventName: 'jobStarted',
+    listenerFunc: (event: PdfGeneratorJobStartedEvent) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * Emitted for every chunk of a job using the `stream` output type. Register it before starting
+   * the job: `stream` calls are rejected when no `pdfChunk` listener is registered. Android only.
+   */
+  addListener(eventName: 'pdfChunk', listenerFunc: (event: PdfGeneratorChunkEvent) => void): Promise<PluginListenerHandle>;
+
+  /**
+   * Emitted when an item of a `fromURLBatch` / `fromDataBatch` call finishes. Android only.
+   */
+  addListener(
+    eventName: 'batchItem',
+    listenerFunc: (event: PdfGeneratorBatchItemEvent) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * Emitted with the metrics of every finished job, successful or not. Android only.
+   */
+  addListener(
+    eventName: 'jobMetrics',
+    listenerFunc: (event: PdfGeneratorJobMetricsEvent) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * Removes all listeners for this plugin.
+   */
+  removeAllListeners(): Promise<void>;
 
   /**
    * Get the native Capacitor plugin version
@@ -1,10 +1,27 @@
 import { WebPlugin } from '@capacitor/core';
 
 import type {
+  PdfGeneratorAdaptiveLimits,
+  PdfGeneratorBackgroundJob,
+  PdfGeneratorBackgroundJobOptions,
+  PdfGeneratorFromDataBatchOptions,
   PdfGeneratorFromDataOptions,
+  PdfGeneratorFromFileOptions,
+  PdfGeneratorFromTemplateOptions,
+  PdfGeneratorFromUrlBatchOptions,
   PdfGeneratorFromUrlOptions,
+  PdfGeneratorInvalidateCacheOptions,
+  PdfGeneratorMetrics,
+  PdfGeneratorOutputList,
   PdfGeneratorPlugin,
+  PdfGeneratorPurgeOutputsOptions,
+  PdfGeneratorRenderCacheStats,
+  PdfGeneratorSubresourceCacheStats,
+  PdfGeneratorTemplateOptions,
   PdfGeneratorResult,
+  PdfGeneratorWarmUpOptions,
+  PdfGeneratorWarmUpResult,
+  PdfGeneratorWebViewPoolStats,
 } from './definitions';
 
 export class PdfGeneratorWeb extends WebPlugin implements PdfGeneratorPlugin {
@@ -16,6 +33,98 @@ export class PdfGeneratorWeb extends WebPlugin implements PdfGeneratorPlugin {
     throw this.unimplemented('fromData is not available in the web implementation.');
   }
 
+  async fromFile(_options: PdfGeneratorFromFileOptions): Promise<PdfGeneratorResult> {
+    throw this.unimplemented('fromFile is not available in the web implementation.');
+  }
+
+  async enqueueBackgroundJob(_options: PdfGeneratorBackgroundJobOptions): Promise<{ jobId: string }> {
+    throw this.unimplemented('enqueueBackgroundJob is not available in the web implementation.');
+  }
+
+  async getBackgroundJobs(): Promise<{ jobs: PdfGeneratorBackgroundJob[] }> {
+    throw this.unimplemented('getBackgroundJobs is not available in the web implementation.');
+  }
+
+  async clearBackgroundJobs(_options?: { jobIds?: string[] }): Promise<{ removed: number }> {
+    throw this.unimplemented('clearBackgroundJobs is not available in the web implementation.');
+  }
+
+  async listOutputs(): Promise<PdfGeneratorOutputList> {
+    throw this.unimplemented('listOutputs is not available in the web implementation.');
+  }
+
+  async purgeOutputs(_options?: PdfGeneratorPurgeOutputsOptions): Promise<{ removed: number; bytes: number }> {
+    throw this.unimplemented('purgeOutputs is not available in the web implementation.');
+  }
+
+  async registerTemplate(_options: PdfGeneratorTemplateOptions): Promise<{ placeholders: number }> {
+    throw this.unimplemented('registerTemplate is not available in the web implementation.');
+  }
+
+  async unregisterTemplate(_options: { id: string }): Promise<{ removed: boolean }> {
+    throw this.unimplemented('unregisterTemplate is not available in the web implementation.');
+  }
+
+  async fromTemplate(_options: PdfGeneratorFromTemplateOptions): Promise<PdfGeneratorResult> {
+    throw this.unimplemented('fromTemplate is not available in the web implementation.');
+  }
+
+  async fromURLBatch(_options: PdfGeneratorFromUrlBatchOptions): Promise<never> {
+    throw this.unimplemented('fromURLBatch is not available in the web implementation.');
+  }
+
+  async fromDataBatch(_options: PdfGeneratorFromDataBatchOptions): Promise<never> {
+    throw this.unimplemented('fromDataBatch is not available in the web implementation.');
+  }
+
+  async getRenderCacheStats(): Promise<PdfGeneratorRenderCacheStats> {
+    throw this.unimplemented('getRenderCacheStats is not available in the web implementation.');
+  }
+
+  async clearRenderCache(): Promise<void> {
+    throw this.unimplemented('clearRenderCache is not available in the web implementation.');
+  }
+
+  async invalidateRenderCache(_options: PdfGeneratorInvalidateCacheOptions): Promise<{ removed: boolean }> {
+    throw this.unimplemented('invalidateRenderCache is not available in the web implementation.');
+  }
+
+  async preloadSubresources(_options: { urls: string[] }): Promise<{ loaded: number; failed: number }> {
+    throw this.unimplemented('preloadSubresources is not available in the web implementation.');
+  }
+
+  async clearSubresourceCache(): Promise<void> {
+    throw this.unimplemented('clearSubresourceCache is not available in the web implementation.');
+  }
+
+  async getSubresourceCacheStats(): Promise<PdfGeneratorSubresourceCacheStats> {
+    throw this.unimplemented('getSubresourceCacheStats is not available in the web implementation.');
+  }
+
+  async getWebViewPoolStats(): Promise<PdfGeneratorWebViewPoolStats> {
+    throw this.unimplemented('getWebViewPoolStats is not available in the web implementation.');
+  }
+
+  async getMetrics(): Promise<PdfGeneratorMetrics> {
+    throw this.unimplemented('getMetrics is not available in the web implementation.');
+  }
+
+  async resetMetrics(): Promise<void> {
+    throw this.unimplemented('resetMetrics is not available in the web implementation.');
+  }
+
+  async getAdaptiveLimits(): Promise<PdfGeneratorAdaptiveLimits> {
+    throw this.unimplemented('getAdaptiveLimits is not available in the web implementation.');
+  }
+
+  async warmUp(_options?: PdfGeneratorWarmUpOptions): Promise<PdfGeneratorWarmUpResult> {
+    throw this.unimplemented('warmUp is not available in the web implementation.');
+  }
+
+  async cancel(_options: { jobId: string }): Promise<{ cancelled: boolean }> {
+    throw this.unimplemented('cancel is not available in the web implementation.');
+  }
+
   async getPluginVersion(): Promise<{ version: string }> {
     return { version: 'web' };
   }